@@ -0,0 +1,170 @@
+package edu.uw.danco.account;
+
+import edu.uw.ext.framework.account.Account;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/5/13
+ * Time: 7:25 PM
+ *
+ * A bounded, least recently used cache of accounts by name. Entries older than the time to live are treated as
+ * misses, so an account changed outside this process is eventually reloaded. The hits and misses are counted.
+ */
+public class AccountCache {
+
+    /** Maximum number of accounts held */
+    private final int maxSize;
+
+    /** Time an entry remains valid in milliseconds, 0 if entries do not expire */
+    private final long ttlMillis;
+
+    /** The entries in access order, least recently used first */
+    private final LinkedHashMap<String, CachedAccount> entries;
+
+    /** Number of lookups finding a valid entry */
+    private long hits;
+
+    /** Number of lookups finding no valid entry */
+    private long misses;
+
+
+    /**
+     * Constructor
+     * @param maxSize - maximum number of accounts held
+     * @param ttlMillis - time an entry remains valid in milliseconds, 0 if entries do not expire
+     */
+    public AccountCache(final int maxSize, final long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        entries = new LinkedHashMap<String, CachedAccount>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedAccount> eldest) {
+                return size() > AccountCache.this.maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Looks up an account
+     * @param accountName - the account name
+     * @return - the cached account, or null if it is not cached or has expired
+     */
+    public synchronized Account get(final String accountName) {
+        final CachedAccount cached = entries.get(accountName);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        if (isExpired(cached)) {
+            entries.remove(accountName);
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.account;
+    }
+
+
+    /**
+     * Caches an account, replacing any cached instance
+     * @param account - the account
+     */
+    public synchronized void put(final Account account) {
+        entries.put(account.getName(), new CachedAccount(account));
+    }
+
+
+    /**
+     * Caches an account loaded from the store, unless another instance was cached since, as that one is at least as
+     * recent.
+     * @param account - the loaded account
+     * @return - the cached account, the loaded account if there was none
+     */
+    public synchronized Account putIfAbsent(final Account account) {
+        final CachedAccount cached = entries.get(account.getName());
+        if (cached != null && !isExpired(cached)) {
+            return cached.account;
+        }
+        entries.put(account.getName(), new CachedAccount(account));
+        return account;
+    }
+
+
+    /**
+     * Removes an account from the cache
+     * @param accountName - the account name
+     */
+    public synchronized void invalidate(final String accountName) {
+        entries.remove(accountName);
+    }
+
+
+    /**
+     * Removes all accounts from the cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+
+    /**
+     * Gets the number of accounts cached
+     * @return - the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * Gets the number of lookups finding a valid entry
+     * @return - the hit count
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+
+    /**
+     * Gets the number of lookups finding no valid entry
+     * @return - the miss count
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+
+    /**
+     * Tests if an entry has outlived the time to live
+     * @param cached - the entry
+     * @return - true if the entry has expired
+     */
+    private boolean isExpired(final CachedAccount cached) {
+        return ttlMillis > 0 && System.currentTimeMillis() - cached.cachedAt > ttlMillis;
+    }
+
+
+    /**
+     * A cached account.
+     */
+    private static final class CachedAccount {
+        /** The account */
+        private final Account account;
+
+        /** Time the account was cached */
+        private final long cachedAt = System.currentTimeMillis();
+
+        /**
+         * Constructor
+         * @param account - the account
+         */
+        private CachedAccount(final Account account) {
+            this.account = account;
+        }
+    }
+}
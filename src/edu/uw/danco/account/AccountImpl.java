@@ -322,15 +322,19 @@ public class AccountImpl implements Account {
 
 
     /**
-     * Incorporates the effect of an order in the balance.
+     * Incorporates the effect of an order in the balance. Only the change in balance is persisted when the account
+     * manager supports it.
      * @param order - the order to be reflected in the account
      * @param executionPrice - the price at which to execute the order
      */
     @Override
     public void reflectOrder(Order order, int executionPrice) {
         try {
-            balance += order.valueOfOrder(executionPrice);
-            if (accountManager != null) {
+            final int delta = order.valueOfOrder(executionPrice);
+            balance += delta;
+            if (accountManager instanceof AccountManagerImpl) {
+                ((AccountManagerImpl) accountManager).adjustBalance(this, delta);
+            } else if (accountManager != null) {
                 accountManager.persist(this);
             } else {
                 LOGGER.log(Level.SEVERE, "Account manager has not been initialized.",
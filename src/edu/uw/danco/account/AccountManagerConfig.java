@@ -0,0 +1,165 @@
+package edu.uw.danco.account;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/5/13
+ * Time: 7:50 PM
+ *
+ * JavaBean holding the optional settings used when constructing an AccountManagerImpl. The defaults reproduce the
+ * original account manager behavior, so a default instance may always be used.
+ */
+public class AccountManagerConfig {
+
+    /** Maximum number of accounts cached, 0 to read every account from the DAO */
+    private int cacheSize;
+
+    /** Time a cached account remains valid in milliseconds, 0 if cached accounts do not expire */
+    private long cacheTtlMillis;
+
+    /** If true persisted accounts are written behind, in batches */
+    private boolean writeBehind;
+
+    /** Number of accounts awaiting write that triggers a flush */
+    private int writeBehindMaxPending = 1000;
+
+    /** Interval between write behind flushes in milliseconds */
+    private long writeBehindMillis = 1000;
+
+    /** Maximum number of concurrent DAO calls, 0 if unlimited */
+    private int daoConcurrency;
+
+    /** If true accounts are read without their profile, which is read on first use */
+    private boolean lazyProfile;
+
+
+    /**
+     * Gets the maximum number of accounts cached
+     * @return - the cache size, 0 if accounts are not cached
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+
+    /**
+     * Enables the account cache, accounts are held in a least recently used cache of this size. Cached accounts are
+     * shared, getAccount returns the same instance until it is evicted or expires.
+     * @param cacheSize - the cache size, 0 to read every account from the DAO
+     */
+    public void setCacheSize(final int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+
+    /**
+     * Gets the time a cached account remains valid
+     * @return - the time to live in milliseconds, 0 if cached accounts do not expire
+     */
+    public long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+
+    /**
+     * Sets the time a cached account remains valid, after which it is read from the DAO again
+     * @param cacheTtlMillis - the time to live in milliseconds, 0 if cached accounts do not expire
+     */
+    public void setCacheTtlMillis(final long cacheTtlMillis) {
+        this.cacheTtlMillis = cacheTtlMillis;
+    }
+
+
+    /**
+     * Tests if persisted accounts are written behind
+     * @return - true if write behind is enabled
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+
+    /**
+     * Enables write behind, persisting an account marks it for writing and repeated updates are merged into a single
+     * write. Pending writes are flushed on the size or time trigger and on close, and are lost if the process ends
+     * without the account manager being closed.
+     * @param writeBehind - true to write persisted accounts behind
+     */
+    public void setWriteBehind(final boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+
+    /**
+     * Gets the number of accounts awaiting write that triggers a flush
+     * @return - the size trigger
+     */
+    public int getWriteBehindMaxPending() {
+        return writeBehindMaxPending;
+    }
+
+
+    /**
+     * Sets the number of accounts awaiting write that triggers a flush
+     * @param writeBehindMaxPending - the size trigger
+     */
+    public void setWriteBehindMaxPending(final int writeBehindMaxPending) {
+        this.writeBehindMaxPending = writeBehindMaxPending;
+    }
+
+
+    /**
+     * Gets the interval between write behind flushes
+     * @return - the interval in milliseconds
+     */
+    public long getWriteBehindMillis() {
+        return writeBehindMillis;
+    }
+
+
+    /**
+     * Sets the interval between write behind flushes
+     * @param writeBehindMillis - the interval in milliseconds
+     */
+    public void setWriteBehindMillis(final long writeBehindMillis) {
+        this.writeBehindMillis = writeBehindMillis;
+    }
+
+
+    /**
+     * Gets the maximum number of concurrent DAO calls
+     * @return - the DAO concurrency limit, 0 if unlimited
+     */
+    public int getDaoConcurrency() {
+        return daoConcurrency;
+    }
+
+
+    /**
+     * Limits the number of threads calling the DAO at once, further callers wait their turn. Sized to the database
+     * connections or file handles available, this lets any number of order executions run without overrunning them.
+     * @param daoConcurrency - the DAO concurrency limit, 0 if unlimited
+     */
+    public void setDaoConcurrency(final int daoConcurrency) {
+        this.daoConcurrency = daoConcurrency;
+    }
+
+
+    /**
+     * Tests if account profiles are read on first use
+     * @return - true if accounts are read without their profile
+     */
+    public boolean isLazyProfile() {
+        return lazyProfile;
+    }
+
+
+    /**
+     * Reads accounts with only their name, password hash and balance when the DAO supports account views. The full
+     * name, phone, email, address and credit card are read when first used, so order execution never reads them.
+     * @param lazyProfile - true to read accounts without their profile
+     */
+    public void setLazyProfile(final boolean lazyProfile) {
+        this.lazyProfile = lazyProfile;
+    }
+}
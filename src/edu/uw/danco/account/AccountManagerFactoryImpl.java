@@ -12,6 +12,9 @@ import edu.uw.ext.framework.dao.AccountDao;
  */
 public class AccountManagerFactoryImpl implements AccountManagerFactory {
 
+    /** The settings used for the account managers created by this factory */
+    private AccountManagerConfig config = new AccountManagerConfig();
+
     /**
      * Instantiates a new account manager instance.
      * @param dao - the data access object to be used by the account manager
@@ -19,7 +22,25 @@ public class AccountManagerFactoryImpl implements AccountManagerFactory {
      */
     @Override
     public AccountManager newAccountManager(AccountDao dao) {
-        AccountManager accountManager = new AccountManagerImpl(dao);
+        AccountManager accountManager = new AccountManagerImpl(dao, config);
         return accountManager;
     }
+
+
+    /**
+     * Gets the settings used for new account managers
+     * @return - the account manager settings
+     */
+    public AccountManagerConfig getConfig() {
+        return config;
+    }
+
+
+    /**
+     * Sets the settings used for new account managers, allows the settings to be provided through the bean factory.
+     * @param config - the account manager settings
+     */
+    public void setConfig(final AccountManagerConfig config) {
+        this.config = config;
+    }
 }
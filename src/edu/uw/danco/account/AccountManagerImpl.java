@@ -1,6 +1,10 @@
 package edu.uw.danco.account;
 
+import edu.uw.danco.dao.AccountBalanceDao;
 import edu.uw.danco.dao.AccountDaoImpl;
+import edu.uw.danco.dao.AccountViewDao;
+import edu.uw.danco.dao.LimitedAccountDao;
+import edu.uw.danco.dao.ResourceLimiter;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountFactory;
@@ -9,7 +13,6 @@ import edu.uw.ext.framework.dao.AccountDao;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,20 +29,62 @@ public class AccountManagerImpl implements AccountManager {
     /** THe hashing algorithm */
     public static final String ALGORITHM = "SHA1";
 
+    /** A digest per thread, reused across password hashes, holds null if the algorithm is not available */
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance(ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                return null;
+            }
+        }
+    };
+
     /** The data access object */
     private final AccountDao dao;
 
     /** The account factory */
     private final AccountFactory accountFactory;
 
+    /** The account cache, null if accounts are not cached */
+    private final AccountCache cache;
+
+    /** The write behind buffer, null if accounts are written when persisted */
+    private final AccountWriteBehind writeBehind;
+
+    /** If true accounts are read without their profile, when the DAO supports it */
+    private final boolean lazyProfile;
+
+    /** If true a change in balance alone is written as a delta, the DAO patches the stored balance in place */
+    private final boolean balanceDeltas;
+
     /**
      * Instatiates a new AccountManager
      * @param dao
      */
     public AccountManagerImpl(final AccountDao dao) {
-        this.dao = dao;
+        this(dao, new AccountManagerConfig());
+    }
+
+    /**
+     * Instatiates a new AccountManager
+     * @param dao - the data access object
+     * @param config - the optional account manager settings
+     */
+    public AccountManagerImpl(final AccountDao dao, final AccountManagerConfig config) {
+        this.dao = config.getDaoConcurrency() > 0
+                   ? new LimitedAccountDao(dao, new ResourceLimiter("account-dao", config.getDaoConcurrency()))
+                   : dao;
 
         accountFactory = new AccountFactoryImpl();
+        cache = config.getCacheSize() > 0 ? new AccountCache(config.getCacheSize(), config.getCacheTtlMillis()) : null;
+        writeBehind = config.isWriteBehind()
+                      ? new AccountWriteBehind(this.dao, config.getWriteBehindMaxPending(),
+                                               config.getWriteBehindMillis())
+                      : null;
+        lazyProfile = config.isLazyProfile() && this.dao instanceof AccountViewDao;
+        balanceDeltas = dao instanceof AccountBalanceDao;
     }
 
     /**
@@ -49,16 +94,80 @@ public class AccountManagerImpl implements AccountManager {
         this.dao = new AccountDaoImpl();
 
         accountFactory = new AccountFactoryImpl();
+        cache = null;
+        writeBehind = null;
+        lazyProfile = false;
+        balanceDeltas = this.dao instanceof AccountBalanceDao;
     }
 
     /**
-     * Used to persist an account
+     * Used to persist an account, in write behind mode the account is only marked for writing
      * @param account - the account to persist
      * @throws AccountException - if operation fails
      */
     @Override
     public void persist(final Account account) throws AccountException {
-        dao.setAccount(account);
+        if (writeBehind != null) {
+            writeBehind.markDirty(account);
+            if (cache != null) {
+                cache.put(account);
+            }
+        } else {
+            store(account);
+        }
+    }
+
+    /**
+     * Persists a change in the balance of an account whose balance has already been adjusted in memory. If the DAO
+     * supports it only the change is written, otherwise, or in write behind mode, the account is persisted in full. The
+     * DAO given to the constructor decides, the LimitedAccountDao wrapping it accepts deltas for any DAO.
+     * @param account - the account, holding the adjusted balance
+     * @param delta - the amount added to the balance
+     * @throws AccountException - if operation fails
+     */
+    public void adjustBalance(final Account account, final int delta) throws AccountException {
+        if (writeBehind == null && balanceDeltas) {
+            boolean written = false;
+            try {
+                ((AccountBalanceDao) dao).adjustBalance(account.getName(), delta);
+                written = true;
+            } finally {
+                cacheWrite(account, written);
+            }
+        } else {
+            persist(account);
+        }
+    }
+
+    /**
+     * Writes an account to the DAO and caches it, if the write fails the account is dropped from the cache so the
+     * next lookup reads what the DAO holds
+     * @param account - the account to write
+     * @throws AccountException - if operation fails
+     */
+    private void store(final Account account) throws AccountException {
+        boolean written = false;
+        try {
+            dao.setAccount(account);
+            written = true;
+        } finally {
+            cacheWrite(account, written);
+        }
+    }
+
+    /**
+     * Brings the cache in line with a write to the DAO
+     * @param account - the account written
+     * @param written - true if the write succeeded, the account is cached, otherwise it is invalidated
+     */
+    private void cacheWrite(final Account account, final boolean written) {
+        if (cache != null) {
+            if (written) {
+                cache.put(account);
+            } else {
+                cache.invalidate(account.getName());
+            }
+        }
     }
 
     /**
@@ -69,10 +178,27 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public Account getAccount(final String accountName) throws AccountException {
-        Account account = dao.getAccount(accountName);
+        if (writeBehind != null) {
+            final Account pending = writeBehind.getPending(accountName);
+            if (pending != null) {
+                return pending;
+            }
+        }
+        if (cache != null) {
+            final Account cached = cache.get(accountName);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Account account = lazyProfile ? ((AccountViewDao) dao).getAccountView(accountName)
+                                      : dao.getAccount(accountName);
 
         if (account != null) {
             account.registerAccountManager(this);
+            if (cache != null) {
+                account = cache.putIfAbsent(account);
+            }
         }
 
         return account;
@@ -85,7 +211,14 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public void deleteAccount(final String accountName) throws AccountException {
-        dao.deleteAccount(accountName);
+        if (writeBehind != null) {
+            writeBehind.deleteAccount(accountName);
+        } else {
+            dao.deleteAccount(accountName);
+        }
+        if (cache != null) {
+            cache.invalidate(accountName);
+        }
     }
 
     /**
@@ -100,17 +233,14 @@ public class AccountManagerImpl implements AccountManager {
     @Override
     public Account createAccount(final String accountName, final String password, int balance) throws AccountException {
         Account account = null;
-        account = dao.getAccount(accountName);
+        account = getAccount(accountName);
         if (account != null) {
             throw new AccountException(String.format("Account %s already exists", accountName));
         }
         try {
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(password.getBytes());
-
-            account = accountFactory.newAccount(accountName, md.digest(), balance);
+            account = accountFactory.newAccount(accountName, hash(password), balance);
             account.registerAccountManager(this);
-            dao.setAccount(account);
+            store(account);
         } catch (NoSuchAlgorithmException e) {
             LOGGER.log(Level.SEVERE, "Unable to create SHA1 hash for password", e);
         }
@@ -127,21 +257,44 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public boolean validateLogin(final String accountName, final String password) throws AccountException {
-        boolean isPasswordMatch = false;
-        try {
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(password.getBytes());                     // in general use the getBytes method that takes an encoding type
+        return login(accountName, password) != null;
+    }
 
-            Account account = dao.getAccount(accountName);
-            if (account != null) {
-                isPasswordMatch = Arrays.equals(account.getPasswordHash(), (md.digest()));
-                //MessageDigest has an isEquals method
+    /**
+     * Loads an account and validates the password against it, the account is only read once
+     * @param accountName - name of the account
+     * @param password - password to be validated
+     * @return - the account if the password is valid for it, otherwise null
+     * @throws AccountException - if error occurs accessing accounts
+     */
+    public Account login(final String accountName, final String password) throws AccountException {
+        try {
+            final byte[] passwordHash = hash(password);
+            final Account account = getAccount(accountName);
+            if (account != null && MessageDigest.isEqual(account.getPasswordHash(), passwordHash)) {
+                return account;
             }
         } catch (NoSuchAlgorithmException e) {
             LOGGER.log(Level.SEVERE, "Unable to crete message digest for password", e);
             throw new AccountException(e.getMessage());
         }
-        return isPasswordMatch;
+        return null;
+    }
+
+    /**
+     * Hashes a password with this thread's digest
+     * @param password - the password
+     * @return - the password hash
+     * @throws NoSuchAlgorithmException - if the hashing algorithm is not available
+     */
+    private static byte[] hash(final String password) throws NoSuchAlgorithmException {
+        final MessageDigest md = DIGEST.get();
+        if (md == null) {
+            throw new NoSuchAlgorithmException(ALGORITHM);
+        }
+        md.reset();
+        md.update(password.getBytes());                     // in general use the getBytes method that takes an encoding type
+        return md.digest();
     }
 
     /**
@@ -151,6 +304,33 @@ public class AccountManagerImpl implements AccountManager {
      */
     @Override
     public void close() throws AccountException {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+        if (cache != null) {
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info("Account cache hits: " + cache.getHitCount() + ", misses: " + cache.getMissCount());
+            }
+            cache.clear();
+        }
         dao.close();
     }
+
+    /**
+     * Writes any accounts awaiting write behind
+     * @throws AccountException - if any account fails to write
+     */
+    public void flush() throws AccountException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Gets the account cache, for its statistics
+     * @return - the account cache, null if accounts are not cached
+     */
+    public AccountCache getAccountCache() {
+        return cache;
+    }
 }
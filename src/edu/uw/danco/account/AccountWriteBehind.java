@@ -0,0 +1,241 @@
+package edu.uw.danco.account;
+
+import edu.uw.danco.dao.BatchAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/7/13
+ * Time: 8:15 PM
+ *
+ * Write behind buffer for account persistence. Persisting an account only marks it dirty, repeated updates of an
+ * account are merged into one pending write of its latest state. The pending writes are flushed to the DAO on a
+ * background thread when the number of dirty accounts reaches the limit or the flush interval elapses, so the number
+ * of writes grows with the number of distinct accounts updated rather than the number of updates.
+ *
+ * Accounts being written by a flush remain visible through getPending until the write completes, so a reader never
+ * falls back to the older stored state while a flush is running. Once closed, accounts marked dirty are written
+ * immediately on the marking thread.
+ *
+ * Pending writes are lost if the process ends without close() being called.
+ */
+public class AccountWriteBehind {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(AccountWriteBehind.class.getName());
+
+    /** The data access object written to */
+    private final AccountDao dao;
+
+    /** Number of dirty accounts triggering a flush */
+    private final int maxPending;
+
+    /** The dirty accounts by name, in the order they were first marked */
+    private Map<String, Account> pending = new LinkedHashMap<String, Account>();
+
+    /** The accounts being written by the running flush, empty when no flush is running */
+    private Map<String, Account> inFlight = new LinkedHashMap<String, Account>();
+
+    /** Set once closed, the flush thread no longer runs */
+    private volatile boolean closed;
+
+    /** Serializes flushes and deletes, so a flush never writes an account deleted after it was marked */
+    private final Object flushLock = new Object();
+
+    /** Set while a size triggered flush is waiting to run */
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    /** The flush thread */
+    private final ScheduledExecutorService flusher;
+
+    /** Number of updates marked */
+    private long updates;
+
+    /** Number of writes made */
+    private long writes;
+
+
+    /**
+     * Constructor, starts the flush thread.
+     * @param dao - the data access object written to
+     * @param maxPending - number of dirty accounts triggering a flush
+     * @param flushMillis - the flush interval in milliseconds
+     */
+    public AccountWriteBehind(final AccountDao dao, final int maxPending, final long flushMillis) {
+        this.dao = dao;
+        this.maxPending = maxPending;
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "account-write-behind");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushQuietly();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Marks an account dirty, replacing any pending write of the account. Once closed the account is written
+     * immediately.
+     * @param account - the account
+     */
+    public void markDirty(final Account account) {
+        final int size;
+        synchronized (this) {
+            pending.put(account.getName(), account);
+            updates++;
+            size = pending.size();
+        }
+        if (closed) {
+            flushQuietly();
+        } else if (size >= maxPending && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flushRequested.set(false);
+                        flushQuietly();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+                flushQuietly();
+            }
+        }
+    }
+
+
+    /**
+     * Gets the pending state of an account, including an account being written by a running flush
+     * @param accountName - the account name
+     * @return - the account awaiting write, or null if the account has no pending write
+     */
+    public synchronized Account getPending(final String accountName) {
+        final Account account = pending.get(accountName);
+        return account != null ? account : inFlight.get(accountName);
+    }
+
+
+    /**
+     * Discards any pending write of an account and deletes it from the DAO.
+     * @param accountName - the account name
+     * @throws AccountException - if the delete fails
+     */
+    public void deleteAccount(final String accountName) throws AccountException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                pending.remove(accountName);
+            }
+            dao.deleteAccount(accountName);
+        }
+    }
+
+
+    /**
+     * Writes the pending accounts to the DAO, as one batch if the DAO supports it. An account that fails to write is
+     * marked dirty again unless it has been updated since. The accounts stay visible through getPending until
+     * written.
+     * @throws AccountException - if any account fails to write
+     */
+    public void flush() throws AccountException {
+        synchronized (flushLock) {
+            final Map<String, Account> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                inFlight = batch;
+                pending = new LinkedHashMap<String, Account>();
+            }
+
+            final List<Account> failed = new ArrayList<Account>();
+            AccountException failure = null;
+            if (dao instanceof BatchAccountDao) {
+                try {
+                    ((BatchAccountDao) dao).setAccounts(batch.values());
+                } catch (AccountException e) {
+                    failed.addAll(batch.values());
+                    failure = e;
+                }
+            } else {
+                for (Account account : batch.values()) {
+                    try {
+                        dao.setAccount(account);
+                    } catch (AccountException e) {
+                        failed.add(account);
+                        failure = e;
+                    }
+                }
+            }
+            synchronized (this) {
+                inFlight = new LinkedHashMap<String, Account>();
+                writes += batch.size() - failed.size();
+                for (Account account : failed) {
+                    if (!pending.containsKey(account.getName())) {
+                        pending.put(account.getName(), account);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+
+    /**
+     * Stops the flush thread and writes the pending accounts.
+     * @throws AccountException - if any account fails to write
+     */
+    public void close() throws AccountException {
+        closed = true;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            synchronized (this) {
+                LOGGER.info("Account write behind merged " + updates + " updates into " + writes + " writes");
+            }
+        }
+    }
+
+
+    /**
+     * Flushes from the flush thread, logging rather than propagating failures.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to write accounts, they remain pending", e);
+        }
+    }
+}
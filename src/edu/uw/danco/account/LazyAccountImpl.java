@@ -0,0 +1,210 @@
+package edu.uw.danco.account;
+
+import edu.uw.danco.dao.AccountViewDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.Address;
+import edu.uw.ext.framework.account.CreditCard;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/17/13
+ * Time: 7:50 PM
+ *
+ * An account loaded with only its name, password hash and balance. The profile fields are read from the DAO when any
+ * of them is first read or set, so code using only the trading fields never reads the rest of the account. The
+ * profile is read without holding a lock, concurrent first accesses may both read it but only one is applied.
+ *
+ * If the profile cannot be read the profile fields read as null and the read is retried on the next access. A DAO
+ * writing an account whose profile is not loaded must not write its profile fields.
+ */
+public class LazyAccountImpl extends AccountImpl {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(LazyAccountImpl.class.getName());
+
+    /** Reads the profile, null once the profile is loaded */
+    private volatile AccountViewDao dao;
+
+    /** Guards applying the profile */
+    private final Object profileLock = new Object();
+
+
+    /**
+     * Constructor
+     * @param name - the account name
+     * @param passwordHash - the password hash
+     * @param balance - the balance
+     * @param dao - the DAO the profile is read from
+     * @throws AccountException - if the account name is unacceptable
+     */
+    public LazyAccountImpl(final String name, final byte[] passwordHash, final int balance, final AccountViewDao dao)
+            throws AccountException {
+        setName(name);
+        setPasswordHash(passwordHash);
+        setBalance(balance);
+        this.dao = dao;
+    }
+
+
+    /**
+     * Tests if the profile fields have been loaded
+     * @return - true if the profile is loaded
+     */
+    public boolean isProfileLoaded() {
+        return dao == null;
+    }
+
+
+    /**
+     * Gets the full name of the account holder, loading the profile if needed
+     * @return - the account holder's full name
+     */
+    @Override
+    public String getFullName() {
+        loadProfile();
+        return super.getFullName();
+    }
+
+
+    /**
+     * Sets the full name of the account holder, loading the profile first if needed
+     * @param fullName - the full name of the account holder
+     */
+    @Override
+    public void setFullName(final String fullName) {
+        loadProfile();
+        super.setFullName(fullName);
+    }
+
+
+    /**
+     * Gets the account address, loading the profile if needed
+     * @return - the address for the account holder
+     */
+    @Override
+    public Address getAddress() {
+        loadProfile();
+        return super.getAddress();
+    }
+
+
+    /**
+     * Sets the address of the account holder, loading the profile first if needed
+     * @param address - the address value to use
+     */
+    @Override
+    public void setAddress(final Address address) {
+        loadProfile();
+        super.setAddress(address);
+    }
+
+
+    /**
+     * Gets the phone number, loading the profile if needed
+     * @return - the phone number of the account holder
+     */
+    @Override
+    public String getPhone() {
+        loadProfile();
+        return super.getPhone();
+    }
+
+
+    /**
+     * Sets the phone number of the account holder, loading the profile first if needed
+     * @param phone - the value to use for the account holder
+     */
+    @Override
+    public void setPhone(final String phone) {
+        loadProfile();
+        super.setPhone(phone);
+    }
+
+
+    /**
+     * Gets the email address, loading the profile if needed
+     * @return - the email address of the account holder
+     */
+    @Override
+    public String getEmail() {
+        loadProfile();
+        return super.getEmail();
+    }
+
+
+    /**
+     * Sets the email address, loading the profile first if needed
+     * @param email - the value to use for the account holder's email
+     */
+    @Override
+    public void setEmail(final String email) {
+        loadProfile();
+        super.setEmail(email);
+    }
+
+
+    /**
+     * Gets the account holder's credit card, loading the profile if needed
+     * @return - the credit card
+     */
+    @Override
+    public CreditCard getCreditCard() {
+        loadProfile();
+        return super.getCreditCard();
+    }
+
+
+    /**
+     * Sets the credit card, loading the profile first if needed
+     * @param card - the value to use for the credit card
+     */
+    @Override
+    public void setCreditCard(final CreditCard card) {
+        loadProfile();
+        super.setCreditCard(card);
+    }
+
+
+    /**
+     * Reads the profile fields from the DAO if they have not been loaded. The DAO is called outside the lock, so a
+     * DAO holding its own lock while reading this account cannot deadlock with a thread loading the profile. The
+     * profile is only marked loaded once it has been read, a failed read leaves it to be read again.
+     * @return - true if the profile is loaded, false if it could not be read
+     */
+    public boolean loadProfile() {
+        final AccountViewDao profileDao = dao;
+        if (profileDao == null) {
+            return true;
+        }
+        final Account profile;
+        try {
+            profile = profileDao.getProfile(getName());
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read profile of account " + getName(), e);
+            return false;
+        }
+        synchronized (profileLock) {
+            if (dao == null) {
+                return true;
+            }
+            if (profile != null) {
+                super.setFullName(profile.getFullName());
+                super.setPhone(profile.getPhone());
+                super.setEmail(profile.getEmail());
+                if (profile.getAddress() != null) {
+                    super.setAddress(profile.getAddress());
+                }
+                if (profile.getCreditCard() != null) {
+                    super.setCreditCard(profile.getCreditCard());
+                }
+            }
+            dao = null;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,255 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/12/13
+ * Time: 8:00 PM
+ *
+ * Loads accounts ahead of need on background threads. The order managers request a prefetch for the accounts of stop
+ * orders close to triggering, so the account is already in the account manager's cache when the order executes; the
+ * prefetches only pay off if the account manager caches accounts. The order processors claim an account as they
+ * execute its order, a claim finding a recent prefetch is a hit, a prefetch that expires or is evicted unclaimed is
+ * wasted.
+ */
+public class AccountPrefetcher {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(AccountPrefetcher.class.getName());
+
+    /** The account manager the accounts are loaded through */
+    private final AccountManager accountManager;
+
+    /** Maximum number of prefetched accounts tracked */
+    private final int maxAccounts;
+
+    /** Time a prefetch remains useful in milliseconds */
+    private final long ttlMillis;
+
+    /** The threads loading the accounts */
+    private final ExecutorService loaders;
+
+    /** Time each unclaimed prefetched account was loaded, eldest first, guarded by this */
+    private final LinkedHashMap<String, Long> warmed;
+
+    /** Accounts with a prefetch in progress, guarded by this */
+    private final Set<String> loading = new HashSet<String>();
+
+    /** Number of prefetches issued */
+    private long prefetches;
+
+    /** Number of prefetch requests received */
+    private long requests;
+
+    /** Number of claims finding a prefetched account */
+    private long hits;
+
+    /** Number of claims finding no prefetched account */
+    private long misses;
+
+    /** Number of prefetched accounts expired or evicted unclaimed */
+    private long wasted;
+
+
+    /**
+     * Constructor
+     * @param accountManager - the account manager the accounts are loaded through
+     * @param threads - the number of loader threads
+     * @param maxAccounts - maximum number of prefetched accounts tracked, the eldest is discarded beyond this
+     * @param ttlMillis - time a prefetch remains useful in milliseconds, should not exceed the account cache TTL
+     * @param name - prefix for the loader thread names
+     */
+    public AccountPrefetcher(final AccountManager accountManager, final int threads, final int maxAccounts,
+                             final long ttlMillis, final String name) {
+        this.accountManager = accountManager;
+        this.maxAccounts = maxAccounts;
+        this.ttlMillis = ttlMillis;
+        warmed = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                if (size() > AccountPrefetcher.this.maxAccounts) {
+                    wasted++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        final AtomicInteger threadCount = new AtomicInteger();
+        loaders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name + "-prefetch-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * Requests an account be loaded in the background, unless it has been recently loaded or is being loaded.
+     * @param accountId - the account name
+     */
+    public void prefetch(final String accountId) {
+        synchronized (this) {
+            requests++;
+            final Long loadedAt = warmed.get(accountId);
+            if (loadedAt != null && System.currentTimeMillis() - loadedAt <= ttlMillis) {
+                return;
+            }
+            if (!loading.add(accountId)) {
+                return;
+            }
+            prefetches++;
+        }
+        try {
+            loaders.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load(accountId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                loading.remove(accountId);
+            }
+        }
+    }
+
+
+    /**
+     * Records an account is about to be used to execute an order.
+     * @param accountId - the account name
+     * @return - true if the account was recently prefetched
+     */
+    public synchronized boolean claim(final String accountId) {
+        final Long loadedAt = warmed.remove(accountId);
+        if (loadedAt != null) {
+            if (System.currentTimeMillis() - loadedAt <= ttlMillis) {
+                hits++;
+                return true;
+            }
+            wasted++;
+        }
+        misses++;
+        return false;
+    }
+
+
+    /**
+     * Gets the number of prefetch requests received, including those not issued because the account was recently
+     * loaded or is being loaded
+     * @return - the number of requests
+     */
+    public synchronized long getRequestCount() {
+        return requests;
+    }
+
+
+    /**
+     * Gets the number of prefetches issued
+     * @return - the number of prefetches
+     */
+    public synchronized long getPrefetchCount() {
+        return prefetches;
+    }
+
+
+    /**
+     * Gets the number of claims finding a prefetched account
+     * @return - the number of hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+
+    /**
+     * Gets the number of claims finding no prefetched account
+     * @return - the number of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+
+    /**
+     * Gets the number of prefetched accounts that expired or were evicted unclaimed, expired accounts are counted as
+     * they are found
+     * @return - the number of wasted prefetches
+     */
+    public synchronized long getWastedCount() {
+        return wasted;
+    }
+
+
+    /**
+     * Stops the loader threads, unclaimed prefetches are counted as wasted.
+     */
+    public void shutdown() {
+        loaders.shutdownNow();
+        synchronized (this) {
+            wasted += warmed.size();
+            warmed.clear();
+            if (LOGGER.isLoggable(Level.INFO)) {
+                LOGGER.info(String.format("Account prefetches: %d, hits: %d, misses: %d, wasted: %d",
+                                          prefetches, hits, misses, wasted));
+            }
+        }
+    }
+
+
+    /**
+     * Loads an account through the account manager and records it as prefetched.
+     * @param accountId - the account name
+     */
+    private void load(final String accountId) {
+        boolean loaded = false;
+        try {
+            loaded = accountManager.getAccount(accountId) != null;
+        } catch (AccountException e) {
+            LOGGER.log(Level.FINE, "Unable to prefetch account " + accountId, e);
+        } finally {
+            synchronized (this) {
+                loading.remove(accountId);
+                if (loaded) {
+                    warmed.remove(accountId);
+                    warmed.put(accountId, System.currentTimeMillis());
+                    expire();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Discards the expired prefetches from the eldest end, counting them as wasted.
+     */
+    private void expire() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Long> loadTimes = warmed.values().iterator();
+        while (loadTimes.hasNext()) {
+            if (now - loadTimes.next() <= ttlMillis) {
+                break;
+            }
+            loadTimes.remove();
+            wasted++;
+        }
+    }
+}
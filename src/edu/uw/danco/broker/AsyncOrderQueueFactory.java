@@ -0,0 +1,72 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/19/13
+ * Time: 9:45 AM
+ *
+ * OrderQueueFactory decorating another factory, the queues it creates are switched to asynchronous mode. All queues
+ * created by an instance share the same dispatcher thread. Queues that are not BrokerOrderQueues cannot dispatch
+ * asynchronously and are left dispatching on the calling thread.
+ */
+public class AsyncOrderQueueFactory implements OrderQueueFactory {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(AsyncOrderQueueFactory.class.getName());
+
+    /** The factory creating the queues */
+    private final OrderQueueFactory factory;
+
+    /** The dispatcher shared by the queues */
+    private final OrderDispatcher dispatcher;
+
+
+    /**
+     * Constructor
+     * @param factory - the factory creating the queues
+     * @param dispatcher - the dispatcher shared by the queues created
+     */
+    public AsyncOrderQueueFactory(final OrderQueueFactory factory, final OrderDispatcher dispatcher) {
+        this.factory = factory;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public OrderQueue<StopBuyOrder> newStopBuyOrderQueue(final OrderDispatchFilter<?, StopBuyOrder> filter) {
+        return async(factory.newStopBuyOrderQueue(filter));
+    }
+
+    @Override
+    public OrderQueue<StopSellOrder> newStopSellOrderQueue(final OrderDispatchFilter<?, StopSellOrder> filter) {
+        return async(factory.newStopSellOrderQueue(filter));
+    }
+
+    @Override
+    public OrderQueue<Order> newMarketOrderQueue(final OrderDispatchFilter<?, Order> filter) {
+        return async(factory.newMarketOrderQueue(filter));
+    }
+
+
+    /**
+     * Switches a queue to asynchronous mode.
+     * @param queue - the queue
+     * @return - the queue
+     */
+    private <E extends Order> OrderQueue<E> async(final OrderQueue<E> queue) {
+        if (queue instanceof BrokerOrderQueue) {
+            ((BrokerOrderQueue<E>) queue).setOrderDispatcher(dispatcher);
+        } else {
+            LOGGER.warning("Order queue " + queue.getClass().getName() + " does not support asynchronous dispatch");
+        }
+        return queue;
+    }
+}
@@ -0,0 +1,49 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/25/13
+ * Time: 3:30 PM
+ *
+ * Moves batches of triggered stop orders to a broker's market order queue. The whole batch is added to the market
+ * queue before it is dispatched once, so executing the orders is not interleaved with, or nested within, the stop
+ * queue's dispatch loop. Orders within a batch are executed in the market queue's order.
+ */
+public class BatchMoveToMarketQueueProcessor extends MoveToMarketQueueProcessor implements BatchOrderProcessor {
+
+    /** The queue for orders */
+    private final OrderQueue<Order> marketQueue;
+
+
+    /**
+     * Constructor
+     * @param marketQueue - the queue the orders will be moved to
+     */
+    public BatchMoveToMarketQueueProcessor(final OrderQueue<Order> marketQueue) {
+        super(marketQueue);
+        this.marketQueue = marketQueue;
+    }
+
+
+    /**
+     * Adds the orders to the market order queue and dispatches it once. The orders are copied into the market queue,
+     * the list itself is not retained.
+     * @param orders - the orders to move
+     */
+    @Override
+    public void processBatch(final List<Order> orders) {
+        if (marketQueue instanceof BrokerOrderQueue) {
+            ((BrokerOrderQueue<Order>) marketQueue).enqueueAll(orders);
+        } else {
+            for (Order order : orders) {
+                marketQueue.enqueue(order);
+            }
+        }
+    }
+}
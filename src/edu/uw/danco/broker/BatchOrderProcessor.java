@@ -0,0 +1,26 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/25/13
+ * Time: 3:15 PM
+ *
+ * An OrderProcessor able to accept all the orders released by one dispatch at once. The broker's queues collect the
+ * dispatchable orders into a batch before handing them to a processor implementing this interface, rather than
+ * calling process for each order as it is removed.
+ */
+public interface BatchOrderProcessor extends OrderProcessor {
+
+    /**
+     * Processes the orders released by a single dispatch. The queue reuses the list for its next dispatch, so it must
+     * not be retained once this returns.
+     * @param orders - the orders, in dispatch order
+     */
+    void processBatch(List<Order> orders);
+}
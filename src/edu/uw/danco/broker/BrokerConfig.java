@@ -0,0 +1,646 @@
+package edu.uw.danco.broker;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/18/13
+ * Time: 11:05 AM
+ *
+ * JavaBean holding the optional settings used when constructing a BrokerImpl. The defaults reproduce the original
+ * broker behavior, so a default instance may always be used.
+ */
+public class BrokerConfig {
+
+    /** Factory for the order queues used by the broker and its order managers */
+    private OrderQueueFactory orderQueueFactory = TreeOrderQueueFactory.INSTANCE;
+
+    /** If true orders are dispatched on a dedicated dispatcher thread rather than the calling thread */
+    private boolean asyncDispatch;
+
+    /** If true triggered stop orders are moved to the market queue in batches */
+    private boolean batchStopDispatch;
+
+    /** Maximum number of market orders held in memory, 0 for an unbounded in-memory market queue */
+    private int marketQueueCapacity;
+
+    /** Path of the market order spill file, null for a temporary file */
+    private String spillFile;
+
+    /** Size of the market order spill file in bytes */
+    private int spillFileSize = 64 * 1024 * 1024;
+
+    /** If true market orders are rejected when the spill file is full, otherwise placing an order blocks */
+    private boolean rejectWhenSpillFull;
+
+    /** Number of threads executing the market open backlog, 0 to execute it on the exchange event thread */
+    private int openDrainThreads;
+
+    /** Target number of orders in each market open batch */
+    private int openDrainBatchSize = 256;
+
+    /** If true order managers are created on the first stop order for a ticker rather than at construction */
+    private boolean lazyOrderManagers;
+
+    /** Time an order manager's queues must be empty before it is released, 0 to never release order managers */
+    private long orderManagerIdleMillis;
+
+    /** If true price changes are conflated per ticker and applied to the order managers on a separate thread */
+    private boolean conflatePrices;
+
+    /** Number of threads the order managers are sharded across, 0 to run them on the calling threads */
+    private int orderManagerShards;
+
+    /** Number of slots in the exchange event ring buffer, 0 to process exchange events on the exchange's thread */
+    private int eventRingSize;
+
+    /** How the exchange event ring buffer's threads wait */
+    private WaitStrategy eventWaitStrategy = WaitStrategy.PARK;
+
+    /** If true quotes and market state are served from a copy of the exchange state kept by the broker */
+    private boolean mirrorExchange;
+
+    /** Number of lanes executing market orders in parallel by account, 0 to execute on the dispatching thread */
+    private int executionLanes;
+
+    /** Number of orders each execution lane may hold */
+    private int executionLaneCapacity = 1024;
+
+    /** If true each account's market orders are executed on a virtual thread */
+    private boolean virtualThreadExecution;
+
+    /** Maximum number of virtual thread executions calling the exchange at once, 0 if unlimited */
+    private int exchangeConcurrency;
+
+    /** If true market orders are executed in load, trade and persist stages */
+    private boolean pipelineExecution;
+
+    /** Number of trades in flight at once in the pipeline */
+    private int pipelineWindow = 4;
+
+    /** Number of orders each pipeline stage may hold */
+    private int pipelineCapacity = 1024;
+
+    /** Distance from the price within which a stop order's account is prefetched, 0 to disable prefetching */
+    private int prefetchDistance;
+
+    /** Number of threads prefetching accounts */
+    private int prefetchThreads = 1;
+
+    /** Maximum number of prefetched accounts tracked */
+    private int prefetchMaxAccounts = 1024;
+
+    /** Time a prefetched account remains useful in milliseconds */
+    private long prefetchTtlMillis = 10000;
+
+    /** Maximum number of authenticated sessions, 0 to disable sessions */
+    private int sessionCacheSize;
+
+    /** Time a session may go unused before it expires in milliseconds */
+    private long sessionIdleMillis = 30 * 60 * 1000L;
+
+
+    /**
+     * Gets the factory for the order queues
+     * @return - the order queue factory
+     */
+    public OrderQueueFactory getOrderQueueFactory() {
+        return orderQueueFactory;
+    }
+
+
+    /**
+     * Sets the factory for the order queues
+     * @param orderQueueFactory - the order queue factory
+     */
+    public void setOrderQueueFactory(final OrderQueueFactory orderQueueFactory) {
+        this.orderQueueFactory = orderQueueFactory;
+    }
+
+
+    /**
+     * Tests if asynchronous dispatching is enabled
+     * @return - true if orders are dispatched on a dedicated dispatcher thread
+     */
+    public boolean isAsyncDispatch() {
+        return asyncDispatch;
+    }
+
+
+    /**
+     * Enables asynchronous dispatching, when enabled the queues created by the order queue factory share one
+     * dispatcher thread.
+     * @param asyncDispatch - true to dispatch orders on a dedicated dispatcher thread
+     */
+    public void setAsyncDispatch(final boolean asyncDispatch) {
+        this.asyncDispatch = asyncDispatch;
+    }
+
+
+    /**
+     * Tests if triggered stop orders are moved to the market queue in batches
+     * @return - true if batching is enabled
+     */
+    public boolean isBatchStopDispatch() {
+        return batchStopDispatch;
+    }
+
+
+    /**
+     * Enables batching of triggered stop orders, all the stop orders triggered by a price change are moved to the
+     * market queue together and executed in the market queue's order, rather than each being executed as it triggers.
+     * @param batchStopDispatch - true to move triggered stop orders in batches
+     */
+    public void setBatchStopDispatch(final boolean batchStopDispatch) {
+        this.batchStopDispatch = batchStopDispatch;
+    }
+
+
+    /**
+     * Gets the maximum number of market orders held in memory
+     * @return - the in-memory capacity, 0 if the market queue is unbounded
+     */
+    public int getMarketQueueCapacity() {
+        return marketQueueCapacity;
+    }
+
+
+    /**
+     * Bounds the number of market orders held in memory, orders beyond the capacity are spilled to a memory mapped
+     * file until the exchange opens. Spilled orders are read back as new market orders with new order ids.
+     * @param marketQueueCapacity - the in-memory capacity, 0 for an unbounded market queue
+     */
+    public void setMarketQueueCapacity(final int marketQueueCapacity) {
+        this.marketQueueCapacity = marketQueueCapacity;
+    }
+
+
+    /**
+     * Gets the path of the market order spill file
+     * @return - the spill file path, null if a temporary file is used
+     */
+    public String getSpillFile() {
+        return spillFile;
+    }
+
+
+    /**
+     * Sets the path of the market order spill file
+     * @param spillFile - the spill file path, null to use a temporary file
+     */
+    public void setSpillFile(final String spillFile) {
+        this.spillFile = spillFile;
+    }
+
+
+    /**
+     * Gets the size of the market order spill file
+     * @return - the size in bytes
+     */
+    public int getSpillFileSize() {
+        return spillFileSize;
+    }
+
+
+    /**
+     * Sets the size of the market order spill file
+     * @param spillFileSize - the size in bytes
+     */
+    public void setSpillFileSize(final int spillFileSize) {
+        this.spillFileSize = spillFileSize;
+    }
+
+
+    /**
+     * Tests if market orders are rejected when the spill file is full
+     * @return - true if orders are rejected, false if placing an order blocks until there is room
+     */
+    public boolean isRejectWhenSpillFull() {
+        return rejectWhenSpillFull;
+    }
+
+
+    /**
+     * Selects the behavior when both the in-memory market queue and the spill file are full
+     * @param rejectWhenSpillFull - true to reject orders with a BrokerException, false to block until there is room
+     */
+    public void setRejectWhenSpillFull(final boolean rejectWhenSpillFull) {
+        this.rejectWhenSpillFull = rejectWhenSpillFull;
+    }
+
+
+    /**
+     * Gets the number of threads executing the market open backlog
+     * @return - the number of threads, 0 if the backlog is executed on the exchange event thread
+     */
+    public int getOpenDrainThreads() {
+        return openDrainThreads;
+    }
+
+
+    /**
+     * Executes the orders held while the exchange was closed on a pool of threads when the exchange opens. Orders
+     * of one account are still executed in order, so the account manager must be thread safe. Has no effect on the
+     * backlog when dispatching asynchronously.
+     * @param openDrainThreads - the number of threads, 0 to execute the backlog on the exchange event thread
+     */
+    public void setOpenDrainThreads(final int openDrainThreads) {
+        this.openDrainThreads = openDrainThreads;
+    }
+
+
+    /**
+     * Gets the target number of orders in each market open batch
+     * @return - the batch size
+     */
+    public int getOpenDrainBatchSize() {
+        return openDrainBatchSize;
+    }
+
+
+    /**
+     * Sets the target number of orders in each market open batch, a batch holds all the orders of its accounts so
+     * may exceed the target
+     * @param openDrainBatchSize - the batch size
+     */
+    public void setOpenDrainBatchSize(final int openDrainBatchSize) {
+        this.openDrainBatchSize = openDrainBatchSize;
+    }
+
+
+    /**
+     * Tests if order managers are created on demand
+     * @return - true if order managers are created on the first stop order for their ticker
+     */
+    public boolean isLazyOrderManagers() {
+        return lazyOrderManagers;
+    }
+
+
+    /**
+     * Enables on demand creation of order managers, an order manager is created the first time a stop order is
+     * placed for its ticker and seeded with the current price from the exchange.
+     * @param lazyOrderManagers - true to create order managers on demand
+     */
+    public void setLazyOrderManagers(final boolean lazyOrderManagers) {
+        this.lazyOrderManagers = lazyOrderManagers;
+    }
+
+
+    /**
+     * Gets the time an order manager's queues must be empty before it is released
+     * @return - the idle time in milliseconds, 0 if order managers are never released
+     */
+    public long getOrderManagerIdleMillis() {
+        return orderManagerIdleMillis;
+    }
+
+
+    /**
+     * Sets the time an order manager's queues must be empty before it is released, only applies when order managers
+     * are created on demand
+     * @param orderManagerIdleMillis - the idle time in milliseconds, 0 to never release order managers
+     */
+    public void setOrderManagerIdleMillis(final long orderManagerIdleMillis) {
+        this.orderManagerIdleMillis = orderManagerIdleMillis;
+    }
+
+
+    /**
+     * Tests if price changes are conflated
+     * @return - true if price changes are conflated per ticker
+     */
+    public boolean isConflatePrices() {
+        return conflatePrices;
+    }
+
+
+    /**
+     * Enables price conflation, price changes are applied to the order managers on a separate thread and the ticks
+     * for a ticker arriving while it waits are merged into one update carrying their high, low and latest price.
+     * @param conflatePrices - true to conflate price changes
+     */
+    public void setConflatePrices(final boolean conflatePrices) {
+        this.conflatePrices = conflatePrices;
+    }
+
+
+    /**
+     * Gets the number of threads the order managers are sharded across
+     * @return - the number of shards, 0 if order managers run on the calling threads
+     */
+    public int getOrderManagerShards() {
+        return orderManagerShards;
+    }
+
+
+    /**
+     * Shards the order managers across single threaded executors, each ticker is assigned to a shard by its id and
+     * all its price changes and stop orders are handled on that shard, in order. The placing thread waits while its
+     * stop order is queued on the shard, and triggered orders are executed on the shard threads so the account manager
+     * must be thread safe.
+     * @param orderManagerShards - the number of shards, 0 to run order managers on the calling threads
+     */
+    public void setOrderManagerShards(final int orderManagerShards) {
+        this.orderManagerShards = orderManagerShards;
+    }
+
+
+    /**
+     * Gets the number of slots in the exchange event ring buffer
+     * @return - the number of slots, 0 if exchange events are processed on the exchange's thread
+     */
+    public int getEventRingSize() {
+        return eventRingSize;
+    }
+
+
+    /**
+     * Hands exchange events to a broker event thread through a ring buffer of the given size, rounded up to a power
+     * of two. The exchange's callback thread then only records the event, and waits only while the buffer is full.
+     * @param eventRingSize - the number of slots, 0 to process exchange events on the exchange's thread
+     */
+    public void setEventRingSize(final int eventRingSize) {
+        this.eventRingSize = eventRingSize;
+    }
+
+
+    /**
+     * Gets how the exchange event ring buffer's threads wait
+     * @return - the wait strategy
+     */
+    public WaitStrategy getEventWaitStrategy() {
+        return eventWaitStrategy;
+    }
+
+
+    /**
+     * Sets how the exchange event ring buffer's threads wait
+     * @param eventWaitStrategy - the wait strategy
+     */
+    public void setEventWaitStrategy(final WaitStrategy eventWaitStrategy) {
+        this.eventWaitStrategy = eventWaitStrategy;
+    }
+
+
+    /**
+     * Tests if quotes and market state are served from the broker's copy of the exchange state
+     * @return - true if the exchange state is mirrored
+     */
+    public boolean isMirrorExchange() {
+        return mirrorExchange;
+    }
+
+
+    /**
+     * Enables the exchange mirror, the broker keeps the market state and last prices from the exchange events and
+     * uses them for quotes and order execution rather than querying the exchange.
+     * @param mirrorExchange - true to mirror the exchange state
+     */
+    public void setMirrorExchange(final boolean mirrorExchange) {
+        this.mirrorExchange = mirrorExchange;
+    }
+
+
+    /**
+     * Gets the number of lanes executing market orders
+     * @return - the number of execution lanes, 0 if orders execute on the dispatching thread
+     */
+    public int getExecutionLanes() {
+        return executionLanes;
+    }
+
+
+    /**
+     * Sets the number of lanes executing market orders. Orders are assigned to lanes by account, so each account's
+     * orders execute in order while different accounts execute in parallel. Execution lanes take precedence over
+     * virtual thread execution, with lanes configured virtual thread execution and the exchange concurrency limit
+     * are ignored and the broker logs a warning.
+     * @param executionLanes - the number of execution lanes, 0 to execute on the dispatching thread
+     */
+    public void setExecutionLanes(final int executionLanes) {
+        this.executionLanes = executionLanes;
+    }
+
+
+    /**
+     * Gets the number of orders each execution lane may hold
+     * @return - the lane capacity
+     */
+    public int getExecutionLaneCapacity() {
+        return executionLaneCapacity;
+    }
+
+
+    /**
+     * Sets the number of orders each execution lane may hold, dispatching waits while a lane is full
+     * @param executionLaneCapacity - the lane capacity
+     */
+    public void setExecutionLaneCapacity(final int executionLaneCapacity) {
+        this.executionLaneCapacity = executionLaneCapacity;
+    }
+
+
+    /**
+     * Tests if market orders are executed on virtual threads
+     * @return - true if orders are executed on virtual threads
+     */
+    public boolean isVirtualThreadExecution() {
+        return virtualThreadExecution;
+    }
+
+
+    /**
+     * Enables executing market orders on virtual threads, each account with orders to execute gets its own thread
+     * so executions blocked on the DAO or the exchange do not hold a platform thread. Ignored if execution lanes are
+     * configured. Falls back to platform threads on JVMs without virtual threads.
+     * @param virtualThreadExecution - true to execute orders on virtual threads
+     */
+    public void setVirtualThreadExecution(final boolean virtualThreadExecution) {
+        this.virtualThreadExecution = virtualThreadExecution;
+    }
+
+
+    /**
+     * Gets the maximum number of virtual thread executions trading on the exchange at once
+     * @return - the exchange concurrency limit, 0 if unlimited
+     */
+    public int getExchangeConcurrency() {
+        return exchangeConcurrency;
+    }
+
+
+    /**
+     * Sets the maximum number of virtual thread executions trading on the exchange at once, only the call to
+     * executeTrade holds a permit so account reads and writes are not limited. Only applies with virtual thread
+     * execution, so it is ignored if execution lanes are configured.
+     * @param exchangeConcurrency - the exchange concurrency limit, 0 if unlimited
+     */
+    public void setExchangeConcurrency(final int exchangeConcurrency) {
+        this.exchangeConcurrency = exchangeConcurrency;
+    }
+
+
+    /**
+     * Tests if market orders are executed in pipeline stages
+     * @return - true if orders are pipelined
+     */
+    public boolean isPipelineExecution() {
+        return pipelineExecution;
+    }
+
+
+    /**
+     * Enables executing market orders in a pipeline of load, trade and persist stages, so the account load of one
+     * order overlaps the trade and persistence of the orders before it.
+     * @param pipelineExecution - true to pipeline order execution
+     */
+    public void setPipelineExecution(final boolean pipelineExecution) {
+        this.pipelineExecution = pipelineExecution;
+    }
+
+
+    /**
+     * Gets the number of trades in flight at once in the pipeline
+     * @return - the trade window
+     */
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+
+    /**
+     * Sets the number of trades in flight at once in the pipeline
+     * @param pipelineWindow - the trade window
+     */
+    public void setPipelineWindow(final int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+    }
+
+
+    /**
+     * Gets the number of orders each pipeline stage may hold
+     * @return - the stage capacity
+     */
+    public int getPipelineCapacity() {
+        return pipelineCapacity;
+    }
+
+
+    /**
+     * Sets the number of orders each pipeline stage may hold, a full stage holds up the stage feeding it
+     * @param pipelineCapacity - the stage capacity
+     */
+    public void setPipelineCapacity(final int pipelineCapacity) {
+        this.pipelineCapacity = pipelineCapacity;
+    }
+
+
+    /**
+     * Gets the distance from the price within which a stop order's account is prefetched
+     * @return - the prefetch distance, 0 if accounts are not prefetched
+     */
+    public int getPrefetchDistance() {
+        return prefetchDistance;
+    }
+
+
+    /**
+     * Enables prefetching the accounts of stop orders within this distance of triggering, so the account is cached
+     * when the order triggers. Only useful if the account manager caches accounts.
+     * @param prefetchDistance - the prefetch distance, 0 to disable prefetching
+     */
+    public void setPrefetchDistance(final int prefetchDistance) {
+        this.prefetchDistance = prefetchDistance;
+    }
+
+
+    /**
+     * Gets the number of threads prefetching accounts
+     * @return - the number of prefetch threads
+     */
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+
+    /**
+     * Sets the number of threads prefetching accounts
+     * @param prefetchThreads - the number of prefetch threads
+     */
+    public void setPrefetchThreads(final int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+    }
+
+
+    /**
+     * Gets the maximum number of prefetched accounts tracked
+     * @return - the maximum number of prefetched accounts
+     */
+    public int getPrefetchMaxAccounts() {
+        return prefetchMaxAccounts;
+    }
+
+
+    /**
+     * Sets the maximum number of prefetched accounts tracked, the eldest is discarded beyond this
+     * @param prefetchMaxAccounts - the maximum number of prefetched accounts
+     */
+    public void setPrefetchMaxAccounts(final int prefetchMaxAccounts) {
+        this.prefetchMaxAccounts = prefetchMaxAccounts;
+    }
+
+
+    /**
+     * Gets the time a prefetched account remains useful
+     * @return - the prefetch TTL in milliseconds
+     */
+    public long getPrefetchTtlMillis() {
+        return prefetchTtlMillis;
+    }
+
+
+    /**
+     * Sets the time a prefetched account remains useful, should not exceed the account cache TTL
+     * @param prefetchTtlMillis - the prefetch TTL in milliseconds
+     */
+    public void setPrefetchTtlMillis(final long prefetchTtlMillis) {
+        this.prefetchTtlMillis = prefetchTtlMillis;
+    }
+
+
+    /**
+     * Gets the maximum number of authenticated sessions
+     * @return - the session cache size, 0 if sessions are disabled
+     */
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+
+    /**
+     * Enables sessions, a login is issued a token identifying the account for the rest of the session without the
+     * password being checked again. The least recently used session is dropped beyond this size.
+     * @param sessionCacheSize - the session cache size, 0 to disable sessions
+     */
+    public void setSessionCacheSize(final int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+
+    /**
+     * Gets the time a session may go unused before it expires
+     * @return - the session idle time in milliseconds
+     */
+    public long getSessionIdleMillis() {
+        return sessionIdleMillis;
+    }
+
+
+    /**
+     * Sets the time a session may go unused before it expires
+     * @param sessionIdleMillis - the session idle time in milliseconds
+     */
+    public void setSessionIdleMillis(final long sessionIdleMillis) {
+        this.sessionIdleMillis = sessionIdleMillis;
+    }
+}
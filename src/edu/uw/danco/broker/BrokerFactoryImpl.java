@@ -13,9 +13,30 @@ import edu.uw.ext.framework.exchange.StockExchange;
  */
 public class BrokerFactoryImpl implements BrokerFactory {
 
+    /** The settings used for the brokers created by this factory */
+    private BrokerConfig config = new BrokerConfig();
+
     @Override
     public Broker newBroker(String name, AccountManager acctMngr, StockExchange exch) {
-        BrokerImpl broker = new BrokerImpl(name, acctMngr, exch);
+        BrokerImpl broker = new BrokerImpl(name, acctMngr, exch, config);
         return broker;
     }
+
+
+    /**
+     * Gets the settings used for new brokers
+     * @return - the broker settings
+     */
+    public BrokerConfig getConfig() {
+        return config;
+    }
+
+
+    /**
+     * Sets the settings used for new brokers, allows the settings to be provided through the bean factory.
+     * @param config - the broker settings
+     */
+    public void setConfig(final BrokerConfig config) {
+        this.config = config;
+    }
 }
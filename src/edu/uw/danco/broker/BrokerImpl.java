@@ -1,5 +1,7 @@
 package edu.uw.danco.broker;
 
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.dao.ResourceLimiter;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.AccountManager;
@@ -10,10 +12,16 @@ import edu.uw.ext.framework.exchange.StockExchange;
 import edu.uw.ext.framework.exchange.StockQuote;
 import edu.uw.ext.framework.order.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,6 +35,9 @@ public class BrokerImpl implements Broker, ExchangeListener {
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(BrokerImpl.class.getName());
 
+    /** Prefix of temporary spill file names, createTempFile requires at least three characters */
+    private static final String SPILL_FILE_PREFIX = "market-orders";
+
     /** The name of this broker instance */
     private String brokerName;
 
@@ -36,8 +47,11 @@ public class BrokerImpl implements Broker, ExchangeListener {
     /** The stock exchange used by this broker */
     private StockExchange exchange;
 
-    /** The collection of OrderManagers */
-    Map<String, OrderManager> orderManagers;
+    /** The ids of the exchange's ticker symbols */
+    private SymbolTable symbols;
+
+    /** The OrderManagers indexed by ticker id, an element is null until its order manager is created */
+    AtomicReferenceArray<OrderManager> orderManagers;
 
     /** The Dispatch Filter for market orders */
     private MarketDispatchFilter marketDispatchFilter;
@@ -45,6 +59,54 @@ public class BrokerImpl implements Broker, ExchangeListener {
     /** The market order queue */
     private OrderQueue<Order> marketOrders;
 
+    /** The dispatcher thread shared by the order queues in asynchronous mode, null otherwise */
+    private OrderDispatcher dispatcher;
+
+    /** Executes the market open backlog in parallel, null to execute it on the exchange event thread */
+    private MarketOpenDrainer openDrainer;
+
+    /** If true order managers are created on the first stop order for their ticker */
+    private boolean lazyOrderManagers;
+
+    /** The factory for the stop order queues of order managers created on demand */
+    private OrderQueueFactory queueFactory;
+
+    /** The processor moving triggered stop orders to the market queue */
+    private OrderProcessor stopOrderProcessor;
+
+    /** Releases idle order managers, null if order managers are never released */
+    private ScheduledExecutorService orderManagerEvictor;
+
+    /** Conflates price changes ahead of the order managers, null to adjust prices on the exchange thread */
+    private PriceConflator priceConflator;
+
+    /** The threads the order managers run on, null to run them on the calling threads */
+    private TickerShards shards;
+
+    /** Hands exchange events to the broker's event thread, null to process them on the exchange's thread */
+    private EventRingBuffer eventRing;
+
+    /** The broker's copy of the exchange state, null to query the exchange */
+    private ExchangeMirror mirror;
+
+    /** Executes market orders on lanes partitioned by account, null to execute them on the dispatching thread */
+    private PartitionedExecutionEngine executionEngine;
+
+    /** Executes market orders on virtual threads, null if not configured */
+    private VirtualThreadOrderProcessor virtualThreadProcessor;
+
+    /** Executes market orders in load, trade and persist stages, null if not configured */
+    private PipelinedOrderProcessor pipeline;
+
+    /** Loads the accounts of stop orders close to triggering, null if accounts are not prefetched */
+    private AccountPrefetcher prefetcher;
+
+    /** Distance from the price within which a stop order's account is prefetched */
+    private int prefetchDistance;
+
+    /** The authenticated sessions, null if sessions are not enabled */
+    private SessionCache sessions;
+
 
     /**
      * Constructor for sub classes
@@ -60,29 +122,182 @@ public class BrokerImpl implements Broker, ExchangeListener {
      * @param exchange - the stock exchange used by this broker
      */
     public BrokerImpl(final String brokerName, final AccountManager acctManager, final StockExchange exchange) {
+        this(brokerName, acctManager, exchange, new BrokerConfig());
+    }
+
+
+    /**
+     * Constructor
+     * @param brokerName - name of the broker
+     * @param acctManager - the account manager used by this broker
+     * @param exchange - the stock exchange used by this broker
+     * @param config - the optional broker settings
+     */
+    public BrokerImpl(final String brokerName, final AccountManager acctManager, final StockExchange exchange,
+                      final BrokerConfig config) {
         this.brokerName = brokerName;
         this.acctManager = acctManager;
         this.exchange = exchange;
 
-        String[] stockTickers = this.exchange.getTickers();
-        orderManagers = new TreeMap<String, OrderManager>();
-
-        final OrderProcessor processor = new StockTraderOrderProcessor(acctManager, exchange);
+        if (config.getSessionCacheSize() > 0) {
+            sessions = new SessionCache(config.getSessionCacheSize(), config.getSessionIdleMillis());
+        }
+        symbols = new SymbolTable(this.exchange.getTickers());
+        if (config.isMirrorExchange()) {
+            mirror = new ExchangeMirror(exchange, symbols);
+        }
+        if (config.getPrefetchDistance() > 0) {
+            prefetcher = new AccountPrefetcher(acctManager, config.getPrefetchThreads(),
+                                               config.getPrefetchMaxAccounts(), config.getPrefetchTtlMillis(),
+                                               brokerName);
+            prefetchDistance = config.getPrefetchDistance();
+        }
+        if (config.getExecutionLanes() > 0
+                && (config.isVirtualThreadExecution() || config.getExchangeConcurrency() > 0)) {
+            LOGGER.warning("Execution lanes are configured, ignoring virtual thread execution and the exchange"
+                           + " concurrency limit");
+        } else if (!config.isVirtualThreadExecution() && config.getExchangeConcurrency() > 0) {
+            LOGGER.warning("The exchange concurrency limit only applies to virtual thread execution, ignoring it");
+        }
+        final boolean virtualThreads = config.getExecutionLanes() <= 0 && config.isVirtualThreadExecution();
+        final StockExchange tradingExchange = virtualThreads && config.getExchangeConcurrency() > 0
+                ? new LimitedStockExchange(exchange,
+                                           new ResourceLimiter("exchange", config.getExchangeConcurrency()))
+                : exchange;
+        OrderProcessor processor;
+        if (config.isPipelineExecution()) {
+            pipeline = new PipelinedOrderProcessor(acctManager, tradingExchange, mirror, prefetcher,
+                                                   config.getPipelineWindow(), config.getPipelineCapacity(),
+                                                   brokerName);
+            processor = pipeline;
+        } else {
+            final StockTraderOrderProcessor trader =
+                    new StockTraderOrderProcessor(acctManager, tradingExchange, mirror);
+            trader.setAccountPrefetcher(prefetcher);
+            processor = trader;
+        }
+        if (config.getExecutionLanes() > 0) {
+            executionEngine = new PartitionedExecutionEngine(processor, config.getExecutionLanes(),
+                                                             config.getExecutionLaneCapacity(), brokerName);
+            processor = executionEngine;
+        } else if (virtualThreads) {
+            virtualThreadProcessor = new VirtualThreadOrderProcessor(processor, null, brokerName);
+            processor = virtualThreadProcessor;
+        }
         marketDispatchFilter = new MarketDispatchFilter(exchange.isOpen());
-        marketOrders = new OrderQueueImpl<Order>(marketDispatchFilter);
-        marketOrders.setOrderProcessor(processor);
+        final OrderQueueFactory queueFactory;
+        if (config.isAsyncDispatch()) {
+            dispatcher = new OrderDispatcher(brokerName + "-dispatcher");
+            queueFactory = new AsyncOrderQueueFactory(config.getOrderQueueFactory(), dispatcher);
+        } else {
+            queueFactory = config.getOrderQueueFactory();
+        }
+        if (config.getMarketQueueCapacity() > 0) {
+            final SpillingOrderQueue spillingOrders = newSpillingOrderQueue(config);
+            spillingOrders.setOrderDispatcher(dispatcher);
+            marketOrders = spillingOrders;
+        } else {
+            marketOrders = queueFactory.newMarketOrderQueue(marketDispatchFilter);
+        }
+        if (config.getOpenDrainThreads() > 0) {
+            openDrainer = new MarketOpenDrainer(processor, config.getOpenDrainThreads(),
+                                                config.getOpenDrainBatchSize(), brokerName);
+            marketOrders.setOrderProcessor(openDrainer);
+        } else {
+            marketOrders.setOrderProcessor(processor);
+        }
+
+        final OrderProcessor orderProc = config.isBatchStopDispatch()
+                                         ? new BatchMoveToMarketQueueProcessor(marketOrders)
+                                         : new MoveToMarketQueueProcessor(marketOrders);
+        this.queueFactory = queueFactory;
+        stopOrderProcessor = orderProc;
+        lazyOrderManagers = config.isLazyOrderManagers();
+        orderManagers = new AtomicReferenceArray<OrderManager>(symbols.size());
+        if (lazyOrderManagers) {
+            if (config.getOrderManagerIdleMillis() > 0) {
+                startOrderManagerEvictor(config.getOrderManagerIdleMillis());
+            }
+        } else {
+            for (int id = 0; id < symbols.size(); id++) {
+                StockQuote quote = exchange.getQuote(symbols.symbolOf(id));
+                OrderManagerImpl orderManager = new OrderManagerImpl(quote.getTicker(), quote.getPrice(),
+                                                                     queueFactory);
+                orderManager.setOrderProcessor(orderProc);
+                if (prefetcher != null) {
+                    orderManager.setAccountPrefetcher(prefetcher, prefetchDistance);
+                }
+                orderManagers.set(id, orderManager);
+                if (mirror != null) {
+                    mirror.setPrice(id, quote.getPrice());
+                }
+            }
+        }
+
+        if (config.getOrderManagerShards() > 0) {
+            shards = new TickerShards(config.getOrderManagerShards(), brokerName);
+        }
+        if (config.isConflatePrices()) {
+            priceConflator = new PriceConflator(symbols.size(), new ConflatedPriceListener() {
+                @Override
+                public void pricesChanged(final int id, final int low, final int high, final int last) {
+                    if (shards == null) {
+                        adjustPrice(id, low, high, last);
+                    } else {
+                        shards.execute(id, new Runnable() {
+                            @Override
+                            public void run() {
+                                adjustPrice(id, low, high, last);
+                            }
+                        });
+                    }
+                }
+            }, brokerName + "-prices");
+        }
+
+        if (config.getEventRingSize() > 0) {
+            eventRing = new EventRingBuffer(config.getEventRingSize(), config.getEventWaitStrategy(),
+                                            new ExchangeListener() {
+                @Override
+                public void exchangeOpened(final ExchangeEvent event) {
+                    processExchangeOpened(event);
+                }
 
-        final OrderProcessor orderProc = new MoveToMarketQueueProcessor(marketOrders);
-        for (String stockTicker : stockTickers) {
-            StockQuote quote = exchange.getQuote(stockTicker);
-            OrderManager orderManager = new OrderManagerImpl(quote.getTicker(), quote.getPrice());
-            orderManager.setOrderProcessor(orderProc);
-            orderManagers.put(stockTicker, orderManager);
+                @Override
+                public void exchangeClosed(final ExchangeEvent event) {
+                    processExchangeClosed(event);
+                }
+
+                @Override
+                public void priceChanged(final ExchangeEvent event) {
+                    processPriceChanged(event);
+                }
+            }, brokerName + "-events");
         }
 
         exchange.addExchangeListener(this);     //when adding self as listener, always do it as the last thing.
     }
 
+
+    /**
+     * Creates the bounded market order queue.
+     * @param config - the broker settings
+     * @return - the market order queue
+     */
+    private SpillingOrderQueue newSpillingOrderQueue(final BrokerConfig config) {
+        try {
+            final File spillFile = config.getSpillFile() != null
+                                   ? new File(config.getSpillFile())
+                                   : File.createTempFile(SPILL_FILE_PREFIX, ".spill");
+            return new SpillingOrderQueue(marketDispatchFilter, config.getMarketQueueCapacity(), spillFile,
+                                          config.getSpillFileSize(), config.isRejectWhenSpillFull());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to create the market order spill file", e);
+            throw new IllegalStateException("Unable to create the market order spill file", e);
+        }
+    }
+
+
     /**
      * Returns the name of this broker
      * @return - the value for the broker's name
@@ -134,6 +349,9 @@ public class BrokerImpl implements Broker, ExchangeListener {
     public void deleteAccount(String username) throws BrokerException {
         try {
             acctManager.deleteAccount(username);
+            if (sessions != null) {
+                sessions.closeAccount(username);
+            }
         } catch (AccountException e) {
             LOGGER.log(Level.SEVERE, "Unable to delete account " + username, e);
             throw new BrokerException(e);
@@ -152,9 +370,16 @@ public class BrokerImpl implements Broker, ExchangeListener {
     public Account getAccount(final String username, final String password) throws BrokerException {
         Account account = null;
         try {
-            account = acctManager.getAccount(username);
+            if (acctManager instanceof AccountManagerImpl) {
+                account = ((AccountManagerImpl) acctManager).login(username, password);
+            } else {
+                account = acctManager.getAccount(username);
+                if (account != null && !acctManager.validateLogin(username, password)) {
+                    account = null;
+                }
+            }
 
-            if (account == null || !acctManager.validateLogin(username, password)) {
+            if (account == null) {
                 throw new BrokerException("Unable to retrieve requested account: " + username);
             }
         } catch (AccountException e) {
@@ -165,6 +390,59 @@ public class BrokerImpl implements Broker, ExchangeListener {
     }
 
 
+    /**
+     * Authenticates an account and opens a session for it
+     * @param username - the name of the account
+     * @param password - the password for the account
+     * @return - the session token, identifying the account until the session is closed or expires
+     * @throws BrokerException - if sessions are not enabled or the login fails
+     */
+    public String openSession(final String username, final String password) throws BrokerException {
+        if (sessions == null) {
+            throw new BrokerException("Sessions are not enabled");
+        }
+        getAccount(username, password);
+        return sessions.open(username);
+    }
+
+
+    /**
+     * Get the account of a session, the password is not checked again. If the account manager caches accounts the
+     * account is usually served without a storage access.
+     * @param token - the session token
+     * @return - the account
+     * @throws BrokerException - if the session is unknown or has expired, or the account cannot be read
+     */
+    public Account getAccount(final String token) throws BrokerException {
+        final String username = sessions == null ? null : sessions.accountFor(token);
+        if (username == null) {
+            throw new BrokerException("Unknown or expired session");
+        }
+        try {
+            final Account account = acctManager.getAccount(username);
+            if (account == null) {
+                sessions.close(token);
+                throw new BrokerException("Unable to retrieve requested account: " + username);
+            }
+            return account;
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to retrieve account with name: " + username, e);
+            throw new BrokerException(e);
+        }
+    }
+
+
+    /**
+     * Closes a session
+     * @param token - the session token
+     */
+    public void closeSession(final String token) {
+        if (sessions != null) {
+            sessions.close(token);
+        }
+    }
+
+
     /**
      * Gets the current market stock quote reflecting trading price
      * @param ticker - the stock symbol
@@ -173,7 +451,43 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public StockQuote requestQuote(String ticker) throws BrokerException {
-        return exchange.getQuote(ticker);
+        return mirror != null ? mirror.getQuote(ticker) : exchange.getQuote(ticker);
+    }
+
+
+    /**
+     * Gets current quotes for several stocks
+     * @param tickers - the stock symbols
+     * @return - the quotes, in the order of the tickers
+     * @throws BrokerException
+     */
+    public StockQuote[] requestQuotes(final String[] tickers) throws BrokerException {
+        if (mirror != null) {
+            return mirror.getQuotes(tickers);
+        }
+        final StockQuote[] quotes = new StockQuote[tickers.length];
+        for (int i = 0; i < tickers.length; i++) {
+            quotes[i] = exchange.getQuote(tickers[i]);
+        }
+        return quotes;
+    }
+
+
+    /**
+     * Tests if the exchange is open, served from the broker's copy of the exchange state if it keeps one
+     * @return - true if the exchange is open
+     */
+    public boolean isMarketOpen() {
+        return mirror != null ? mirror.isOpen() : exchange.isOpen();
+    }
+
+
+    /**
+     * Gets the tickers traded on the exchange, served from the broker's copy of the exchange state if it keeps one
+     * @return - the ticker symbols
+     */
+    public String[] getTickers() {
+        return mirror != null ? mirror.getTickers() : exchange.getTickers();
     }
 
 
@@ -184,7 +498,7 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(MarketBuyOrder order) throws BrokerException {
-        marketOrders.enqueue(order);
+        enqueueMarketOrder(order);
     }
 
 
@@ -195,7 +509,22 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(MarketSellOrder order) throws BrokerException {
-        marketOrders.enqueue(order);
+        enqueueMarketOrder(order);
+    }
+
+
+    /**
+     * Adds an order to the market queue.
+     * @param order - the order
+     * @throws BrokerException - if the market queue is full and rejecting orders
+     */
+    private void enqueueMarketOrder(final Order order) throws BrokerException {
+        try {
+            marketOrders.enqueue(order);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Unable to queue order " + order.getOrderId(), e);
+            throw new BrokerException(e);
+        }
     }
 
 
@@ -206,7 +535,7 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(StopBuyOrder order) throws BrokerException {
-        orderManagers.get(order.getStockTicker()).queueOrder(order);
+        routeStopOrder(order);
     }
 
 
@@ -217,7 +546,268 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void placeOrder(StopSellOrder order) throws BrokerException {
-        orderManagers.get(order.getStockTicker()).queueOrder(order);
+        routeStopOrder(order);
+    }
+
+
+    /**
+     * Passes a stop order to its order manager, on the ticker's shard if the order managers are sharded. The caller
+     * waits for a sharded order to be queued, so a failure is reported to the caller and the order can be found or
+     * cancelled as soon as this returns.
+     * @param order - a stop buy or stop sell order
+     * @throws BrokerException - if the exchange does not trade the order's ticker
+     */
+    private void routeStopOrder(final Order order) throws BrokerException {
+        if (shards == null) {
+            placeStopOrder(order);
+            return;
+        }
+        final int id = symbols.idOf(order.getStockTicker());
+        if (id < 0) {
+            throw new BrokerException("Unknown ticker: " + order.getStockTicker());
+        }
+        final BrokerException failure = shards.call(id, new Callable<BrokerException>() {
+            @Override
+            public BrokerException call() {
+                try {
+                    placeStopOrder(order);
+                    return null;
+                } catch (BrokerException e) {
+                    return e;
+                }
+            }
+        });
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * Queues a stop order with its order manager on the current thread.
+     * @param order - a stop buy or stop sell order
+     * @throws BrokerException - if the exchange does not trade the order's ticker
+     */
+    private void placeStopOrder(final Order order) throws BrokerException {
+        if (lazyOrderManagers) {
+            queueStopOrder(order);
+            return;
+        }
+        final OrderManager orderManager = orderManagerOf(order.getStockTicker());
+        if (orderManager == null) {
+            throw new BrokerException("Unknown ticker: " + order.getStockTicker());
+        }
+        if (order instanceof StopBuyOrder) {
+            orderManager.queueOrder((StopBuyOrder) order);
+        } else {
+            orderManager.queueOrder((StopSellOrder) order);
+        }
+    }
+
+
+    /**
+     * Gets the order manager for a ticker.
+     * @param ticker - the stock symbol
+     * @return - the order manager, or null if the ticker is unknown or has no order manager
+     */
+    private OrderManager orderManagerOf(final String ticker) {
+        final int id = symbols.idOf(ticker);
+        return id < 0 ? null : orderManagers.get(id);
+    }
+
+
+    /**
+     * Queues a stop order with its order manager, creating the order manager if needed. The order is queued while
+     * holding the order manager's lock, and only if it is still registered, so it cannot be lost to an order manager
+     * being released.
+     * @param order - a stop buy or stop sell order
+     * @throws BrokerException - if the exchange does not trade the order's ticker
+     */
+    private void queueStopOrder(final Order order) throws BrokerException {
+        final int id = symbols.idOf(order.getStockTicker());
+        if (id < 0) {
+            throw new BrokerException("Unknown ticker: " + order.getStockTicker());
+        }
+        while (true) {
+            final OrderManagerImpl orderManager = orderManagerFor(id);
+            synchronized (orderManager) {
+                if (orderManagers.get(id) == orderManager) {
+                    if (order instanceof StopBuyOrder) {
+                        orderManager.queueOrder((StopBuyOrder) order);
+                    } else {
+                        orderManager.queueOrder((StopSellOrder) order);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Gets the order manager for a ticker, creating it from the current quote if there is none. The price is checked
+     * again once the new order manager is registered, in case a price change was missed while it was being created.
+     * @param id - the ticker id
+     * @return - the order manager
+     */
+    private OrderManagerImpl orderManagerFor(final int id) {
+        while (true) {
+            final OrderManagerImpl existing = (OrderManagerImpl) orderManagers.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            final String ticker = symbols.symbolOf(id);
+            final int quotedPrice = exchange.getQuote(ticker).getPrice();
+            final OrderManagerImpl created = new OrderManagerImpl(ticker, quotedPrice, queueFactory);
+            created.setOrderProcessor(stopOrderProcessor);
+            if (prefetcher != null) {
+                created.setAccountPrefetcher(prefetcher, prefetchDistance);
+            }
+            if (orderManagers.compareAndSet(id, null, created)) {
+                final int price = exchange.getQuote(ticker).getPrice();
+                if (price != quotedPrice) {
+                    created.adjustPrice(price);
+                }
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Created order manager for " + ticker);
+                }
+                return created;
+            }
+        }
+    }
+
+
+    /**
+     * Starts the thread periodically releasing order managers whose queues have been empty for the idle time.
+     * @param idleMillis - the idle time in milliseconds
+     */
+    private void startOrderManagerEvictor(final long idleMillis) {
+        orderManagerEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, brokerName + "-evictor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final long period = Math.max(1, idleMillis / 2);
+        orderManagerEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdleOrderManagers(idleMillis);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Releases the order managers whose queues have been empty for the idle time.
+     * @param idleMillis - the idle time in milliseconds
+     */
+    private void evictIdleOrderManagers(final long idleMillis) {
+        final AtomicReferenceArray<OrderManager> managers = orderManagers;
+        if (managers == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        int evicted = 0;
+        int remaining = 0;
+        for (int id = 0; id < managers.length(); id++) {
+            final OrderManagerImpl orderManager = (OrderManagerImpl) managers.get(id);
+            if (orderManager != null) {
+                synchronized (orderManager) {
+                    if (orderManager.isIdle(now, idleMillis) && managers.compareAndSet(id, orderManager, null)) {
+                        evicted++;
+                    } else {
+                        remaining++;
+                    }
+                }
+            }
+        }
+        if (evicted > 0 && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Released " + evicted + " idle order managers, " + remaining + " remain");
+        }
+    }
+
+
+    /**
+     * Looks up a pending order by its id, the ticker selects the order manager so the order is located without a
+     * search.
+     * @param ticker - the stock symbol of the order
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is pending
+     */
+    public Order findOrder(final String ticker, final long orderId) {
+        Order order = null;
+        if (marketOrders instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<Order>) marketOrders).find(orderId);
+        }
+        if (order == null) {
+            order = stopOrder(ticker, orderId, false);
+        }
+        return order;
+    }
+
+
+    /**
+     * Cancels a pending market or stop order.
+     * @param ticker - the stock symbol of the order
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is pending
+     */
+    public Order cancelOrder(final String ticker, final long orderId) {
+        Order order = null;
+        if (marketOrders instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<Order>) marketOrders).cancel(orderId);
+        }
+        if (order == null) {
+            order = stopOrder(ticker, orderId, true);
+        }
+        if (order != null && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Cancelled order " + orderId);
+        }
+        return order;
+    }
+
+
+    /**
+     * Looks up or cancels a resting stop order, on the ticker's shard if the order managers are sharded.
+     * @param ticker - the stock symbol of the order
+     * @param orderId - the order id
+     * @param cancel - true to cancel the order, false to only look it up
+     * @return - the order, or null if no such order is resting
+     */
+    private Order stopOrder(final String ticker, final long orderId, final boolean cancel) {
+        final int id = symbols.idOf(ticker);
+        if (id < 0) {
+            return null;
+        }
+        if (shards == null) {
+            return stopOrder(id, orderId, cancel);
+        }
+        return shards.call(id, new Callable<Order>() {
+            @Override
+            public Order call() {
+                return stopOrder(id, orderId, cancel);
+            }
+        });
+    }
+
+
+    /**
+     * Looks up or cancels a resting stop order on the current thread.
+     * @param id - the ticker id
+     * @param orderId - the order id
+     * @param cancel - true to cancel the order, false to only look it up
+     * @return - the order, or null if no such order is resting
+     */
+    private Order stopOrder(final int id, final long orderId, final boolean cancel) {
+        final OrderManager orderManager = orderManagers.get(id);
+        if (!(orderManager instanceof OrderManagerImpl)) {
+            return null;
+        }
+        return cancel ? ((OrderManagerImpl) orderManager).cancelOrder(orderId)
+                      : ((OrderManagerImpl) orderManager).findOrder(orderId);
     }
 
 
@@ -229,6 +819,39 @@ public class BrokerImpl implements Broker, ExchangeListener {
     public void close() throws BrokerException {
         try {
             exchange.removeExchangeListener(this);
+            if (eventRing != null) {
+                eventRing.shutdown();
+            }
+            if (dispatcher != null) {
+                dispatcher.shutdown();
+            }
+            if (openDrainer != null) {
+                openDrainer.shutdown();
+            }
+            if (executionEngine != null) {
+                executionEngine.shutdown();
+            }
+            if (virtualThreadProcessor != null) {
+                virtualThreadProcessor.shutdown();
+            }
+            if (pipeline != null) {
+                pipeline.shutdown();
+            }
+            if (prefetcher != null) {
+                prefetcher.shutdown();
+            }
+            if (orderManagerEvictor != null) {
+                orderManagerEvictor.shutdown();
+            }
+            if (priceConflator != null) {
+                priceConflator.shutdown();
+            }
+            if (shards != null) {
+                shards.shutdown();
+            }
+            if (marketOrders instanceof SpillingOrderQueue) {
+                ((SpillingOrderQueue) marketOrders).close();
+            }
             acctManager.close();
             orderManagers = null;
         } catch (AccountException e) {
@@ -243,9 +866,14 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void exchangeOpened(ExchangeEvent event) {
-        LOGGER.info("Exchange opened");
-        marketDispatchFilter.setThreshold(Boolean.TRUE);
-        marketOrders.dispatchOrders();
+        if (mirror != null) {
+            mirror.setOpen(true);
+        }
+        if (eventRing != null) {
+            eventRing.publish(EventRingBuffer.EXCHANGE_OPENED, event);
+        } else {
+            processExchangeOpened(event);
+        }
     }
 
 
@@ -255,8 +883,14 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void exchangeClosed(ExchangeEvent event) {
-        LOGGER.info("Exchange closed");
-        marketDispatchFilter.setThreshold(Boolean.FALSE);
+        if (mirror != null) {
+            mirror.setOpen(false);
+        }
+        if (eventRing != null) {
+            eventRing.publish(EventRingBuffer.EXCHANGE_CLOSED, event);
+        } else {
+            processExchangeClosed(event);
+        }
     }
 
 
@@ -266,7 +900,109 @@ public class BrokerImpl implements Broker, ExchangeListener {
      */
     @Override
     public void priceChanged(ExchangeEvent event) {
-        orderManagers.get(event.getTicker()).adjustPrice(event.getPrice());
+        if (mirror != null) {
+            final int id = symbols.idOf(event.getTicker());
+            if (id >= 0) {
+                mirror.setPrice(id, event.getPrice());
+            }
+        }
+        if (eventRing != null) {
+            eventRing.publish(EventRingBuffer.PRICE_CHANGED, event);
+        } else {
+            processPriceChanged(event);
+        }
+    }
+
+
+    /**
+     * Opens the market order queue, executing the orders held while the exchange was closed. With a drainer the
+     * backlog executes on the drainer's threads and this returns without waiting for it.
+     * @param event - the exchange opened event
+     */
+    private void processExchangeOpened(final ExchangeEvent event) {
+        LOGGER.info("Exchange opened");
+        if (openDrainer != null) {
+            openDrainer.drain(new Runnable() {
+                @Override
+                public void run() {
+                    marketDispatchFilter.setThreshold(Boolean.TRUE);
+                    marketOrders.dispatchOrders();
+                }
+            });
+        } else {
+            marketDispatchFilter.setThreshold(Boolean.TRUE);
+            marketOrders.dispatchOrders();
+        }
+    }
+
+
+    /**
+     * Closes the market order queue. With a drainer the close is handed to the drainer's coordinator thread, behind
+     * any open still waiting there, so the queue cannot be left open once the exchange has closed.
+     * @param event - the exchange closed event
+     */
+    private void processExchangeClosed(final ExchangeEvent event) {
+        LOGGER.info("Exchange closed");
+        if (openDrainer != null) {
+            openDrainer.runAfterDrains(new Runnable() {
+                @Override
+                public void run() {
+                    marketDispatchFilter.setThreshold(Boolean.FALSE);
+                }
+            });
+        } else {
+            marketDispatchFilter.setThreshold(Boolean.FALSE);
+        }
+    }
+
+
+    /**
+     * Passes a price change to the ticker's order manager
+     * @param event - the change for a specific stock
+     */
+    private void processPriceChanged(final ExchangeEvent event) {
+        if (priceConflator != null) {
+            final int id = symbols.idOf(event.getTicker());
+            if (id >= 0) {
+                priceConflator.publish(id, event.getPrice());
+            }
+            return;
+        }
+        if (shards != null) {
+            final int id = symbols.idOf(event.getTicker());
+            final int price = event.getPrice();
+            if (id >= 0) {
+                shards.execute(id, new Runnable() {
+                    @Override
+                    public void run() {
+                        final OrderManager orderManager = orderManagers.get(id);
+                        if (orderManager != null) {
+                            orderManager.adjustPrice(price);
+                        }
+                    }
+                });
+            }
+            return;
+        }
+        final OrderManager orderManager = orderManagerOf(event.getTicker());
+        if (orderManager != null) {
+            orderManager.adjustPrice(event.getPrice());
+        }
+    }
+
+
+    /**
+     * Applies a conflated price update to a ticker's order manager.
+     * @param id - the ticker id
+     * @param low - the lowest price since the previous update
+     * @param high - the highest price since the previous update
+     * @param last - the latest price
+     */
+    private void adjustPrice(final int id, final int low, final int high, final int last) {
+        final OrderManager orderManager = orderManagers.get(id);
+        if (orderManager != null) {
+            ((OrderManagerImpl) orderManager).adjustPrice(low, high, last);
+        }
     }
 
     /**
@@ -0,0 +1,67 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.Collection;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/24/13
+ * Time: 7:40 PM
+ *
+ * Extends the OrderQueue with the operations used by the broker and its order managers beyond enqueue and dispatch.
+ */
+public interface BrokerOrderQueue<E extends Order> extends OrderQueue<E> {
+
+    /**
+     * Gets the order that would be considered first for dispatch, without removing it.
+     * @return - the first order in the queue, or null if the queue is empty
+     */
+    E peek();
+
+
+    /**
+     * Adds all the orders to the queue, then dispatches any dispatchable orders once.
+     * @param orders - the orders to be added to the queue
+     */
+    void enqueueAll(Collection<? extends E> orders);
+
+
+    /**
+     * Looks up a queued order by its id.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is queued
+     */
+    E find(long orderId);
+
+
+    /**
+     * Removes a queued order without dispatching it.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is queued
+     */
+    E cancel(long orderId);
+
+
+    /**
+     * Passes the queued orders to the visitor in dispatch order, until the visitor declines the next order.
+     * @param visitor - the visitor
+     */
+    void visit(OrderVisitor<? super E> visitor);
+
+
+    /**
+     * Switches the queue to asynchronous mode, all further dispatching is performed on the dispatcher's thread.
+     * @param dispatcher - the dispatcher to use, or null to resume dispatching on the calling thread
+     */
+    void setOrderDispatcher(OrderDispatcher dispatcher);
+
+
+    /**
+     * Dispatches the dispatchable orders on the calling thread and returns once they have been processed, even when
+     * the queue is in asynchronous mode.
+     */
+    void dispatchOrdersNow();
+}
@@ -0,0 +1,37 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/18/13
+ * Time: 10:52 AM
+ *
+ * OrderQueueFactory creating the thread safe ConcurrentOrderQueueImpl, for use when orders are placed from many
+ * threads while the exchange thread is adjusting prices.
+ */
+public class ConcurrentOrderQueueFactory implements OrderQueueFactory {
+
+    /** Instance for use in Singleton pattern */
+    public static final ConcurrentOrderQueueFactory INSTANCE = new ConcurrentOrderQueueFactory();
+
+    @Override
+    public OrderQueue<StopBuyOrder> newStopBuyOrderQueue(final OrderDispatchFilter<?, StopBuyOrder> filter) {
+        return new ConcurrentOrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, filter);
+    }
+
+    @Override
+    public OrderQueue<StopSellOrder> newStopSellOrderQueue(final OrderDispatchFilter<?, StopSellOrder> filter) {
+        return new ConcurrentOrderQueueImpl<StopSellOrder>(StopSellOrderComparator.INSTANCE, filter);
+    }
+
+    @Override
+    public OrderQueue<Order> newMarketOrderQueue(final OrderDispatchFilter<?, Order> filter) {
+        return new ConcurrentOrderQueueImpl<Order>(filter);
+    }
+}
@@ -0,0 +1,327 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/18/13
+ * Time: 10:12 AM
+ *
+ * A thread safe OrderQueue implementation backed by a ConcurrentSkipListSet. Any number of threads may enqueue orders
+ * concurrently, dispatching is performed by a single thread at a time. A thread requesting a dispatch while another
+ * thread is dispatching leaves the request pending and returns, the dispatching thread picks it up before it exits.
+ */
+public final class ConcurrentOrderQueueImpl<E extends Order> implements BrokerOrderQueue<E> {
+
+    /** Backing store for orders */
+    private final ConcurrentSkipListSet<E> queue;
+
+    /** The dispatch filter used to control dispatching from this queue */
+    private final OrderDispatchFilter<?, E> filter;
+
+    /**
+     * Index of the queued orders by order id. Removing an order from the backing store decides which of a dispatch
+     * and a cancellation gets it, the index entry is removed by the winner. An order may briefly remain in the index
+     * after it has been dispatched.
+     */
+    private final ConcurrentHashMap<Long, E> index = new ConcurrentHashMap<Long, E>();
+
+    /** Held by the thread currently dispatching orders */
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+
+    /** Set when a dispatch has been requested but not yet performed */
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+
+    /** The processor used during order processing */
+    private volatile OrderProcessor orderProcessor;
+
+    /** The dispatch request used in asynchronous mode, null when dispatching synchronously */
+    private volatile DispatchRequest dispatchRequest;
+
+    /** The list dispatch batches are collected in */
+    private final OrderBatchBuffer batchBuffer = new OrderBatchBuffer();
+
+
+    /**
+     * Constructor
+     * @param orderComparator - Comparator to be used for ordering
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     */
+    public ConcurrentOrderQueueImpl(final Comparator<E> orderComparator, final OrderDispatchFilter<?, E> filter) {
+        queue = new ConcurrentSkipListSet<E>(orderComparator);
+        this.filter = filter;
+        filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Constructor
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     */
+    public ConcurrentOrderQueueImpl(final OrderDispatchFilter<?, E> filter) {
+        queue = new ConcurrentSkipListSet<E>();
+        this.filter = filter;
+        filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Adds the specified order to the queue. Subsequent to adding the order dispatches any dispatchable orders.
+     * @param order - the order to be added to the queue
+     */
+    @Override
+    public void enqueue(final E order) {
+        add(order);
+        dispatchOrders();
+    }
+
+
+    /**
+     * Adds all the orders to the queue, then dispatches any dispatchable orders once.
+     * @param orders - the orders to be added to the queue
+     */
+    @Override
+    public void enqueueAll(final Collection<? extends E> orders) {
+        for (E order : orders) {
+            add(order);
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Adds an order to the backing store and the index. If the order was dispatched or cancelled before it was
+     * indexed, the index entry is removed again.
+     * @param order - the order to add
+     */
+    private void add(final E order) {
+        if (queue.add(order)) {
+            final Long id = Long.valueOf(order.getOrderId());
+            index.put(id, order);
+            if (!queue.contains(order)) {
+                index.remove(id, order);
+            }
+        }
+    }
+
+
+    /**
+     * Removes the highest dispatchable order in the queue. If there are orders in the queue but they do not meet the
+     * dispatch threshold order will not be removed and null will be returned.
+     * @return - the first dispatchable order in the queue, or null if there are no dispatchable orders in the queue
+     */
+    @Override
+    public E dequeue() {
+        E order = first();
+        while (order != null && filter.check(order)) {
+            if (queue.remove(order)) {
+                index.remove(Long.valueOf(order.getOrderId()), order);
+                return order;
+            }
+            // another thread removed it first, try the new head
+            order = first();
+        }
+        return null;
+    }
+
+
+    /**
+     * Looks up a queued order by its id.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is queued
+     */
+    @Override
+    public E find(final long orderId) {
+        final E order = index.get(Long.valueOf(orderId));
+        return order != null && queue.contains(order) ? order : null;
+    }
+
+
+    /**
+     * Removes a queued order without dispatching it. If the order is being dispatched concurrently only one of the
+     * dispatch and the cancellation succeeds.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is queued
+     */
+    @Override
+    public E cancel(final long orderId) {
+        final Long id = Long.valueOf(orderId);
+        final E order = index.get(id);
+        if (order != null && queue.remove(order)) {
+            index.remove(id, order);
+            return order;
+        }
+        return null;
+    }
+
+
+    /**
+     * Passes the queued orders to the visitor in dispatch order, until the visitor declines the next order. The queue
+     * is not locked, orders added or removed during the visit may or may not be seen.
+     * @param visitor - the visitor
+     */
+    @Override
+    public void visit(final OrderVisitor<? super E> visitor) {
+        for (E order : queue) {
+            if (!visitor.visit(order)) {
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Dispatches the dispatchable orders, in asynchronous mode this only signals the dispatcher thread and a request
+     * already waiting absorbs this one.
+     */
+    @Override
+    public void dispatchOrders() {
+        final DispatchRequest request = dispatchRequest;
+        if (request != null) {
+            request.request();
+        } else {
+            dispatchNow();
+        }
+    }
+
+
+    /**
+     * Executes the orderProcessor for each dispatchable order. Each dispatchable order is in turn removed from the
+     * queue and passed to the callback. If no callback is registered the order is simply removed from the queue.
+     * If another thread is already dispatching, the request is handed off to that thread.
+     */
+    private void dispatchNow() {
+        dispatchPending.set(true);
+        while (dispatchPending.get() && dispatchLock.tryLock()) {
+            try {
+                dispatchPending.set(false);
+                dispatchPass();
+            } finally {
+                dispatchLock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Dispatches the dispatchable orders on the calling thread, waiting for any thread already dispatching rather than
+     * handing the request off to it.
+     */
+    @Override
+    public void dispatchOrdersNow() {
+        dispatchLock.lock();
+        try {
+            dispatchPending.set(false);
+            dispatchPass();
+        } finally {
+            dispatchLock.unlock();
+        }
+        if (dispatchPending.get()) {
+            dispatchNow();
+        }
+    }
+
+
+    /**
+     * Removes the dispatchable orders and passes them to the processor, the caller must hold the dispatch lock.
+     */
+    private void dispatchPass() {
+        final OrderProcessor proc = orderProcessor;
+        if (proc instanceof BatchOrderProcessor) {
+            dispatchBatch((BatchOrderProcessor) proc);
+        } else {
+            Order order = dequeue();
+            while (order != null) {
+                if (proc != null) {
+                    proc.process(order);
+                }
+                order = dequeue();
+            }
+        }
+    }
+
+
+    /**
+     * Removes all the dispatchable orders, then passes them to the processor in one batch. The batch is collected in
+     * a list reused between dispatches.
+     * @param proc - the batch processor
+     */
+    private void dispatchBatch(final BatchOrderProcessor proc) {
+        List<Order> batch = null;
+        try {
+            for (Order order = dequeue(); order != null; order = dequeue()) {
+                if (batch == null) {
+                    batch = batchBuffer.acquire();
+                }
+                batch.add(order);
+            }
+            if (batch != null) {
+                proc.processBatch(batch);
+            }
+        } finally {
+            if (batch != null) {
+                batchBuffer.release(batch);
+            }
+        }
+    }
+
+
+    /**
+     * Registers the callback to be used during order processing.
+     * @param proc - the callback to be registered
+     */
+    @Override
+    public void setOrderProcessor(final OrderProcessor proc) {
+        this.orderProcessor = proc;
+    }
+
+
+    /**
+     * Switches the queue to asynchronous mode, all further dispatching is performed on the dispatcher's thread.
+     * @param dispatcher - the dispatcher to use, or null to resume dispatching on the calling thread
+     */
+    @Override
+    public void setOrderDispatcher(final OrderDispatcher dispatcher) {
+        dispatchRequest = dispatcher == null ? null : new DispatchRequest(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatchNow();
+            }
+        });
+    }
+
+
+    /**
+     * Gets the first order in the queue without removing it.
+     * @return - the first order, or null if the queue is empty
+     */
+    @Override
+    public E peek() {
+        return first();
+    }
+
+
+    /**
+     * Gets the first order in the queue without removing it.
+     * @return - the first order, or null if the queue is empty
+     */
+    private E first() {
+        try {
+            return queue.first();
+        } catch (final NoSuchElementException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package edu.uw.danco.broker;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/1/13
+ * Time: 10:20 AM
+ *
+ * Receives the conflated price updates from a PriceConflator.
+ */
+public interface ConflatedPriceListener {
+
+    /**
+     * Receives the price movement of a ticker since its previous update.
+     * @param id - the ticker id
+     * @param low - the lowest price since the previous update
+     * @param high - the highest price since the previous update
+     * @param last - the latest price
+     */
+    void pricesChanged(int id, int low, int high, int last);
+}
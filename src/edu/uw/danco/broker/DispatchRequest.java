@@ -0,0 +1,67 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/29/13
+ * Time: 8:15 PM
+ *
+ * The dispatch request of a queue operating in asynchronous mode. Requests made while one is already waiting on the
+ * dispatcher thread are absorbed by the waiting request. Once the dispatcher has been shut down the queue is
+ * dispatched on the requesting thread instead.
+ */
+final class DispatchRequest implements Runnable {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(DispatchRequest.class.getName());
+
+    /** The dispatcher executing the requests */
+    private final OrderDispatcher dispatcher;
+
+    /** Dispatches the queue on the current thread */
+    private final Runnable dispatch;
+
+    /** Set while a request is waiting on the dispatcher thread */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+
+    /**
+     * Constructor
+     * @param dispatcher - the dispatcher executing the requests
+     * @param dispatch - dispatches the queue on the current thread
+     */
+    DispatchRequest(final OrderDispatcher dispatcher, final Runnable dispatch) {
+        this.dispatcher = dispatcher;
+        this.dispatch = dispatch;
+    }
+
+
+    /**
+     * Requests a dispatch, a request already waiting absorbs this one.
+     */
+    void request() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                dispatcher.submit(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                LOGGER.fine("Order dispatcher shut down, dispatching on the calling thread");
+                dispatch.run();
+            }
+        }
+    }
+
+
+    /**
+     * Performs the dispatch on the dispatcher thread.
+     */
+    @Override
+    public void run() {
+        scheduled.set(false);
+        dispatch.run();
+    }
+}
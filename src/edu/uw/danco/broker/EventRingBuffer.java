@@ -0,0 +1,176 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/3/13
+ * Time: 8:40 PM
+ *
+ * A bounded, single producer ring buffer handing exchange events from the exchange's callback thread to a consumer
+ * thread. The slots are allocated once; publishing stores the event and its kind in the next slot and advances the
+ * published sequence, so the callback thread does no locking, no allocation and never waits unless the buffer is
+ * full. The consumer thread delivers the events in order to an ExchangeListener, waiting with the configured
+ * WaitStrategy when there is nothing to consume.
+ *
+ * Only one thread may publish, other than the consumer thread itself. An event published by the consumer, typically
+ * from a listener whose work calls back into the broker, is delivered inline rather than queued, since the consumer
+ * would wait forever on a full buffer only it can drain. Such an event is delivered ahead of any events still
+ * waiting in the buffer.
+ */
+public class EventRingBuffer {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(EventRingBuffer.class.getName());
+
+    /** Kind of an exchange opened event */
+    public static final int EXCHANGE_OPENED = 0;
+
+    /** Kind of an exchange closed event */
+    public static final int EXCHANGE_CLOSED = 1;
+
+    /** Kind of a price changed event */
+    public static final int PRICE_CHANGED = 2;
+
+    /** Mask mapping a sequence to its slot, the capacity is a power of two */
+    private final int mask;
+
+    /** The kind of the event in each slot */
+    private final int[] kinds;
+
+    /** The event in each slot */
+    private final ExchangeEvent[] events;
+
+    /** Sequence of the last event published, written only by the producer */
+    private final AtomicLong published = new AtomicLong(-1);
+
+    /** Sequence of the last event consumed, written only by the consumer */
+    private final AtomicLong consumed = new AtomicLong(-1);
+
+    /** How the producer and consumer wait */
+    private final WaitStrategy waitStrategy;
+
+    /** The receiver of the events */
+    private final ExchangeListener listener;
+
+    /** The consumer thread */
+    private final Thread consumer;
+
+    /** Cleared to stop the consumer */
+    private volatile boolean running = true;
+
+
+    /**
+     * Constructor, starts the consumer thread.
+     * @param capacity - the minimum number of slots, rounded up to a power of two
+     * @param waitStrategy - how the producer and consumer wait
+     * @param listener - the receiver of the events
+     * @param name - name of the consumer thread
+     */
+    public EventRingBuffer(final int capacity, final WaitStrategy waitStrategy, final ExchangeListener listener,
+                           final String name) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        kinds = new int[size];
+        events = new ExchangeEvent[size];
+        this.waitStrategy = waitStrategy;
+        this.listener = listener;
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+
+    /**
+     * Publishes an event, waiting only if every slot holds an unconsumed event. Called on the consumer thread the event
+     * is delivered immediately.
+     * @param kind - the kind of event
+     * @param event - the event
+     */
+    public void publish(final int kind, final ExchangeEvent event) {
+        if (Thread.currentThread() == consumer) {
+            deliver(kind, event);
+            return;
+        }
+        final long next = published.get() + 1;
+        while (next - consumed.get() > events.length) {
+            waitStrategy.idle();
+        }
+        final int slot = (int) next & mask;
+        kinds[slot] = kind;
+        events[slot] = event;
+        published.lazySet(next);
+    }
+
+
+    /**
+     * Stops the consumer once it has delivered the events already published.
+     */
+    public void shutdown() {
+        running = false;
+    }
+
+
+    /**
+     * The consumer loop, delivers events in sequence until shut down.
+     */
+    private void consume() {
+        long next = consumed.get() + 1;
+        while (true) {
+            final long available = published.get();
+            if (available < next) {
+                if (!running) {
+                    break;
+                }
+                waitStrategy.idle();
+                continue;
+            }
+            for (; next <= available; next++) {
+                final int slot = (int) next & mask;
+                final ExchangeEvent event = events[slot];
+                events[slot] = null;
+                deliver(kinds[slot], event);
+                consumed.lazySet(next);
+            }
+        }
+        LOGGER.fine("Event ring buffer stopped");
+    }
+
+
+    /**
+     * Delivers an event to the listener.
+     * @param kind - the kind of event
+     * @param event - the event
+     */
+    private void deliver(final int kind, final ExchangeEvent event) {
+        try {
+            switch (kind) {
+                case EXCHANGE_OPENED:
+                    listener.exchangeOpened(event);
+                    break;
+                case EXCHANGE_CLOSED:
+                    listener.exchangeClosed(event);
+                    break;
+                default:
+                    listener.priceChanged(event);
+                    break;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Unable to process exchange event", e);
+        }
+    }
+}
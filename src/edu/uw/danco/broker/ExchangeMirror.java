@@ -0,0 +1,144 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/9/13
+ * Time: 4:20 PM
+ *
+ * Broker side copy of the exchange's state: the ticker list, whether the exchange is open and the last price of each
+ * ticker, held in an int array indexed by ticker id. The mirror is kept current by the broker's ExchangeListener
+ * callbacks and answers quote and market state requests without calling the exchange. A ticker's price is fetched
+ * from the exchange only until the first price is known.
+ */
+public class ExchangeMirror {
+
+    /** Marks a price that is not yet known */
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /** The exchange, consulted for prices not yet known */
+    private final StockExchange exchange;
+
+    /** The ids of the exchange's tickers */
+    private final SymbolTable symbols;
+
+    /** The last price of each ticker by id */
+    private final AtomicIntegerArray prices;
+
+    /** True while the exchange is open */
+    private volatile boolean open;
+
+
+    /**
+     * Constructor
+     * @param exchange - the exchange mirrored
+     * @param symbols - the ids of the exchange's tickers
+     */
+    public ExchangeMirror(final StockExchange exchange, final SymbolTable symbols) {
+        this.exchange = exchange;
+        this.symbols = symbols;
+        prices = new AtomicIntegerArray(symbols.size());
+        for (int id = 0; id < symbols.size(); id++) {
+            prices.set(id, UNKNOWN);
+        }
+        open = exchange.isOpen();
+    }
+
+
+    /**
+     * Tests if the exchange is open
+     * @return - true if the exchange is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+
+    /**
+     * Records the state of the exchange
+     * @param open - true if the exchange is open
+     */
+    public void setOpen(final boolean open) {
+        this.open = open;
+    }
+
+
+    /**
+     * Records the price of a ticker
+     * @param id - the ticker id
+     * @param price - the new price
+     */
+    public void setPrice(final int id, final int price) {
+        prices.set(id, price);
+    }
+
+
+    /**
+     * Gets the tickers traded on the exchange
+     * @return - the ticker symbols
+     */
+    public String[] getTickers() {
+        final String[] tickers = new String[symbols.size()];
+        for (int id = 0; id < tickers.length; id++) {
+            tickers[id] = symbols.symbolOf(id);
+        }
+        return tickers;
+    }
+
+
+    /**
+     * Gets the last price of a ticker
+     * @param ticker - the ticker symbol
+     * @return - the last price, or -1 if the exchange does not trade the ticker
+     */
+    public int getPrice(final String ticker) {
+        final int id = symbols.idOf(ticker);
+        return id < 0 ? -1 : getPrice(id);
+    }
+
+
+    /**
+     * Gets a quote for a ticker
+     * @param ticker - the ticker symbol
+     * @return - the quote, or null if the exchange does not trade the ticker
+     */
+    public StockQuote getQuote(final String ticker) {
+        final int id = symbols.idOf(ticker);
+        return id < 0 ? null : new StockQuote(ticker, getPrice(id));
+    }
+
+
+    /**
+     * Gets quotes for several tickers
+     * @param tickers - the ticker symbols
+     * @return - the quotes, in the order of the tickers, null for any ticker the exchange does not trade
+     */
+    public StockQuote[] getQuotes(final String[] tickers) {
+        final StockQuote[] quotes = new StockQuote[tickers.length];
+        for (int i = 0; i < tickers.length; i++) {
+            quotes[i] = getQuote(tickers[i]);
+        }
+        return quotes;
+    }
+
+
+    /**
+     * Gets the last price of a ticker, fetching it from the exchange if it is not yet known
+     * @param id - the ticker id
+     * @return - the last price
+     */
+    private int getPrice(final int id) {
+        final int price = prices.get(id);
+        if (price != UNKNOWN) {
+            return price;
+        }
+        final StockQuote quote = exchange.getQuote(symbols.symbolOf(id));
+        prices.compareAndSet(id, UNKNOWN, quote.getPrice());
+        return prices.get(id);
+    }
+}
@@ -0,0 +1,113 @@
+package edu.uw.danco.broker;
+
+import edu.uw.danco.dao.ResourceLimiter;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/12/13
+ * Time: 7:55 PM
+ *
+ * StockExchange decorator holding a ResourceLimiter permit for the duration of each trade, so however many threads
+ * execute orders only a bounded number call executeTrade at once. Quotes, market state and listener registration are
+ * passed straight through.
+ */
+public class LimitedStockExchange implements StockExchange {
+
+    /** The exchange performing the calls */
+    private final StockExchange exchange;
+
+    /** Bounds the concurrent trades */
+    private final ResourceLimiter limiter;
+
+
+    /**
+     * Constructor
+     * @param exchange - the exchange performing the calls
+     * @param limiter - bounds the concurrent trades
+     */
+    public LimitedStockExchange(final StockExchange exchange, final ResourceLimiter limiter) {
+        this.exchange = exchange;
+        this.limiter = limiter;
+    }
+
+
+    /**
+     * Tests if the exchange is open
+     * @return - true if the exchange is open
+     */
+    @Override
+    public boolean isOpen() {
+        return exchange.isOpen();
+    }
+
+
+    /**
+     * Gets the ticker symbols traded on the exchange
+     * @return - the ticker symbols
+     */
+    @Override
+    public String[] getTickers() {
+        return exchange.getTickers();
+    }
+
+
+    /**
+     * Gets a quote for a stock
+     * @param ticker - the stock symbol
+     * @return - the quote, or null if the stock is not traded
+     */
+    @Override
+    public StockQuote getQuote(final String ticker) {
+        return exchange.getQuote(ticker);
+    }
+
+
+    /**
+     * Registers a listener for exchange events
+     * @param listener - the listener
+     */
+    @Override
+    public void addExchangeListener(final ExchangeListener listener) {
+        exchange.addExchangeListener(listener);
+    }
+
+
+    /**
+     * Removes a listener for exchange events
+     * @param listener - the listener
+     */
+    @Override
+    public void removeExchangeListener(final ExchangeListener listener) {
+        exchange.removeExchangeListener(listener);
+    }
+
+
+    /**
+     * Executes a trade, holding a permit for the duration
+     * @param order - the order to execute
+     * @return - the price the trade executed at
+     */
+    @Override
+    public int executeTrade(final Order order) {
+        limiter.acquire();
+        try {
+            return exchange.executeTrade(order);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Gets the limiter bounding the concurrent trades
+     * @return - the limiter
+     */
+    public ResourceLimiter getLimiter() {
+        return limiter;
+    }
+}
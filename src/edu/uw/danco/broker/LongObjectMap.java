@@ -0,0 +1,188 @@
+package edu.uw.danco.broker;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/26/13
+ * Time: 10:20 AM
+ *
+ * A map from primitive long keys to objects, using open addressing with linear probing so keys are never boxed and
+ * no entry objects are created. Null values are not permitted. Not thread safe.
+ */
+public final class LongObjectMap<V> {
+
+    /** Default initial capacity */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** Multiplier used to spread the keys, the 64 bit golden ratio */
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    /** The keys, parallel to values */
+    private long[] keys;
+
+    /** The values, a null value marks an empty slot */
+    private Object[] values;
+
+    /** Number of entries */
+    private int size;
+
+
+    /**
+     * Constructor
+     */
+    public LongObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     * Constructor
+     * @param expectedSize - the expected number of entries
+     */
+    public LongObjectMap(final int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+
+    /**
+     * Gets the value for a key
+     * @param key - the key
+     * @return - the value, or null if the key is not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final long key) {
+        final int mask = values.length - 1;
+        int index = slot(key, mask);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                return (V) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+
+    /**
+     * Associates a value with a key
+     * @param key - the key
+     * @param value - the value, may not be null
+     * @return - the previous value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V put(final long key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not permitted");
+        }
+        if ((size + 1) * 2 > values.length) {
+            resize(values.length * 2);
+        }
+        final int mask = values.length - 1;
+        int index = slot(key, mask);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                final V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        return null;
+    }
+
+
+    /**
+     * Removes the entry for a key. The entries following it in the probe sequence are shifted back, so no deleted
+     * markers are left behind.
+     * @param key - the key
+     * @return - the removed value, or null if the key was not present
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(final long key) {
+        final int mask = values.length - 1;
+        int index = slot(key, mask);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                final V removed = (V) values[index];
+                int gap = index;
+                values[gap] = null;
+                int next = (gap + 1) & mask;
+                while (values[next] != null) {
+                    final int ideal = slot(keys[next], mask);
+                    if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                        keys[gap] = keys[next];
+                        values[gap] = values[next];
+                        values[next] = null;
+                        gap = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                size--;
+                return removed;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+
+    /**
+     * Gets the number of entries
+     * @return - the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Tests if the map is empty
+     * @return - true if there are no entries
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * Rehashes the entries into new arrays.
+     * @param capacity - the new capacity, a power of two
+     */
+    private void resize(final int capacity) {
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        final int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = slot(oldKeys[i], mask);
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+
+    /**
+     * Computes the home slot of a key.
+     * @param key - the key
+     * @param mask - the table mask
+     * @return - the slot index
+     */
+    private static int slot(final long key, final int mask) {
+        final long h = key * SPREAD;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,334 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/28/13
+ * Time: 7:40 PM
+ *
+ * OrderProcessor for the market order queue that executes the backlog accumulated while the exchange was closed on a
+ * pool of worker threads. While a drain is in progress the orders leaving the market queue are collected rather than
+ * executed, then grouped by account and split into batches of whole accounts, so the orders of one account are
+ * executed in queue order on a single thread while different accounts proceed in parallel. Outside a drain orders are
+ * passed straight to the delegate.
+ *
+ * A drain runs on its own coordinator thread so the caller, typically the exchange event thread, is free to deliver
+ * price events while the backlog executes. A close must be handed to the same thread with runAfterDrains, so it
+ * takes effect after any open still waiting to run. The backlog is executed in chunks of at most threads * batchSize
+ * orders as the open releases them, so a large backlog, such as one spilled to disk, is never held in memory at once.
+ *
+ * The delegate, and the account manager behind it, must be safe for use by several threads at once.
+ */
+public class MarketOpenDrainer implements OrderProcessor {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(MarketOpenDrainer.class.getName());
+
+    /** Nanoseconds per millisecond */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /** The processor executing the orders */
+    private final OrderProcessor delegate;
+
+    /** Number of worker threads */
+    private final int threads;
+
+    /** Target number of orders in a batch */
+    private final int batchSize;
+
+    /** Maximum number of orders collected before they are executed */
+    private final int chunkSize;
+
+    /** The worker threads */
+    private final ExecutorService workers;
+
+    /** The thread running the drains */
+    private final ExecutorService coordinator;
+
+    /** The coordinator thread, set while a drain is in progress */
+    private volatile Thread drainThread;
+
+    /** Orders collected during a drain */
+    private List<Order> pending = new ArrayList<Order>();
+
+    /** Set while a drain is in progress */
+    private boolean draining;
+
+    /** Orders executed by the current drain */
+    private int total;
+
+    /** Batches executed by the current drain */
+    private int batches;
+
+
+    /**
+     * Constructor
+     * @param delegate - the processor executing the orders
+     * @param threads - number of worker threads
+     * @param batchSize - target number of orders in a batch, batches hold whole accounts so may be larger
+     * @param name - prefix for the worker thread names
+     */
+    public MarketOpenDrainer(final OrderProcessor delegate, final int threads, final int batchSize,
+                             final String name) {
+        this.delegate = delegate;
+        this.threads = threads;
+        this.batchSize = Math.max(1, batchSize);
+        this.chunkSize = Math.max(1, threads) * this.batchSize;
+        final AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name + "-drain-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        coordinator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name + "-drain-coordinator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * Executes the order, or collects it if a drain is in progress. Once a full chunk has been collected by the drain
+     * it is executed before the open releases any more orders.
+     * @param order - the order to process
+     */
+    @Override
+    public void process(final Order order) {
+        final List<Order> chunk;
+        synchronized (this) {
+            if (!draining) {
+                chunk = null;
+            } else {
+                pending.add(order);
+                if (pending.size() < chunkSize || Thread.currentThread() != drainThread) {
+                    return;
+                }
+                chunk = pending;
+                pending = new ArrayList<Order>();
+            }
+        }
+        if (chunk == null) {
+            delegate.process(order);
+        } else {
+            executeChunk(chunk);
+        }
+    }
+
+
+    /**
+     * Hands the opening of the market and the execution of the backlog to the coordinator thread and returns. Orders
+     * remain gated by the market queue's dispatch filter until the coordinator runs the open.
+     * @param open - opens the market, dispatching the market queue to this processor
+     * @return - completes once every order released by the open, and any arriving while those execute, has been
+     *           executed
+     */
+    public Future<?> drain(final Runnable open) {
+        try {
+            return coordinator.submit(new Runnable() {
+                @Override
+                public void run() {
+                    runDrain(open);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "Drainer shut down, opening the market without a parallel drain", e);
+            open.run();
+            return null;
+        }
+    }
+
+
+    /**
+     * Hands a task to the coordinator thread, to run once the drains already handed off have completed. Closing the
+     * market goes through here so a close arriving while an open is waiting cannot be overtaken by it.
+     * @param task - the task
+     * @return - completes once the task has run
+     */
+    public Future<?> runAfterDrains(final Runnable task) {
+        try {
+            return coordinator.submit(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+            return null;
+        }
+    }
+
+
+    /**
+     * Opens the market and executes the backlog in parallel, on the coordinator thread.
+     * @param open - opens the market, dispatching the market queue to this processor
+     */
+    private void runDrain(final Runnable open) {
+        final long start = System.nanoTime();
+        synchronized (this) {
+            drainThread = Thread.currentThread();
+            draining = true;
+            total = 0;
+            batches = 0;
+        }
+        try {
+            open.run();
+            while (true) {
+                final List<Order> backlog;
+                synchronized (this) {
+                    backlog = pending;
+                    if (backlog.isEmpty()) {
+                        draining = false;
+                        break;
+                    }
+                    pending = new ArrayList<Order>();
+                }
+                executeChunk(backlog);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Market open drain failed", e);
+        } finally {
+            final List<Order> leftover;
+            synchronized (this) {
+                draining = false;
+                drainThread = null;
+                leftover = pending;
+                pending = new ArrayList<Order>();
+            }
+            for (Order order : leftover) {
+                delegate.process(order);
+            }
+        }
+
+        final long millis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(String.format("Market open drained %d orders in %d batches on %d threads in %d ms "
+                                      + "(%d orders/s)", total, batches, threads, millis,
+                                      millis > 0 ? total * 1000L / millis : total));
+        }
+    }
+
+
+    /**
+     * Stops the worker threads, once any drain in progress has completed.
+     */
+    public void shutdown() {
+        coordinator.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                coordinator.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        workers.shutdown();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Executes a chunk of the backlog, on the coordinator thread, and adds it to the drain's statistics.
+     * @param chunk - the orders, in queue order
+     */
+    private void executeChunk(final List<Order> chunk) {
+        final int executed = execute(chunk);
+        total += chunk.size();
+        batches += executed;
+    }
+
+
+    /**
+     * Groups the orders by account, batches the groups and executes the batches on the workers.
+     * @param orders - the orders, in queue order
+     * @return - the number of batches executed
+     */
+    private int execute(final List<Order> orders) {
+        final Map<String, List<Order>> byAccount = new LinkedHashMap<String, List<Order>>();
+        for (Order order : orders) {
+            List<Order> accountOrders = byAccount.get(order.getAccountId());
+            if (accountOrders == null) {
+                accountOrders = new ArrayList<Order>();
+                byAccount.put(order.getAccountId(), accountOrders);
+            }
+            accountOrders.add(order);
+        }
+
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        List<Order> batch = new ArrayList<Order>();
+        for (List<Order> accountOrders : byAccount.values()) {
+            batch.addAll(accountOrders);
+            if (batch.size() >= batchSize) {
+                futures.add(workers.submit(newBatchTask(batch)));
+                batch = new ArrayList<Order>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            futures.add(workers.submit(newBatchTask(batch)));
+        }
+
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Market open batch failed", e.getCause());
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return futures.size();
+    }
+
+
+    /**
+     * Creates the task executing a batch, a failed order is logged and does not prevent the rest of the batch from
+     * executing.
+     * @param batch - the orders of the batch
+     * @return - the task
+     */
+    private Runnable newBatchTask(final List<Order> batch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (Order order : batch) {
+                    try {
+                        delegate.process(order);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.SEVERE, "Unable to execute order " + order.getOrderId(), e);
+                    }
+                }
+            }
+        };
+    }
+}
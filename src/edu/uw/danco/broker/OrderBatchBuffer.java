@@ -0,0 +1,43 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/29/13
+ * Time: 9:10 PM
+ *
+ * The list a queue collects a dispatch batch in, reused from one dispatch to the next so a dispatch allocates nothing
+ * once the list has grown to the batch size. A dispatch running while the list is in use, on another thread or nested
+ * within the processing of a batch, is given a list of its own.
+ */
+final class OrderBatchBuffer {
+
+    /** The idle list, null while it is in use */
+    private final AtomicReference<List<Order>> spare = new AtomicReference<List<Order>>(new ArrayList<Order>());
+
+
+    /**
+     * Takes the list for a dispatch, it must be returned by release once the batch has been processed.
+     * @return - an empty list
+     */
+    List<Order> acquire() {
+        final List<Order> batch = spare.getAndSet(null);
+        return batch != null ? batch : new ArrayList<Order>();
+    }
+
+
+    /**
+     * Returns a list taken by acquire, emptying it for the next dispatch.
+     * @param batch - the list
+     */
+    void release(final List<Order> batch) {
+        batch.clear();
+        spare.set(batch);
+    }
+}
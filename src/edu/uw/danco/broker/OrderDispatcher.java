@@ -0,0 +1,59 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/19/13
+ * Time: 9:20 AM
+ *
+ * A dedicated dispatcher thread shared by a group of order queues. Queues operating in asynchronous mode hand their
+ * dispatch requests to the dispatcher rather than dispatching on the calling thread, so the cost of processing orders
+ * is never borne by the thread placing the order or adjusting the price.
+ */
+public class OrderDispatcher {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(OrderDispatcher.class.getName());
+
+    /** The single thread executing the dispatch requests */
+    private final ExecutorService executor;
+
+
+    /**
+     * Constructor
+     * @param name - name of the dispatcher thread
+     */
+    public OrderDispatcher(final String name) {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * Schedules a dispatch request for execution on the dispatcher thread.
+     * @param dispatchRequest - the request to be executed
+     */
+    void submit(final Runnable dispatchRequest) {
+        executor.execute(dispatchRequest);
+    }
+
+
+    /**
+     * Stops the dispatcher thread once the outstanding requests have been executed.
+     */
+    public void shutdown() {
+        LOGGER.fine("Shutting down order dispatcher");
+        executor.shutdown();
+    }
+}
@@ -1,9 +1,9 @@
 package edu.uw.danco.broker;
 
-import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.broker.OrderManager;
 import edu.uw.ext.framework.broker.OrderProcessor;
 import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
 import edu.uw.ext.framework.order.StopBuyOrder;
 import edu.uw.ext.framework.order.StopSellOrder;
 
@@ -17,6 +17,12 @@ import java.util.Comparator;
  */
 public class OrderManagerImpl implements OrderManager {
 
+    /** Value of stopBuyPrefetched when no stop buy accounts have been prefetched */
+    private static final long NO_BUY_PREFETCH = Long.MIN_VALUE;
+
+    /** Value of stopSellPrefetched when no stop sell accounts have been prefetched */
+    private static final long NO_SELL_PREFETCH = Long.MAX_VALUE;
+
     /** The stock ticker symbol being managed by this instance */
     private String symbol;
 
@@ -27,10 +33,31 @@ public class OrderManagerImpl implements OrderManager {
     private OrderQueue<StopSellOrder> stopSellOrderQueue;
 
     /** The StopBuyOrder filter */
-    private OrderDispatchFilter<Integer, StopBuyOrder> stopBuyOrderFilter;
+    private PriceDispatchFilter<StopBuyOrder> stopBuyOrderFilter;
 
     /** The StopSellOrder filter */
-    private OrderDispatchFilter<Integer, StopSellOrder> stopSellOrderFilter;
+    private PriceDispatchFilter<StopSellOrder> stopSellOrderFilter;
+
+    /** The next price at which a stop buy order can trigger, null if the queue cannot be inspected */
+    private TriggerWatermark stopBuyWatermark;
+
+    /** The next price at which a stop sell order can trigger, null if the queue cannot be inspected */
+    private TriggerWatermark stopSellWatermark;
+
+    /** Time the queues were first found empty by isIdle, 0 if they were not empty when last checked */
+    private long emptySince;
+
+    /** Loads the accounts of orders close to triggering, null if accounts are not prefetched */
+    private AccountPrefetcher prefetcher;
+
+    /** Distance from the price within which an order's account is prefetched */
+    private int prefetchDistance;
+
+    /** Highest stop buy price whose orders' accounts have been prefetched, NO_BUY_PREFETCH if none */
+    private volatile long stopBuyPrefetched = NO_BUY_PREFETCH;
+
+    /** Lowest stop sell price whose orders' accounts have been prefetched, NO_SELL_PREFETCH if none */
+    private volatile long stopSellPrefetched = NO_SELL_PREFETCH;
 
 
     /**
@@ -45,13 +72,24 @@ public class OrderManagerImpl implements OrderManager {
      * @param price - the current price of stock to be managed
      */
     public OrderManagerImpl(final String symbol, final int price) {
+        this(symbol, price, TreeOrderQueueFactory.INSTANCE);
+    }
+
+
+    /**
+     * Constructor
+     * @param symbol - the ticker symbol of the stock this instance is manage orders for
+     * @param price - the current price of stock to be managed
+     * @param queueFactory - the factory used to create the stop order queues
+     */
+    public OrderManagerImpl(final String symbol, final int price, final OrderQueueFactory queueFactory) {
         this.symbol = symbol;
 
         stopBuyOrderFilter = new StopBuyOrderDispatchFilter(price);
         stopSellOrderFilter = new StopSellOrderDispatchFilter(price);
 
-        stopBuyOrderQueue = new OrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, stopBuyOrderFilter);
-        stopSellOrderQueue = new OrderQueueImpl<StopSellOrder>(StopSellOrderComparator.INSTANCE, stopSellOrderFilter);
+        setStopBuyOrderQueue(queueFactory.newStopBuyOrderQueue(stopBuyOrderFilter));
+        setStopSellOrderQueue(queueFactory.newStopSellOrderQueue(stopSellOrderFilter));
     }
 
 
@@ -66,33 +104,266 @@ public class OrderManagerImpl implements OrderManager {
 
 
     /**
-     * Respond to a stock price adjustment by setting threshold on dispatch filters.
+     * Respond to a stock price adjustment by setting threshold on dispatch filters. The price is passed as a primitive
+     * through to the filters, nothing is allocated unless orders are dispatched. A queue is only dispatched if the
+     * price crosses its trigger watermark, so a price change that triggers nothing costs O(1).
      * @param price - the new price
      */
     @Override
     public void adjustPrice(final int price) {
-        stopBuyOrderFilter.setThreshold(price);
-        stopSellOrderFilter.setThreshold(price);
+        adjustStopBuyPrice(price, false);
+        adjustStopSellPrice(price, false);
+    }
+
+
+    /**
+     * Respond to a conflated price movement. Stop buy orders are dispatched at the high and stop sell orders at the
+     * low, so every order any price in the range would have triggered is dispatched, then the thresholds are left at
+     * the latest price. The high and low dispatches run on the calling thread even in asynchronous mode, a dispatch
+     * left to the dispatcher thread could run after the thresholds have moved on to the latest price.
+     * @param low - the lowest price since the previous adjustment
+     * @param high - the highest price since the previous adjustment
+     * @param last - the latest price
+     */
+    public void adjustPrice(final int low, final int high, final int last) {
+        adjustStopBuyPrice(high, true);
+        adjustStopSellPrice(low, true);
+        if (high != last) {
+            stopBuyOrderFilter.setThresholdPrice(last);
+        }
+        if (low != last) {
+            stopSellOrderFilter.setThresholdPrice(last);
+        }
+    }
+
+
+    /**
+     * Sets the stop buy threshold, dispatching the stop buy queue if the price crosses its watermark.
+     * @param price - the new price
+     * @param now - true to dispatch on the calling thread even if the queue is in asynchronous mode
+     */
+    private void adjustStopBuyPrice(final int price, final boolean now) {
+        // the threshold must be set before the watermark is read, an order being added concurrently either sees the
+        // new threshold when it dispatches, or has already lowered the watermark
+        stopBuyOrderFilter.setThresholdPrice(price);
+        if (stopBuyWatermark == null) {
+            dispatch(stopBuyOrderQueue, now);
+        } else if (stopBuyWatermark.isCrossed(price)) {
+            dispatch(stopBuyOrderQueue, now);
+            stopBuyWatermark.refresh((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue, OrderPrice.STOP_BUY);
+        }
+        if (prefetcher != null && stopBuyWatermark != null) {
+            prefetchStopBuy(price);
+        }
+    }
+
+
+    /**
+     * Prefetches the accounts of the stop buy orders within the prefetch distance of a price. Only the orders between
+     * the previously prefetched price and the new limit are requested, so the queue is only visited when the limit
+     * moves up; orders added within the prefetched range are requested as they are queued. Once the watermark is out
+     * of range the prefetched range is forgotten.
+     * @param price - the new price
+     */
+    private void prefetchStopBuy(final int price) {
+        if (!stopBuyWatermark.isWithin(price, prefetchDistance)) {
+            stopBuyPrefetched = NO_BUY_PREFETCH;
+            return;
+        }
+        final long limit = (long) price + prefetchDistance;
+        final long done = stopBuyPrefetched;
+        if (limit <= done) {
+            return;
+        }
+        stopBuyPrefetched = limit;
+        ((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue).visit(new OrderVisitor<StopBuyOrder>() {
+            @Override
+            public boolean visit(final StopBuyOrder order) {
+                if (order.getPrice() > limit) {
+                    return false;
+                }
+                if (order.getPrice() > done) {
+                    prefetcher.prefetch(order.getAccountId());
+                }
+                return true;
+            }
+        });
+    }
+
+
+    /**
+     * Sets the stop sell threshold, dispatching the stop sell queue if the price crosses its watermark.
+     * @param price - the new price
+     * @param now - true to dispatch on the calling thread even if the queue is in asynchronous mode
+     */
+    private void adjustStopSellPrice(final int price, final boolean now) {
+        stopSellOrderFilter.setThresholdPrice(price);
+        if (stopSellWatermark == null) {
+            dispatch(stopSellOrderQueue, now);
+        } else if (stopSellWatermark.isCrossed(price)) {
+            dispatch(stopSellOrderQueue, now);
+            stopSellWatermark.refresh((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue, OrderPrice.STOP_SELL);
+        }
+        if (prefetcher != null && stopSellWatermark != null) {
+            prefetchStopSell(price);
+        }
+    }
+
+
+    /**
+     * Prefetches the accounts of the stop sell orders within the prefetch distance of a price, the queue is only
+     * visited when the limit moves down.
+     * @param price - the new price
+     */
+    private void prefetchStopSell(final int price) {
+        if (!stopSellWatermark.isWithin(price, prefetchDistance)) {
+            stopSellPrefetched = NO_SELL_PREFETCH;
+            return;
+        }
+        final long limit = (long) price - prefetchDistance;
+        final long done = stopSellPrefetched;
+        if (limit >= done) {
+            return;
+        }
+        stopSellPrefetched = limit;
+        ((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue).visit(new OrderVisitor<StopSellOrder>() {
+            @Override
+            public boolean visit(final StopSellOrder order) {
+                if (order.getPrice() < limit) {
+                    return false;
+                }
+                if (order.getPrice() < done) {
+                    prefetcher.prefetch(order.getAccountId());
+                }
+                return true;
+            }
+        });
     }
 
 
     /**
-     * Queue a stop buy order.
+     * Dispatches a queue.
+     * @param queue - the queue to dispatch
+     * @param now - true to dispatch on the calling thread even if the queue is in asynchronous mode
+     */
+    private static void dispatch(final OrderQueue<?> queue, final boolean now) {
+        if (now && queue instanceof BrokerOrderQueue) {
+            ((BrokerOrderQueue<?>) queue).dispatchOrdersNow();
+        } else {
+            queue.dispatchOrders();
+        }
+    }
+
+
+    /**
+     * Queue a stop buy order. The order's account is prefetched if the order is within the range already prefetched.
      * @param order - the order to queue
      */
     @Override
     public void queueOrder(final StopBuyOrder order) {
-        stopBuyOrderQueue.enqueue(order);
+        if (stopBuyWatermark == null) {
+            stopBuyOrderQueue.enqueue(order);
+        } else {
+            stopBuyWatermark.beginAdd(order.getPrice());
+            try {
+                stopBuyOrderQueue.enqueue(order);
+            } finally {
+                stopBuyWatermark.endAdd();
+            }
+        }
+        final AccountPrefetcher accounts = prefetcher;
+        if (accounts != null && order.getPrice() <= stopBuyPrefetched) {
+            accounts.prefetch(order.getAccountId());
+        }
     }
 
 
     /**
-     * Queue a stop sell order.
+     * Queue a stop sell order. The order's account is prefetched if the order is within the range already prefetched.
      * @param order - the order to queue
      */
     @Override
     public void queueOrder(final StopSellOrder order) {
-        stopSellOrderQueue.enqueue(order);
+        if (stopSellWatermark == null) {
+            stopSellOrderQueue.enqueue(order);
+        } else {
+            stopSellWatermark.beginAdd(order.getPrice());
+            try {
+                stopSellOrderQueue.enqueue(order);
+            } finally {
+                stopSellWatermark.endAdd();
+            }
+        }
+        final AccountPrefetcher accounts = prefetcher;
+        if (accounts != null && order.getPrice() >= stopSellPrefetched) {
+            accounts.prefetch(order.getAccountId());
+        }
+    }
+
+
+    /**
+     * Looks up a resting stop order by its id.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is resting with this order manager
+     */
+    public Order findOrder(final long orderId) {
+        Order order = null;
+        if (stopBuyOrderQueue instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue).find(orderId);
+        }
+        if (order == null && stopSellOrderQueue instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue).find(orderId);
+        }
+        return order;
+    }
+
+
+    /**
+     * Cancels a resting stop order. The trigger watermarks are left as they are, they may only be tighter than the
+     * queues.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is resting with this order manager
+     */
+    public Order cancelOrder(final long orderId) {
+        Order order = null;
+        if (stopBuyOrderQueue instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue).cancel(orderId);
+        }
+        if (order == null && stopSellOrderQueue instanceof BrokerOrderQueue) {
+            order = ((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue).cancel(orderId);
+        }
+        return order;
+    }
+
+
+    /**
+     * Tests if no stop orders are resting with this order manager.
+     * @return - true if both queues are empty, false if either has orders or cannot be inspected
+     */
+    public boolean isEmpty() {
+        return stopBuyOrderQueue instanceof BrokerOrderQueue
+               && ((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue).peek() == null
+               && stopSellOrderQueue instanceof BrokerOrderQueue
+               && ((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue).peek() == null;
+    }
+
+
+    /**
+     * Tests if the queues have been empty for at least the idle time. The idle time is measured from the first call
+     * finding the queues empty, so this is intended to be called periodically by a single thread.
+     * @param now - the current time in milliseconds
+     * @param idleMillis - the idle time in milliseconds
+     * @return - true if the queues have been empty for the idle time
+     */
+    public boolean isIdle(final long now, final long idleMillis) {
+        if (!isEmpty()) {
+            emptySince = 0;
+            return false;
+        }
+        if (emptySince == 0) {
+            emptySince = now;
+        }
+        return now - emptySince >= idleMillis;
     }
 
 
@@ -108,6 +379,21 @@ public class OrderManagerImpl implements OrderManager {
     }
 
 
+    /**
+     * Enables prefetching the accounts of resting stop orders within a distance of triggering. When a price adjustment
+     * extends the range within the distance of the price, the accounts of the orders newly in range are requested from
+     * the prefetcher, which loads them in the background, as are the accounts of orders queued within the range.
+     * @param prefetcher - loads the accounts, null to disable prefetching
+     * @param distance - distance from the price within which an order's account is prefetched
+     */
+    public void setAccountPrefetcher(final AccountPrefetcher prefetcher, final int distance) {
+        this.prefetcher = prefetcher;
+        this.prefetchDistance = distance;
+        stopBuyPrefetched = NO_BUY_PREFETCH;
+        stopSellPrefetched = NO_SELL_PREFETCH;
+    }
+
+
     /**
      * Sets the stock ticker symbol
      * @param stockTickerSymbol - the stockTickerSymbol to set
@@ -121,17 +407,23 @@ public class OrderManagerImpl implements OrderManager {
      * Set the StopBuyrderFilter
      * @param stopBuyOrderFilter - the filter
      */
-    protected void 	setStopBuyOrderFilter(final OrderDispatchFilter<Integer,StopBuyOrder> stopBuyOrderFilter) {
+    protected void 	setStopBuyOrderFilter(final PriceDispatchFilter<StopBuyOrder> stopBuyOrderFilter) {
         this.stopBuyOrderFilter = stopBuyOrderFilter;
     }
 
 
     /**
-     * Set t he StopBuyOrder Queue
+     * Set t he StopBuyOrder Queue, the trigger watermark is only maintained if the queue is a BrokerOrderQueue
      * @param stopBuyOrderQueue the queue
      */
     protected void setStopBuyOrderQueue(final OrderQueue<StopBuyOrder> stopBuyOrderQueue) {
         this.stopBuyOrderQueue = stopBuyOrderQueue;
+        if (stopBuyOrderQueue instanceof BrokerOrderQueue) {
+            stopBuyWatermark = new TriggerWatermark(true);
+            stopBuyWatermark.refresh((BrokerOrderQueue<StopBuyOrder>) stopBuyOrderQueue, OrderPrice.STOP_BUY);
+        } else {
+            stopBuyWatermark = null;
+        }
     }
 
 
@@ -139,16 +431,22 @@ public class OrderManagerImpl implements OrderManager {
      * Set the StopSellOrderFilter
      * @param stopSellOrderFilter - the filter
      */
-    protected void setStopSellOrderFilter(final OrderDispatchFilter<Integer, StopSellOrder> stopSellOrderFilter) {
+    protected void setStopSellOrderFilter(final PriceDispatchFilter<StopSellOrder> stopSellOrderFilter) {
         this.stopSellOrderFilter = stopSellOrderFilter;
     }
 
 
     /**
-     * THe StopSellOrderQueue
+     * THe StopSellOrderQueue, the trigger watermark is only maintained if the queue is a BrokerOrderQueue
      * @param stopSellOrderQueue - the queue
      */
     protected void setStopSellOrderQueue(final OrderQueue<StopSellOrder> stopSellOrderQueue) {
         this.stopSellOrderQueue = stopSellOrderQueue;
+        if (stopSellOrderQueue instanceof BrokerOrderQueue) {
+            stopSellWatermark = new TriggerWatermark(false);
+            stopSellWatermark.refresh((BrokerOrderQueue<StopSellOrder>) stopSellOrderQueue, OrderPrice.STOP_SELL);
+        } else {
+            stopSellWatermark = null;
+        }
     }
 }
@@ -0,0 +1,39 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/20/13
+ * Time: 7:55 PM
+ *
+ * Obtains the price of a priced order type, allows price keyed structures to be shared by the stop order types.
+ */
+public interface OrderPrice<E extends Order> {
+
+    /** Price accessor for stop buy orders */
+    OrderPrice<StopBuyOrder> STOP_BUY = new OrderPrice<StopBuyOrder>() {
+        @Override
+        public int priceOf(final StopBuyOrder order) {
+            return order.getPrice();
+        }
+    };
+
+    /** Price accessor for stop sell orders */
+    OrderPrice<StopSellOrder> STOP_SELL = new OrderPrice<StopSellOrder>() {
+        @Override
+        public int priceOf(final StopSellOrder order) {
+            return order.getPrice();
+        }
+    };
+
+    /**
+     * Gets the price of the order
+     * @param order - the order
+     * @return - the order's price
+     */
+    int priceOf(E order);
+}
@@ -0,0 +1,41 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/18/13
+ * Time: 10:40 AM
+ *
+ * Creates the order queues used by a broker and its order managers, allowing the queue implementation to be selected.
+ */
+public interface OrderQueueFactory {
+
+    /**
+     * Creates a queue for stop buy orders.
+     * @param filter - the dispatch filter used to control dispatching from the queue
+     * @return - the new queue
+     */
+    OrderQueue<StopBuyOrder> newStopBuyOrderQueue(OrderDispatchFilter<?, StopBuyOrder> filter);
+
+
+    /**
+     * Creates a queue for stop sell orders.
+     * @param filter - the dispatch filter used to control dispatching from the queue
+     * @return - the new queue
+     */
+    OrderQueue<StopSellOrder> newStopSellOrderQueue(OrderDispatchFilter<?, StopSellOrder> filter);
+
+
+    /**
+     * Creates a queue for market orders, the orders are kept in their natural ordering.
+     * @param filter - the dispatch filter used to control dispatching from the queue
+     * @return - the new queue
+     */
+    OrderQueue<Order> newMarketOrderQueue(OrderDispatchFilter<?, Order> filter);
+}
@@ -2,10 +2,11 @@ package edu.uw.danco.broker;
 
 import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.broker.OrderProcessor;
-import edu.uw.ext.framework.broker.OrderQueue;
 import edu.uw.ext.framework.order.Order;
 
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
 import java.util.logging.Logger;
 
@@ -15,9 +16,10 @@ import java.util.logging.Logger;
  * Date: 4/28/13
  * Time: 3:05 PM
  *
- * A simple OrderQueue implementation backed by a TreeSet.
+ * A simple OrderQueue implementation backed by a TreeSet. By default orders are dispatched on the thread enqueuing the
+ * order or adjusting the threshold, if an OrderDispatcher is set dispatching is handed off to the dispatcher thread.
  */
-public final class OrderQueueImpl<E extends Order> implements OrderQueue<E> {
+public final class OrderQueueImpl<E extends Order> implements BrokerOrderQueue<E> {
 
     /** The logger for this class */
     private static final Logger LOGGER = Logger.getLogger(OrderQueueImpl.class.getName());
@@ -25,12 +27,21 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E> {
     /** Backing store for orders */
     private TreeSet<E> queue;
 
+    /** Index of the queued orders by order id */
+    private final LongObjectMap<E> index = new LongObjectMap<E>();
+
     /** The processor used during order processing */
     private OrderProcessor orderProcessor;
 
     /** The dispatch filter used to control dispatching from this queue */
     private OrderDispatchFilter<?, E> filter;
 
+    /** The dispatch request used in asynchronous mode, null when dispatching synchronously */
+    private volatile DispatchRequest dispatchRequest;
+
+    /** The list dispatch batches are collected in */
+    private final OrderBatchBuffer batchBuffer = new OrderBatchBuffer();
+
 
     /**
      * Constructor
@@ -61,7 +72,28 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E> {
      */
     @Override
     public void enqueue(final E order) {
-        queue.add(order);
+        synchronized (this) {
+            if (queue.add(order)) {
+                index.put(order.getOrderId(), order);
+            }
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Adds all the orders to the queue, then dispatches any dispatchable orders once.
+     * @param orders - the orders to be added to the queue
+     */
+    @Override
+    public void enqueueAll(final Collection<? extends E> orders) {
+        synchronized (this) {
+            for (E order : orders) {
+                if (queue.add(order)) {
+                    index.put(order.getOrderId(), order);
+                }
+            }
+        }
         dispatchOrders();
     }
 
@@ -72,24 +104,114 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E> {
      * @return - the first dispatchable order in the queue, or null if there are no dispatchable orders in the queue
      */
     @Override
-    public E dequeue() {
+    public synchronized E dequeue() {
         E order = null;
         if (!queue.isEmpty()) {
             if (filter.check(queue.first())) {
                 order = queue.first();
                 queue.remove(order);
+                index.remove(order.getOrderId());
             }
         }
         return order;
     }
 
 
+    /**
+     * Gets the first order in the queue without removing it.
+     * @return - the first order, or null if the queue is empty
+     */
+    @Override
+    public synchronized E peek() {
+        return queue.isEmpty() ? null : queue.first();
+    }
+
+
+    /**
+     * Looks up a queued order by its id.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is queued
+     */
+    @Override
+    public synchronized E find(final long orderId) {
+        return index.get(orderId);
+    }
+
+
+    /**
+     * Removes a queued order without dispatching it. The order is located through the id index, only the removal
+     * from the tree is logarithmic.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is queued
+     */
+    @Override
+    public synchronized E cancel(final long orderId) {
+        final E order = index.remove(orderId);
+        if (order != null) {
+            queue.remove(order);
+        }
+        return order;
+    }
+
+
+    /**
+     * Passes the queued orders to the visitor in dispatch order, until the visitor declines the next order.
+     * @param visitor - the visitor
+     */
+    @Override
+    public synchronized void visit(final OrderVisitor<? super E> visitor) {
+        for (E order : queue) {
+            if (!visitor.visit(order)) {
+                break;
+            }
+        }
+    }
+
+
     /**
      * Executes the orderProcessor for each dispatchable order. Each dispatchable order is in turn removed from the
      * queue and passed to the callback. If no callback is registered the order is simply removed from the queue.
+     * In asynchronous mode this only signals the dispatcher thread, a request already waiting absorbs this one.
      */
     @Override
     public void dispatchOrders() {
+        final DispatchRequest request = dispatchRequest;
+        if (request != null) {
+            request.request();
+        } else {
+            dispatchOrdersNow();
+        }
+    }
+
+
+    /**
+     * Dispatches the dispatchable orders on the current thread. A BatchOrderProcessor receives them all in one batch
+     * once they have been removed, collected in a list reused between dispatches.
+     * Runs on the calling thread even in asynchronous mode.
+     */
+    @Override
+    public void dispatchOrdersNow() {
+        final OrderProcessor proc = orderProcessor;
+        if (proc instanceof BatchOrderProcessor) {
+            List<Order> batch = null;
+            try {
+                for (Order order = dequeue(); order != null; order = dequeue()) {
+                    if (batch == null) {
+                        batch = batchBuffer.acquire();
+                    }
+                    batch.add(order);
+                }
+                if (batch != null) {
+                    ((BatchOrderProcessor) proc).processBatch(batch);
+                }
+            } finally {
+                if (batch != null) {
+                    batchBuffer.release(batch);
+                }
+            }
+            return;
+        }
+
         Order order = dequeue();
         while (order != null) {
             if (orderProcessor != null) {
@@ -108,4 +230,19 @@ public final class OrderQueueImpl<E extends Order> implements OrderQueue<E> {
     public void setOrderProcessor(final OrderProcessor proc) {
         this.orderProcessor = proc;
     }
+
+
+    /**
+     * Switches the queue to asynchronous mode, all further dispatching is performed on the dispatcher's thread.
+     * @param dispatcher - the dispatcher to use, or null to resume dispatching on the calling thread
+     */
+    @Override
+    public void setOrderDispatcher(final OrderDispatcher dispatcher) {
+        dispatchRequest = dispatcher == null ? null : new DispatchRequest(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatchOrdersNow();
+            }
+        });
+    }
 }
@@ -0,0 +1,188 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.order.Order;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/27/13
+ * Time: 2:10 PM
+ *
+ * An append only, memory mapped file segment holding orders in arrival order. Orders are read back in the order
+ * written; once every record has been read the segment is reused from the start. Once closed the segment may not be
+ * used.
+ *
+ * Each record is a length prefixed Java serialization of the order, so an order read back is of the same class and
+ * has the same order id as the order written. The orders must be Serializable, and a record holds the class
+ * descriptors as well as the fields, several hundred bytes per order. A fixed field layout would be smaller, but the
+ * framework's order constructors assign a new order id. A record may also be read by its offset without consuming it.
+ */
+public final class OrderSpillFile {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(OrderSpillFile.class.getName());
+
+    /** The file backing the segment */
+    private final File file;
+
+    /** The mapped segment */
+    private MappedByteBuffer buffer;
+
+    /** Offset at which the next record is written */
+    private int writePosition;
+
+    /** Offset of the next record to be read */
+    private int readPosition;
+
+    /** Number of records written but not yet read */
+    private int count;
+
+
+    /**
+     * Constructor, creates and maps the file.
+     * @param file - the file backing the segment, replaced if it exists
+     * @param capacity - size of the segment in bytes
+     * @throws IOException - if the file cannot be created or mapped
+     */
+    public OrderSpillFile(final File file, final int capacity) throws IOException {
+        this.file = file;
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            raf.close();
+        }
+    }
+
+
+    /**
+     * Appends an order.
+     * @param order - the order
+     * @return - offset of the record, or -1 if the segment has no room for the record
+     * @throws IllegalStateException - if the segment has been closed
+     */
+    public int append(final Order order) {
+        checkOpen();
+        final byte[] record = serialize(order);
+        final int length = 4 + record.length;
+        if (writePosition + length > buffer.capacity()) {
+            return -1;
+        }
+        final int offset = writePosition;
+        buffer.position(offset);
+        buffer.putInt(record.length);
+        buffer.put(record);
+        writePosition += length;
+        count++;
+        return offset;
+    }
+
+
+    /**
+     * Reads the next order.
+     * @return - the order, or null if every record has been read
+     * @throws IllegalStateException - if the segment has been closed
+     */
+    public Order next() {
+        checkOpen();
+        if (count == 0) {
+            return null;
+        }
+        final Order order = read(readPosition);
+        readPosition = buffer.position();
+        count--;
+        if (count == 0) {
+            readPosition = 0;
+            writePosition = 0;
+        }
+        return order;
+    }
+
+
+    /**
+     * Reads the record at an offset without consuming it.
+     * @param offset - offset of the record, as returned by append and not yet consumed by next
+     * @return - the order
+     * @throws IllegalStateException - if the segment has been closed or the record is corrupt
+     */
+    public Order read(final int offset) {
+        checkOpen();
+        buffer.position(offset);
+        final byte[] record = new byte[buffer.getInt()];
+        buffer.get(record);
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record));
+            return (Order) in.readObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt spill record at " + offset, e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Corrupt spill record at " + offset, e);
+        }
+    }
+
+
+    /**
+     * Gets the number of orders waiting to be read.
+     * @return - the number of unread records
+     */
+    public int size() {
+        return count;
+    }
+
+
+    /**
+     * Releases the mapping and deletes the file, closing an already closed segment does nothing.
+     */
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        buffer = null;
+        count = 0;
+        if (!file.delete()) {
+            LOGGER.log(Level.WARNING, "Unable to delete spill file " + file);
+        }
+    }
+
+
+    /**
+     * Checks the segment has not been closed.
+     * @throws IllegalStateException - if the segment has been closed
+     */
+    private void checkOpen() {
+        if (buffer == null) {
+            throw new IllegalStateException("Spill file " + file + " is closed");
+        }
+    }
+
+
+    /**
+     * Serializes an order.
+     * @param order - the order
+     * @return - the serialized order
+     */
+    private static byte[] serialize(final Order order) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(order);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize order " + order.getOrderId(), e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/12/13
+ * Time: 7:20 PM
+ *
+ * Callback receiving the orders of a BrokerOrderQueue in dispatch order.
+ */
+public interface OrderVisitor<E extends Order> {
+
+    /**
+     * Receives a queued order. Called while the queue may be locked, so must not call back into the queue.
+     * @param order - the order
+     * @return - true to continue with the next order, false to stop
+     */
+    boolean visit(E order);
+}
@@ -0,0 +1,303 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/10/13
+ * Time: 7:15 PM
+ *
+ * OrderProcessor executing orders on a fixed set of worker lanes. Each order is assigned to a lane by a hash of its
+ * account id, so the orders of one account execute in dispatch order on one thread while different accounts execute
+ * in parallel. Each lane has a bounded queue, a full lane blocks the dispatching thread until the lane catches up.
+ *
+ * The delegate, and the account manager behind it, must be safe for use by several threads at once.
+ */
+public class PartitionedExecutionEngine implements OrderProcessor {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PartitionedExecutionEngine.class.getName());
+
+    /** How long an idle lane waits for an order before checking for shutdown, in milliseconds */
+    private static final long POLL_MILLIS = 100L;
+
+    /** The processor executing the orders */
+    private final OrderProcessor delegate;
+
+    /** The lanes */
+    private final Lane[] lanes;
+
+    /** Cleared when the engine is shut down */
+    private volatile boolean running = true;
+
+
+    /**
+     * Constructor, starts the lane threads.
+     * @param delegate - the processor executing the orders
+     * @param laneCount - the number of lanes
+     * @param laneCapacity - the number of orders each lane may hold waiting for execution
+     * @param name - prefix for the lane thread names
+     */
+    public PartitionedExecutionEngine(final OrderProcessor delegate, final int laneCount, final int laneCapacity,
+                                      final String name) {
+        this.delegate = delegate;
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(name + "-lane-" + i, laneCapacity);
+            lanes[i].start();
+        }
+    }
+
+
+    /**
+     * Queues the order on its account's lane, waiting for room if the lane is full. If the engine was shut down while
+     * the order was being queued, the lane may already have stopped, so once it has the order is executed here.
+     * @param order - the order to process
+     */
+    @Override
+    public void process(final Order order) {
+        if (!running) {
+            delegate.process(order);
+            return;
+        }
+        final Lane lane = lanes[laneOf(order.getAccountId())];
+        lane.submit(order);
+        if (!running && Thread.currentThread() != lane) {
+            try {
+                lane.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lane.drain();
+        }
+    }
+
+
+    /**
+     * Gets the lane executing an account's orders
+     * @param accountId - the account name
+     * @return - the lane index
+     */
+    public int laneOf(final String accountId) {
+        return (accountId.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+
+    /**
+     * Gets the number of lanes
+     * @return - the number of lanes
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+
+    /**
+     * Gets the number of orders submitted to a lane
+     * @param lane - the lane index
+     * @return - the number of orders submitted
+     */
+    public long getSubmitted(final int lane) {
+        return lanes[lane].submitted.get();
+    }
+
+
+    /**
+     * Gets the number of orders a lane has executed
+     * @param lane - the lane index
+     * @return - the number of orders executed, including failed orders
+     */
+    public long getExecuted(final int lane) {
+        return lanes[lane].executed.get();
+    }
+
+
+    /**
+     * Gets the number of orders whose execution failed on a lane
+     * @param lane - the lane index
+     * @return - the number of failed orders
+     */
+    public long getFailed(final int lane) {
+        return lanes[lane].failed.get();
+    }
+
+
+    /**
+     * Gets the number of submissions that had to wait for room on a lane
+     * @param lane - the lane index
+     * @return - the number of blocked submissions
+     */
+    public long getBlockedSubmits(final int lane) {
+        return lanes[lane].blockedSubmits.get();
+    }
+
+
+    /**
+     * Gets the number of orders waiting on a lane
+     * @param lane - the lane index
+     * @return - the current queue depth
+     */
+    public int getQueueDepth(final int lane) {
+        return lanes[lane].queue.size();
+    }
+
+
+    /**
+     * Gets the deepest a lane's queue has been
+     * @param lane - the lane index
+     * @return - the maximum queue depth
+     */
+    public int getMaxQueueDepth(final int lane) {
+        return lanes[lane].maxDepth;
+    }
+
+
+    /**
+     * Gets the time a lane has spent executing orders
+     * @param lane - the lane index
+     * @return - the busy time in nanoseconds
+     */
+    public long getBusyNanos(final int lane) {
+        return lanes[lane].busyNanos.get();
+    }
+
+
+    /**
+     * Stops the lanes once their queued orders have executed, any order queued as a lane stopped and orders arriving
+     * afterwards are executed on the calling thread.
+     */
+    public void shutdown() {
+        running = false;
+        for (Lane lane : lanes) {
+            try {
+                lane.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            lane.drain();
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            for (int i = 0; i < lanes.length; i++) {
+                LOGGER.info(String.format("Lane %d executed %d orders, %d failed, %d blocked submits, "
+                                          + "max depth %d, busy %d ms",
+                                          i, getExecuted(i), getFailed(i), getBlockedSubmits(i),
+                                          getMaxQueueDepth(i), getBusyNanos(i) / 1000000L));
+            }
+        }
+    }
+
+
+    /**
+     * A worker thread and its queue of orders.
+     */
+    private final class Lane extends Thread {
+        /** The orders waiting for execution */
+        private final ArrayBlockingQueue<Order> queue;
+
+        /** Number of orders submitted */
+        private final AtomicLong submitted = new AtomicLong();
+
+        /** Number of orders executed */
+        private final AtomicLong executed = new AtomicLong();
+
+        /** Number of orders whose execution failed */
+        private final AtomicLong failed = new AtomicLong();
+
+        /** Number of submissions that waited for room */
+        private final AtomicLong blockedSubmits = new AtomicLong();
+
+        /** Time spent executing orders, in nanoseconds */
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        /** The deepest the queue has been, approximate under concurrent submission */
+        private volatile int maxDepth;
+
+
+        /**
+         * Constructor
+         * @param name - the thread name
+         * @param capacity - the queue capacity
+         */
+        private Lane(final String name, final int capacity) {
+            super(name);
+            setDaemon(true);
+            queue = new ArrayBlockingQueue<Order>(capacity);
+        }
+
+
+        /**
+         * Queues an order, waiting for room if the queue is full.
+         * @param order - the order
+         */
+        private void submit(final Order order) {
+            submitted.incrementAndGet();
+            if (!queue.offer(order)) {
+                blockedSubmits.incrementAndGet();
+                try {
+                    queue.put(order);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.warning("Interrupted queueing order " + order.getOrderId() + ", executing it directly");
+                    delegate.process(order);
+                    return;
+                }
+            }
+            final int depth = queue.size();
+            if (depth > maxDepth) {
+                maxDepth = depth;
+            }
+        }
+
+
+        /**
+         * Executes the orders left queued once the lane has stopped, on the calling thread. Threads draining the same
+         * lane take turns, so the orders still execute in the order queued.
+         */
+        private synchronized void drain() {
+            for (Order order = queue.poll(); order != null; order = queue.poll()) {
+                delegate.process(order);
+            }
+        }
+
+
+        /**
+         * Executes the queued orders until the engine is shut down and the queue is empty.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                final Order order;
+                try {
+                    order = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (order == null) {
+                    if (!running) {
+                        break;
+                    }
+                    continue;
+                }
+                final long start = System.nanoTime();
+                try {
+                    delegate.process(order);
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    LOGGER.log(Level.SEVERE, "Order " + order.getOrderId() + " failed", e);
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    executed.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/12/13
+ * Time: 9:15 PM
+ *
+ * OrderProcessor executing orders in three stages connected by bounded queues, each stage on its own threads:
+ * loading the account, executing the trade, and reflecting the order in the account, which persists it. The account
+ * load of one order overlaps the trade and persistence of the orders ahead of it, so throughput is set by the slowest
+ * stage rather than the sum of the stages. The trade stage runs a window of trades in flight at once.
+ *
+ * An account with an order anywhere in the pipeline is loaded once and shared by its following orders until its last
+ * order is persisted, so no order works on a copy loaded before an earlier order's update was persisted. An order is
+ * only reflected in its account once its trade has executed, through Account.reflectOrder under the account's
+ * monitor, so a failed trade leaves the account untouched; with a window above one the trades of an account may
+ * execute out of dispatch order, the resulting balance is the same.
+ *
+ * The account manager must be safe for use by several threads at once.
+ */
+public class PipelinedOrderProcessor implements OrderProcessor {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PipelinedOrderProcessor.class.getName());
+
+    /** How long an idle stage waits for work before checking for shutdown, in milliseconds */
+    private static final long POLL_MILLIS = 100L;
+
+    /** The account manager used to load and persist accounts */
+    private final AccountManager accountManager;
+
+    /** The exchange executing the trades */
+    private final StockExchange exchange;
+
+    /** The broker's copy of the exchange state, null to query the exchange */
+    private final ExchangeMirror mirror;
+
+    /** Records the use of prefetched accounts, null if accounts are not prefetched */
+    private final AccountPrefetcher prefetcher;
+
+    /** The accounts with orders in the pipeline, guarded by itself */
+    private final Map<String, InFlightAccount> inFlight = new HashMap<String, InFlightAccount>();
+
+    /** The account load stage */
+    private final Stage loadStage;
+
+    /** The trade stage threads */
+    private final Stage[] tradeStages;
+
+    /** The persistence stage */
+    private final Stage persistStage;
+
+    /** Number of orders loaded */
+    private final AtomicLong loaded = new AtomicLong();
+
+    /** Number of orders traded */
+    private final AtomicLong traded = new AtomicLong();
+
+    /** Number of orders persisted */
+    private final AtomicLong persisted = new AtomicLong();
+
+    /** Number of orders dropped by a failed stage */
+    private final AtomicLong failed = new AtomicLong();
+
+
+    /**
+     * Constructor, starts the stage threads.
+     * @param accountManager - the account manager used to load and persist accounts
+     * @param exchange - the exchange executing the trades
+     * @param mirror - the copy of the exchange state used for the market state and prices, null to query the exchange
+     * @param prefetcher - records the use of prefetched accounts, null if accounts are not prefetched
+     * @param window - the number of trades in flight at once
+     * @param capacity - the number of orders each stage may hold waiting
+     * @param name - prefix for the stage thread names
+     */
+    public PipelinedOrderProcessor(final AccountManager accountManager, final StockExchange exchange,
+                                   final ExchangeMirror mirror, final AccountPrefetcher prefetcher,
+                                   final int window, final int capacity, final String name) {
+        this.accountManager = accountManager;
+        this.exchange = exchange;
+        this.mirror = mirror;
+        this.prefetcher = prefetcher;
+
+        persistStage = new Stage(name + "-persist", new ArrayBlockingQueue<Job>(capacity)) {
+            @Override
+            protected void handle(final Job job) {
+                persist(job);
+            }
+        };
+        final BlockingQueue<Job> tradeQueue = new ArrayBlockingQueue<Job>(capacity);
+        tradeStages = new Stage[Math.max(1, window)];
+        for (int i = 0; i < tradeStages.length; i++) {
+            tradeStages[i] = new Stage(name + "-trade-" + i, tradeQueue) {
+                @Override
+                protected void handle(final Job job) {
+                    trade(job);
+                }
+            };
+        }
+        loadStage = new Stage(name + "-load", new ArrayBlockingQueue<Job>(capacity)) {
+            @Override
+            protected void handle(final Job job) {
+                load(job);
+            }
+        };
+
+        persistStage.start();
+        for (Stage stage : tradeStages) {
+            stage.start();
+        }
+        loadStage.start();
+    }
+
+
+    /**
+     * Queues the order for execution, waiting for room if the pipeline is full.
+     * @param order - the order to process
+     */
+    @Override
+    public void process(final Order order) {
+        loadStage.put(new Job(order));
+    }
+
+
+    /**
+     * Gets the number of orders whose account has been loaded
+     * @return - the number of orders loaded
+     */
+    public long getLoadedCount() {
+        return loaded.get();
+    }
+
+
+    /**
+     * Gets the number of orders traded
+     * @return - the number of orders traded
+     */
+    public long getTradedCount() {
+        return traded.get();
+    }
+
+
+    /**
+     * Gets the number of orders whose account has been persisted
+     * @return - the number of orders persisted
+     */
+    public long getPersistedCount() {
+        return persisted.get();
+    }
+
+
+    /**
+     * Gets the number of orders dropped because a stage failed
+     * @return - the number of failed orders
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+
+    /**
+     * Stops the stages once the orders in the pipeline have been executed and persisted, each stage is stopped after
+     * the stages feeding it.
+     */
+    public void shutdown() {
+        loadStage.finish();
+        for (Stage stage : tradeStages) {
+            stage.finish();
+        }
+        persistStage.finish();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(String.format("Pipeline loaded %d, traded %d, persisted %d orders, %d failed",
+                                      loaded.get(), traded.get(), persisted.get(), failed.get()));
+        }
+    }
+
+
+    /**
+     * Load stage, attaches the order's account, loading it unless it is already in the pipeline.
+     * @param job - the order
+     */
+    private void load(final Job job) {
+        final String accountId = job.order.getAccountId();
+        if (prefetcher != null) {
+            prefetcher.claim(accountId);
+        }
+        InFlightAccount account;
+        synchronized (inFlight) {
+            account = inFlight.get(accountId);
+            if (account != null) {
+                account.orders++;
+            }
+        }
+        if (account == null) {
+            final Account loadedAccount;
+            try {
+                loadedAccount = accountManager.getAccount(accountId);
+            } catch (AccountException e) {
+                LOGGER.log(Level.SEVERE, "Unable to get account for " + accountId, e);
+                failed.incrementAndGet();
+                return;
+            }
+            if (loadedAccount == null) {
+                LOGGER.severe("No account " + accountId + " for order " + job.order.getOrderId());
+                failed.incrementAndGet();
+                return;
+            }
+            account = new InFlightAccount(loadedAccount);
+            synchronized (inFlight) {
+                inFlight.put(accountId, account);
+            }
+        }
+        job.account = account;
+        loaded.incrementAndGet();
+        tradeStages[0].put(job);
+    }
+
+
+    /**
+     * Trade stage, executes the trade if the market is open and records the price for the account update.
+     * @param job - the order and its account
+     */
+    private void trade(final Job job) {
+        final Order order = job.order;
+        if (mirror != null ? mirror.isOpen() : exchange.isOpen()) {
+            try {
+                job.price = mirror != null ? mirror.getPrice(order.getStockTicker())
+                                           : exchange.getQuote(order.getStockTicker()).getPrice();
+                exchange.executeTrade(order);
+                traded.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Trade failed for order " + order.getOrderId(), e);
+                failed.incrementAndGet();
+                release(job);
+                return;
+            }
+            persistStage.put(job);
+        } else {
+            release(job);
+        }
+    }
+
+
+    /**
+     * Persistence stage, reflects the executed order in the account, which adjusts and persists its balance, then
+     * releases the account from the pipeline. The account reports its own persistence failures.
+     * @param job - the order and its account
+     */
+    private void persist(final Job job) {
+        final Account account = job.account.account;
+        try {
+            synchronized (account) {
+                account.reflectOrder(job.order, job.price);
+            }
+            persisted.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to reflect order " + job.order.getOrderId()
+                                     + " in account " + account.getName(), e);
+            failed.incrementAndGet();
+        } finally {
+            release(job);
+        }
+    }
+
+
+    /**
+     * Releases an order's hold on its account, the account leaves the pipeline with its last order.
+     * @param job - the order and its account
+     */
+    private void release(final Job job) {
+        synchronized (inFlight) {
+            if (--job.account.orders == 0) {
+                inFlight.remove(job.order.getAccountId());
+            }
+        }
+    }
+
+
+    /**
+     * An account shared by the orders in the pipeline.
+     */
+    private static final class InFlightAccount {
+        /** The account */
+        private final Account account;
+
+        /** Number of orders in the pipeline for the account, guarded by the in flight map */
+        private int orders = 1;
+
+
+        /**
+         * Constructor
+         * @param account - the account
+         */
+        private InFlightAccount(final Account account) {
+            this.account = account;
+        }
+    }
+
+
+    /**
+     * An order moving through the pipeline.
+     */
+    private static final class Job {
+        /** The order */
+        private final Order order;
+
+        /** The order's account, attached by the load stage */
+        private InFlightAccount account;
+
+        /** The price the order executed at, set by the trade stage */
+        private int price;
+
+
+        /**
+         * Constructor
+         * @param order - the order
+         */
+        private Job(final Order order) {
+            this.order = order;
+        }
+    }
+
+
+    /**
+     * A pipeline stage thread, taking jobs from its queue until finished and the queue is empty.
+     */
+    private abstract class Stage extends Thread {
+        /** The jobs waiting for the stage, may be shared by several threads of the stage */
+        private final BlockingQueue<Job> queue;
+
+        /** Cleared once no further jobs will be queued */
+        private volatile boolean open = true;
+
+
+        /**
+         * Constructor
+         * @param name - the thread name
+         * @param queue - the stage's queue
+         */
+        private Stage(final String name, final BlockingQueue<Job> queue) {
+            super(name);
+            setDaemon(true);
+            this.queue = queue;
+        }
+
+
+        /**
+         * Queues a job, waiting for room if the queue is full. A job queued once the stage has finished is handled
+         * on the calling thread.
+         * @param job - the job
+         */
+        private void put(final Job job) {
+            if (open) {
+                try {
+                    queue.put(job);
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            handle(job);
+        }
+
+
+        /**
+         * Stops the thread once the queue is empty and waits for it to exit, then handles any job queued as it
+         * exited.
+         */
+        private void finish() {
+            open = false;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Job job = queue.poll(); job != null; job = queue.poll()) {
+                handle(job);
+            }
+        }
+
+
+        /**
+         * Handles the queued jobs until finished and the queue is empty.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                final Job job;
+                try {
+                    job = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (job == null) {
+                    if (!open) {
+                        break;
+                    }
+                    continue;
+                }
+                try {
+                    handle(job);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, getName() + " failed for order " + job.order.getOrderId(), e);
+                    failed.incrementAndGet();
+                }
+            }
+        }
+
+
+        /**
+         * Handles a job.
+         * @param job - the job
+         */
+        protected abstract void handle(Job job);
+    }
+}
@@ -0,0 +1,167 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/1/13
+ * Time: 10:05 AM
+ *
+ * Conflates price ticks between the exchange thread and the order managers. Each ticker has a slot holding the latest
+ * price and the high and low since the slot was last consumed; publishing a price only updates the slot, and queues
+ * it for the consumer thread if it was not already pending. The consumer delivers one update per pending ticker, so
+ * a burst of ticks for a ticker costs one update rather than one per tick. Because the high and low are carried, no
+ * stop order that any of the conflated prices would have triggered is missed.
+ *
+ * Publishing never waits for the consumer, it holds the slot's lock only to update three prices.
+ */
+public class PriceConflator {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PriceConflator.class.getName());
+
+    /** The slots by ticker id */
+    private final Slot[] slots;
+
+    /** The slots with an update pending, in the order they became pending */
+    private final BlockingQueue<Slot> pending = new LinkedBlockingQueue<Slot>();
+
+    /** The receiver of the conflated updates */
+    private final ConflatedPriceListener listener;
+
+    /** The consumer thread */
+    private final Thread consumer;
+
+    /** Number of ticks published */
+    private long published;
+
+    /** Number of updates delivered */
+    private volatile long delivered;
+
+
+    /**
+     * Constructor, starts the consumer thread.
+     * @param symbolCount - the number of ticker ids
+     * @param listener - the receiver of the conflated updates
+     * @param name - name of the consumer thread
+     */
+    public PriceConflator(final int symbolCount, final ConflatedPriceListener listener, final String name) {
+        this.listener = listener;
+        slots = new Slot[symbolCount];
+        for (int id = 0; id < symbolCount; id++) {
+            slots[id] = new Slot(id);
+        }
+        consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+
+    /**
+     * Publishes a price tick, called by a single producer thread.
+     * @param id - the ticker id
+     * @param price - the new price
+     */
+    public void publish(final int id, final int price) {
+        final Slot slot = slots[id];
+        final boolean wasPending;
+        synchronized (slot) {
+            wasPending = slot.pending;
+            if (wasPending) {
+                slot.last = price;
+                if (price > slot.high) {
+                    slot.high = price;
+                } else if (price < slot.low) {
+                    slot.low = price;
+                }
+            } else {
+                slot.last = price;
+                slot.high = price;
+                slot.low = price;
+                slot.pending = true;
+            }
+        }
+        published++;
+        if (!wasPending) {
+            pending.add(slot);
+        }
+    }
+
+
+    /**
+     * Stops the consumer thread, any pending updates are discarded.
+     */
+    public void shutdown() {
+        consumer.interrupt();
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Price conflator delivered " + delivered + " updates for " + published + " ticks");
+        }
+    }
+
+
+    /**
+     * The consumer loop, delivers the pending updates until interrupted.
+     */
+    private void consume() {
+        try {
+            while (true) {
+                final Slot slot = pending.take();
+                final int low;
+                final int high;
+                final int last;
+                synchronized (slot) {
+                    low = slot.low;
+                    high = slot.high;
+                    last = slot.last;
+                    slot.pending = false;
+                }
+                delivered++;
+                try {
+                    listener.pricesChanged(slot.id, low, high, last);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Unable to process price update", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.fine("Price conflator stopped");
+        }
+    }
+
+
+    /**
+     * The conflated prices of a ticker.
+     */
+    private static final class Slot {
+        /** The ticker id */
+        private final int id;
+
+        /** The latest price */
+        private int last;
+
+        /** The highest price since the slot was last consumed */
+        private int high;
+
+        /** The lowest price since the slot was last consumed */
+        private int low;
+
+        /** Set while the slot is queued for the consumer */
+        private boolean pending;
+
+        /**
+         * Constructor
+         * @param id - the ticker id
+         */
+        private Slot(final int id) {
+            this.id = id;
+        }
+    }
+}
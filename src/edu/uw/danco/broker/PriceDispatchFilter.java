@@ -0,0 +1,95 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/22/13
+ * Time: 8:30 PM
+ *
+ * Dispatch filter whose threshold is a price held as a primitive int, so adjusting the price and checking orders
+ * never box the threshold. The Integer threshold accessors are retained for compatibility with OrderDispatchFilter.
+ */
+public abstract class PriceDispatchFilter<E extends Order> extends OrderDispatchFilter<Integer, E> {
+
+    /** The threshold price */
+    private volatile int thresholdPrice;
+
+    /** The queue dispatched when the threshold changes */
+    private volatile OrderQueue<E> orderQueue;
+
+
+    /**
+     * Constructor
+     * @param initPrice - the initial threshold price
+     */
+    protected PriceDispatchFilter(final int initPrice) {
+        thresholdPrice = initPrice;
+    }
+
+
+    /**
+     * Sets the queue to be dispatched when the threshold changes.
+     * @param queue - the queue
+     */
+    @Override
+    public void setOrderQueue(final OrderQueue<E> queue) {
+        super.setOrderQueue(queue);
+        orderQueue = queue;
+    }
+
+
+    /**
+     * Sets the threshold price and dispatches the queue.
+     * @param price - the new threshold price
+     */
+    public void setThreshold(final int price) {
+        thresholdPrice = price;
+        final OrderQueue<E> queue = orderQueue;
+        if (queue != null) {
+            queue.dispatchOrders();
+        }
+    }
+
+
+    /**
+     * Sets the threshold price without dispatching the queue, used when the caller knows no order can be dispatched
+     * at the new price or will dispatch the queue itself.
+     * @param price - the new threshold price
+     */
+    public void setThresholdPrice(final int price) {
+        thresholdPrice = price;
+    }
+
+
+    /**
+     * Sets the threshold price and dispatches the queue.
+     * @param price - the new threshold price
+     */
+    @Override
+    public void setThreshold(final Integer price) {
+        setThreshold(price.intValue());
+    }
+
+
+    /**
+     * Gets the threshold, boxing it. Prefer getThresholdPrice.
+     * @return - the threshold price
+     */
+    @Override
+    public Integer getThreshold() {
+        return thresholdPrice;
+    }
+
+
+    /**
+     * Gets the threshold price
+     * @return - the threshold price
+     */
+    public int getThresholdPrice() {
+        return thresholdPrice;
+    }
+}
@@ -0,0 +1,471 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/20/13
+ * Time: 8:10 PM
+ *
+ * An OrderQueue implementation organized as a price level order book. Each distinct price has a level holding a FIFO
+ * of the orders at that price, orders at the same price are dispatched in arrival order. The levels are kept in an
+ * array sorted with the best level last, so a price move detaches the crossed levels from the end of the array. A
+ * dispatch costs O(levels crossed + orders released), each released order being removed from the id index, rather
+ * than one tree removal per order.
+ *
+ * Since all orders at a level share the price, the dispatch filter is only consulted for the first order of a level.
+ * Cancelled orders are removed from the id index immediately and discarded from their level lazily.
+ */
+public final class PriceLevelOrderQueue<E extends Order> implements BrokerOrderQueue<E> {
+
+    /** Initial capacity of the level arrays */
+    private static final int INITIAL_LEVELS = 16;
+
+    /** Maximum number of empty levels retained for reuse */
+    private static final int MAX_POOLED_LEVELS = 64;
+
+    /** Accessor for the order prices */
+    private final OrderPrice<E> orderPrice;
+
+    /** If true the lowest price is dispatched first, otherwise the highest price is dispatched first */
+    private final boolean lowestFirst;
+
+    /** The dispatch filter used to control dispatching from this queue */
+    private final OrderDispatchFilter<?, E> filter;
+
+    /** The level sort keys, descending so the best level is last */
+    private int[] keys = new int[INITIAL_LEVELS];
+
+    /** The levels, parallel to keys */
+    private Level<E>[] levels = newLevelArray(INITIAL_LEVELS);
+
+    /** Number of levels in use */
+    private int size;
+
+    /** Empty levels available for reuse */
+    private final ArrayDeque<Level<E>> levelPool = new ArrayDeque<Level<E>>();
+
+    /** Index of the queued orders by order id, an order in a level but not in the index has been cancelled */
+    private final LongObjectMap<E> index = new LongObjectMap<E>();
+
+    /** The processor used during order processing */
+    private volatile OrderProcessor orderProcessor;
+
+    /** The dispatch request used in asynchronous mode, null when dispatching synchronously */
+    private volatile DispatchRequest dispatchRequest;
+
+    /** The list dispatch batches are collected in */
+    private final OrderBatchBuffer batchBuffer = new OrderBatchBuffer();
+
+
+    /**
+     * Constructor
+     * @param orderPrice - accessor for the price of the orders
+     * @param lowestFirst - true if the lowest priced orders are to be dispatched first (stop buy), false if the
+     *                    highest priced are to be dispatched first (stop sell)
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     */
+    public PriceLevelOrderQueue(final OrderPrice<E> orderPrice, final boolean lowestFirst,
+                                final OrderDispatchFilter<?, E> filter) {
+        this.orderPrice = orderPrice;
+        this.lowestFirst = lowestFirst;
+        this.filter = filter;
+        filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Adds the specified order to its price level. Subsequent to adding the order dispatches any dispatchable orders.
+     * @param order - the order to be added to the queue
+     */
+    @Override
+    public void enqueue(final E order) {
+        synchronized (this) {
+            add(order);
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Adds all the orders to their price levels, then dispatches any dispatchable orders once.
+     * @param orders - the orders to be added to the queue
+     */
+    @Override
+    public void enqueueAll(final Collection<? extends E> orders) {
+        synchronized (this) {
+            for (E order : orders) {
+                add(order);
+            }
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Removes the first order of the best level, if it is dispatchable.
+     * @return - the first dispatchable order in the queue, or null if there are no dispatchable orders in the queue
+     */
+    @Override
+    public synchronized E dequeue() {
+        final Level<E> best = bestLevel();
+        if (best == null || !filter.check(best.orders.peekFirst())) {
+            return null;
+        }
+        final E order = best.orders.pollFirst();
+        index.remove(order.getOrderId());
+        if (best.orders.isEmpty()) {
+            size--;
+            levels[size] = null;
+            recycle(best);
+        }
+        return order;
+    }
+
+
+    /**
+     * Gets the first order of the best level without removing it.
+     * @return - the first order, or null if the queue is empty
+     */
+    @Override
+    public synchronized E peek() {
+        final Level<E> best = bestLevel();
+        return best == null ? null : best.orders.peekFirst();
+    }
+
+
+    /**
+     * Looks up a queued order by its id.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is queued
+     */
+    @Override
+    public synchronized E find(final long orderId) {
+        return index.get(orderId);
+    }
+
+
+    /**
+     * Cancels a queued order. The order is located and removed from the id index in constant time, its slot in the
+     * level FIFO is reclaimed lazily; a level is compacted once half of its entries are cancelled.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is queued
+     */
+    @Override
+    public synchronized E cancel(final long orderId) {
+        final E order = index.remove(orderId);
+        if (order != null) {
+            final int price = orderPrice.priceOf(order);
+            final int levelIndex = find(lowestFirst ? price : -price);
+            if (levelIndex >= 0) {
+                final Level<E> level = levels[levelIndex];
+                level.cancelled++;
+                if (level.cancelled * 2 > level.orders.size()) {
+                    compact(level, levelIndex);
+                }
+            }
+        }
+        return order;
+    }
+
+
+    /**
+     * Passes the queued orders to the visitor, best level first and in arrival order within a level, until the
+     * visitor declines the next order. Cancelled orders awaiting removal are skipped.
+     * @param visitor - the visitor
+     */
+    @Override
+    public synchronized void visit(final OrderVisitor<? super E> visitor) {
+        for (int i = size - 1; i >= 0; i--) {
+            for (E order : levels[i].orders) {
+                if (index.get(order.getOrderId()) == order && !visitor.visit(order)) {
+                    return;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Dispatches the dispatchable orders, in asynchronous mode this only signals the dispatcher thread and a request
+     * already waiting absorbs this one.
+     */
+    @Override
+    public void dispatchOrders() {
+        final DispatchRequest request = dispatchRequest;
+        if (request != null) {
+            request.request();
+        } else {
+            dispatchOrdersNow();
+        }
+    }
+
+
+    /**
+     * Detaches every dispatchable level and passes its orders, in price then arrival order, to the order processor.
+     * If no callback is registered the orders are simply removed from the queue. The detached levels are chained
+     * through the levels themselves, so dispatching allocates nothing. A BatchOrderProcessor receives the orders of
+     * all the detached levels in one batch, collected in a list reused between dispatches.
+     * Runs on the calling thread even in asynchronous mode.
+     */
+    @Override
+    public void dispatchOrdersNow() {
+        final OrderProcessor proc = orderProcessor;
+        final boolean batching = proc instanceof BatchOrderProcessor;
+        List<Order> batch = null;
+        try {
+            Level<E> level = releaseCrossedLevels();
+            while (level != null) {
+                E order = level.orders.pollFirst();
+                while (order != null) {
+                    if (batching) {
+                        if (batch == null) {
+                            batch = batchBuffer.acquire();
+                        }
+                        batch.add(order);
+                    } else if (proc != null) {
+                        proc.process(order);
+                    }
+                    order = level.orders.pollFirst();
+                }
+                final Level<E> next = level.next;
+                synchronized (this) {
+                    level.next = null;
+                    recycle(level);
+                }
+                level = next != null ? next : releaseCrossedLevels();
+            }
+            if (batch != null) {
+                ((BatchOrderProcessor) proc).processBatch(batch);
+            }
+        } finally {
+            if (batch != null) {
+                batchBuffer.release(batch);
+            }
+        }
+    }
+
+
+    /**
+     * Registers the callback to be used during order processing.
+     * @param proc - the callback to be registered
+     */
+    @Override
+    public void setOrderProcessor(final OrderProcessor proc) {
+        this.orderProcessor = proc;
+    }
+
+
+    /**
+     * Switches the queue to asynchronous mode, all further dispatching is performed on the dispatcher's thread.
+     * @param dispatcher - the dispatcher to use, or null to resume dispatching on the calling thread
+     */
+    @Override
+    public void setOrderDispatcher(final OrderDispatcher dispatcher) {
+        dispatchRequest = dispatcher == null ? null : new DispatchRequest(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatchOrdersNow();
+            }
+        });
+    }
+
+
+    /**
+     * Adds an order to its price level, creating the level if needed.
+     * @param order - the order
+     */
+    private void add(final E order) {
+        final int price = orderPrice.priceOf(order);
+        final int key = lowestFirst ? price : -price;
+        int levelIndex = find(key);
+        if (levelIndex < 0) {
+            levelIndex = insertLevel(-(levelIndex + 1), key);
+        }
+        levels[levelIndex].orders.addLast(order);
+        index.put(order.getOrderId(), order);
+    }
+
+
+    /**
+     * Gets the best level, discarding any cancelled orders at its head and any levels left empty.
+     * @return - the best level, or null if there are no orders
+     */
+    private Level<E> bestLevel() {
+        while (size > 0) {
+            final Level<E> best = levels[size - 1];
+            E head = best.orders.peekFirst();
+            while (head != null && index.get(head.getOrderId()) != head) {
+                best.orders.pollFirst();
+                best.cancelled--;
+                head = best.orders.peekFirst();
+            }
+            if (head != null) {
+                return best;
+            }
+            size--;
+            levels[size] = null;
+            recycle(best);
+        }
+        return null;
+    }
+
+
+    /**
+     * Detaches all levels whose orders are dispatchable at the current threshold, their orders are removed from the
+     * id index and any cancelled orders discarded.
+     * @return - the best detached level, chained to the remaining detached levels, or null if no level is dispatchable
+     */
+    private synchronized Level<E> releaseCrossedLevels() {
+        Level<E> head = null;
+        Level<E> tail = null;
+        Level<E> best = bestLevel();
+        while (best != null && filter.check(best.orders.peekFirst())) {
+            size--;
+            levels[size] = null;
+            purge(best, true);
+            if (head == null) {
+                head = best;
+            } else {
+                tail.next = best;
+            }
+            tail = best;
+            best = bestLevel();
+        }
+        return head;
+    }
+
+
+    /**
+     * Removes the cancelled orders from a level, removing the level if it is left empty.
+     * @param level - the level
+     * @param levelIndex - the position of the level
+     */
+    private void compact(final Level<E> level, final int levelIndex) {
+        purge(level, false);
+        if (level.orders.isEmpty()) {
+            System.arraycopy(keys, levelIndex + 1, keys, levelIndex, size - levelIndex - 1);
+            System.arraycopy(levels, levelIndex + 1, levels, levelIndex, size - levelIndex - 1);
+            size--;
+            levels[size] = null;
+            recycle(level);
+        }
+    }
+
+
+    /**
+     * Discards the cancelled orders of a level, preserving the order of the rest.
+     * @param level - the level
+     * @param unindex - if true the remaining orders are also removed from the id index
+     */
+    private void purge(final Level<E> level, final boolean unindex) {
+        final int count = level.orders.size();
+        for (int i = 0; i < count; i++) {
+            final E order = level.orders.pollFirst();
+            if (index.get(order.getOrderId()) == order) {
+                if (unindex) {
+                    index.remove(order.getOrderId());
+                }
+                level.orders.addLast(order);
+            }
+        }
+        level.cancelled = 0;
+    }
+
+
+    /**
+     * Binary search of the descending key array.
+     * @param key - the key to locate
+     * @return - index of the key, or (-(insertion point) - 1) if not present
+     */
+    private int find(final int key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int midKey = keys[mid];
+            if (midKey > key) {
+                low = mid + 1;
+            } else if (midKey < key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    /**
+     * Inserts a new, empty level.
+     * @param levelIndex - the insertion point
+     * @param key - the level's sort key
+     * @return - index of the new level
+     */
+    private int insertLevel(final int levelIndex, final int key) {
+        if (size == keys.length) {
+            final int[] newKeys = new int[size * 2];
+            final Level<E>[] newLevels = newLevelArray(size * 2);
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(levels, 0, newLevels, 0, size);
+            keys = newKeys;
+            levels = newLevels;
+        }
+        System.arraycopy(keys, levelIndex, keys, levelIndex + 1, size - levelIndex);
+        System.arraycopy(levels, levelIndex, levels, levelIndex + 1, size - levelIndex);
+
+        Level<E> level = levelPool.pollFirst();
+        if (level == null) {
+            level = new Level<E>();
+        }
+        keys[levelIndex] = key;
+        levels[levelIndex] = level;
+        size++;
+        return levelIndex;
+    }
+
+
+    /**
+     * Returns an emptied level to the pool.
+     * @param level - the level
+     */
+    private void recycle(final Level<E> level) {
+        level.cancelled = 0;
+        if (levelPool.size() < MAX_POOLED_LEVELS) {
+            levelPool.addFirst(level);
+        }
+    }
+
+
+    /**
+     * Creates a level array.
+     * @param length - the array length
+     * @return - the new array
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Order> Level<E>[] newLevelArray(final int length) {
+        return (Level<E>[]) new Level[length];
+    }
+
+
+    /**
+     * The orders resting at a single price.
+     */
+    private static final class Level<E extends Order> {
+        /** The orders at this price in arrival order */
+        private final ArrayDeque<E> orders = new ArrayDeque<E>();
+
+        /** The next level in a chain of detached levels */
+        private Level<E> next;
+
+        /** Number of cancelled orders still in the FIFO */
+        private int cancelled;
+    }
+}
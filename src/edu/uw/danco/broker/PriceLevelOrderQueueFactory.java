@@ -0,0 +1,36 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/20/13
+ * Time: 9:02 PM
+ *
+ * OrderQueueFactory creating price level order books for the stop orders, market orders use OrderQueueImpl.
+ */
+public class PriceLevelOrderQueueFactory implements OrderQueueFactory {
+
+    /** Instance for use in Singleton pattern */
+    public static final PriceLevelOrderQueueFactory INSTANCE = new PriceLevelOrderQueueFactory();
+
+    @Override
+    public OrderQueue<StopBuyOrder> newStopBuyOrderQueue(final OrderDispatchFilter<?, StopBuyOrder> filter) {
+        return new PriceLevelOrderQueue<StopBuyOrder>(OrderPrice.STOP_BUY, true, filter);
+    }
+
+    @Override
+    public OrderQueue<StopSellOrder> newStopSellOrderQueue(final OrderDispatchFilter<?, StopSellOrder> filter) {
+        return new PriceLevelOrderQueue<StopSellOrder>(OrderPrice.STOP_SELL, false, filter);
+    }
+
+    @Override
+    public OrderQueue<Order> newMarketOrderQueue(final OrderDispatchFilter<?, Order> filter) {
+        return new OrderQueueImpl<Order>(filter);
+    }
+}
@@ -0,0 +1,164 @@
+package edu.uw.danco.broker;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/13/13
+ * Time: 7:30 PM
+ *
+ * The broker's authenticated sessions. A successful login is issued a random token, presenting the token identifies
+ * the account without the password being hashed or checked again. The number of sessions is bounded, the least
+ * recently used session is dropped beyond it, and a session expires once unused for the idle time.
+ */
+public class SessionCache {
+
+    /** Number of random bytes in a token */
+    private static final int TOKEN_BYTES = 16;
+
+    /** Hex digits used to format tokens */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** Maximum number of sessions */
+    private final int maxSessions;
+
+    /** Time a session may go unused before it expires, in milliseconds */
+    private final long idleMillis;
+
+    /** Source of the tokens */
+    private final SecureRandom random = new SecureRandom();
+
+    /** The sessions by token, least recently used first */
+    private final LinkedHashMap<String, Session> sessions;
+
+
+    /**
+     * Constructor
+     * @param maxSessions - maximum number of sessions
+     * @param idleMillis - time a session may go unused before it expires, in milliseconds
+     */
+    public SessionCache(final int maxSessions, final long idleMillis) {
+        this.maxSessions = maxSessions;
+        this.idleMillis = idleMillis;
+        sessions = new LinkedHashMap<String, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Session> eldest) {
+                return size() > SessionCache.this.maxSessions;
+            }
+        };
+    }
+
+
+    /**
+     * Opens a session for an authenticated account
+     * @param accountName - the account name
+     * @return - the session token
+     */
+    public String open(final String accountName) {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        final char[] token = new char[TOKEN_BYTES * 2];
+        for (int i = 0; i < TOKEN_BYTES; i++) {
+            token[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            token[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        final String tokenString = new String(token);
+        synchronized (this) {
+            expire(System.currentTimeMillis());
+            sessions.put(tokenString, new Session(accountName));
+        }
+        return tokenString;
+    }
+
+
+    /**
+     * Gets the account of a session, renewing the session
+     * @param token - the session token
+     * @return - the account name, or null if the session is unknown or has expired
+     */
+    public synchronized String accountFor(final String token) {
+        final Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - session.lastUsed > idleMillis) {
+            sessions.remove(token);
+            return null;
+        }
+        session.lastUsed = now;
+        return session.accountName;
+    }
+
+
+    /**
+     * Closes a session
+     * @param token - the session token
+     */
+    public synchronized void close(final String token) {
+        sessions.remove(token);
+    }
+
+
+    /**
+     * Closes all the sessions of an account
+     * @param accountName - the account name
+     */
+    public synchronized void closeAccount(final String accountName) {
+        final Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().accountName.equals(accountName)) {
+                it.remove();
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of open sessions, including any expired but not yet discarded
+     * @return - the number of sessions
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+
+    /**
+     * Discards the expired sessions from the least recently used end.
+     * @param now - the current time in milliseconds
+     */
+    private void expire(final long now) {
+        final Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed <= idleMillis) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+
+    /**
+     * An open session.
+     */
+    private static final class Session {
+        /** The account name */
+        private final String accountName;
+
+        /** Time the session was last used, in milliseconds */
+        private long lastUsed = System.currentTimeMillis();
+
+
+        /**
+         * Constructor
+         * @param accountName - the account name
+         */
+        private Session(final String accountName) {
+            this.accountName = accountName;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/27/13
+ * Time: 2:45 PM
+ *
+ * A market OrderQueue holding at most a fixed number of orders in memory. Orders arriving while the memory is full are
+ * appended to an OrderSpillFile, and once anything has spilled later orders follow it, so no order overtakes one that
+ * arrived before it was spilled. The spilled orders are read back a memory's worth at a time as the in-memory orders
+ * dispatch, each batch being dispatched in the orders' natural order.
+ *
+ * When the spill file is full as well the queue either rejects the order with an IllegalStateException or blocks the
+ * caller until dispatching frees room. Spilled orders keep their class and order id. The ids of the spilled orders are
+ * indexed by their record offset, so find and cancel see spilled orders too; a cancelled spilled order is skipped when
+ * the spill file is read back.
+ */
+public final class SpillingOrderQueue implements BrokerOrderQueue<Order> {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(SpillingOrderQueue.class.getName());
+
+    /** Maximum number of orders held in memory */
+    private final int memoryCapacity;
+
+    /** If true orders are rejected when the spill file is full, otherwise the caller blocks */
+    private final boolean rejectWhenFull;
+
+    /** The orders held in memory */
+    private final TreeSet<Order> queue = new TreeSet<Order>();
+
+    /** Index of the in-memory orders by order id */
+    private final LongObjectMap<Order> index = new LongObjectMap<Order>();
+
+    /** Record offsets of the spilled orders by order id, a spilled order missing from it has been cancelled */
+    private final LongObjectMap<Integer> spilledIndex = new LongObjectMap<Integer>();
+
+    /** The overflow, in arrival order */
+    private final OrderSpillFile spill;
+
+    /** The dispatch filter used to control dispatching from this queue */
+    private final OrderDispatchFilter<?, Order> filter;
+
+    /** The processor used during order processing */
+    private volatile OrderProcessor orderProcessor;
+
+    /** The dispatch request used in asynchronous mode, null when dispatching synchronously */
+    private volatile DispatchRequest dispatchRequest;
+
+
+    /**
+     * Constructor
+     * @param filter - the dispatch filter used to control dispatching from this queue
+     * @param memoryCapacity - maximum number of orders held in memory
+     * @param spillFile - the file to spill to, replaced if it exists
+     * @param spillCapacity - size of the spill file in bytes
+     * @param rejectWhenFull - true to reject orders when the spill file is full, false to block the caller
+     * @throws IOException - if the spill file cannot be created
+     */
+    public SpillingOrderQueue(final OrderDispatchFilter<?, Order> filter, final int memoryCapacity,
+                              final File spillFile, final int spillCapacity, final boolean rejectWhenFull)
+            throws IOException {
+        if (memoryCapacity <= 0) {
+            throw new IllegalArgumentException("Memory capacity must be positive: " + memoryCapacity);
+        }
+        this.memoryCapacity = memoryCapacity;
+        this.rejectWhenFull = rejectWhenFull;
+        this.spill = new OrderSpillFile(spillFile, spillCapacity);
+        this.filter = filter;
+        filter.setOrderQueue(this);
+    }
+
+
+    /**
+     * Adds the specified order to the queue, in memory if there is room otherwise to the spill file. Subsequent to
+     * adding the order dispatches any dispatchable orders.
+     * @param order - the order to be added to the queue
+     * @throws IllegalStateException - if the queue is full and configured to reject orders
+     */
+    @Override
+    public void enqueue(final Order order) {
+        put(order);
+        dispatchOrders();
+    }
+
+
+    /**
+     * Adds all the orders to the queue, then dispatches any dispatchable orders once.
+     * @param orders - the orders to be added to the queue
+     * @throws IllegalStateException - if the queue is full and configured to reject orders
+     */
+    @Override
+    public void enqueueAll(final Collection<? extends Order> orders) {
+        for (Order order : orders) {
+            put(order);
+        }
+        dispatchOrders();
+    }
+
+
+    /**
+     * Removes the first order in the queue if it is dispatchable, reading spilled orders back into memory when the
+     * in-memory orders are exhausted.
+     * @return - the first dispatchable order in the queue, or null if there are no dispatchable orders in the queue
+     */
+    @Override
+    public synchronized Order dequeue() {
+        if (queue.isEmpty()) {
+            refill();
+        }
+        Order order = null;
+        if (!queue.isEmpty() && filter.check(queue.first())) {
+            order = queue.first();
+            queue.remove(order);
+            index.remove(order.getOrderId());
+            notifyAll();
+        }
+        return order;
+    }
+
+
+    /**
+     * Gets the first order in the queue without removing it.
+     * @return - the first order, or null if the queue is empty
+     */
+    @Override
+    public synchronized Order peek() {
+        if (queue.isEmpty()) {
+            refill();
+        }
+        return queue.isEmpty() ? null : queue.first();
+    }
+
+
+    /**
+     * Looks up a queued order by its id, a spilled order is read from the spill file.
+     * @param orderId - the order id
+     * @return - the order, or null if no such order is queued
+     */
+    @Override
+    public synchronized Order find(final long orderId) {
+        final Order order = index.get(orderId);
+        if (order != null) {
+            return order;
+        }
+        final Integer offset = spilledIndex.get(orderId);
+        return offset == null ? null : spill.read(offset);
+    }
+
+
+    /**
+     * Removes a queued order without dispatching it. A spilled order is read from the spill file and its record left
+     * to be skipped when read back.
+     * @param orderId - the id of the order to cancel
+     * @return - the cancelled order, or null if no such order is queued
+     */
+    @Override
+    public synchronized Order cancel(final long orderId) {
+        final Order order = index.remove(orderId);
+        if (order != null) {
+            queue.remove(order);
+            notifyAll();
+            return order;
+        }
+        final Integer offset = spilledIndex.remove(orderId);
+        return offset == null ? null : spill.read(offset);
+    }
+
+
+    /**
+     * Passes the in-memory orders to the visitor in dispatch order, until the visitor declines the next order.
+     * Spilled orders are not visited.
+     * @param visitor - the visitor
+     */
+    @Override
+    public synchronized void visit(final OrderVisitor<? super Order> visitor) {
+        for (Order order : queue) {
+            if (!visitor.visit(order)) {
+                break;
+            }
+        }
+    }
+
+
+    /**
+     * Dispatches the dispatchable orders, in asynchronous mode this only signals the dispatcher thread and a request
+     * already waiting absorbs this one.
+     */
+    @Override
+    public void dispatchOrders() {
+        final DispatchRequest request = dispatchRequest;
+        if (request != null) {
+            request.request();
+        } else {
+            dispatchOrdersNow();
+        }
+    }
+
+
+    /**
+     * Executes the orderProcessor for each dispatchable order, spilled orders included. If no callback is registered
+     * the orders are simply removed from the queue.
+     * Runs on the calling thread even in asynchronous mode.
+     */
+    @Override
+    public void dispatchOrdersNow() {
+        Order order = dequeue();
+        while (order != null) {
+            final OrderProcessor proc = orderProcessor;
+            if (proc != null) {
+                proc.process(order);
+            }
+            order = dequeue();
+        }
+    }
+
+
+    /**
+     * Registers the callback to be used during order processing.
+     * @param proc - the callback to be registered
+     */
+    @Override
+    public void setOrderProcessor(final OrderProcessor proc) {
+        this.orderProcessor = proc;
+    }
+
+
+    /**
+     * Switches the queue to asynchronous mode, all further dispatching is performed on the dispatcher's thread.
+     * @param dispatcher - the dispatcher to use, or null to resume dispatching on the calling thread
+     */
+    @Override
+    public void setOrderDispatcher(final OrderDispatcher dispatcher) {
+        dispatchRequest = dispatcher == null ? null : new DispatchRequest(dispatcher, new Runnable() {
+            @Override
+            public void run() {
+                dispatchOrdersNow();
+            }
+        });
+    }
+
+
+    /**
+     * Gets the number of orders waiting in the spill file, cancelled orders excluded.
+     * @return - the number of spilled orders
+     */
+    public synchronized int getSpilledCount() {
+        return spilledIndex.size();
+    }
+
+
+    /**
+     * Releases and deletes the spill file, any orders still spilled are discarded.
+     */
+    public synchronized void close() {
+        if (spilledIndex.size() > 0) {
+            LOGGER.log(Level.WARNING, "Discarding " + spilledIndex.size() + " spilled market orders");
+        }
+        spill.close();
+    }
+
+
+    /**
+     * Adds an order, making room first if the queue is full. When the orders are dispatchable room is made by
+     * dispatching, otherwise the order is rejected or the caller waits for the queue to be dispatched.
+     * @param order - the order
+     * @throws IllegalStateException - if the queue is full and configured to reject orders
+     */
+    private void put(final Order order) {
+        while (true) {
+            synchronized (this) {
+                if (offer(order)) {
+                    return;
+                }
+                if (!filter.check(order)) {
+                    if (rejectWhenFull) {
+                        throw new IllegalStateException("Market order queue is full");
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted waiting for room in the market order queue");
+                    }
+                    continue;
+                }
+            }
+            dispatchOrders();
+        }
+    }
+
+
+    /**
+     * Adds an order in memory, or to the spill file if memory is full or orders are already spilled.
+     * @param order - the order
+     * @return - false if there was no room for the order
+     */
+    private synchronized boolean offer(final Order order) {
+        if (spill.size() == 0 && queue.size() < memoryCapacity) {
+            if (queue.add(order)) {
+                index.put(order.getOrderId(), order);
+            }
+            return true;
+        }
+        final int offset = spill.append(order);
+        if (offset < 0) {
+            return false;
+        }
+        spilledIndex.put(order.getOrderId(), offset);
+        if (spill.size() == 1 && LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info("Market order queue full, spilling orders to disk");
+        }
+        return true;
+    }
+
+
+    /**
+     * Reads spilled orders back into memory, up to the memory capacity, skipping cancelled orders.
+     */
+    private void refill() {
+        while (queue.size() < memoryCapacity && spill.size() > 0) {
+            final Order order = spill.next();
+            if (spilledIndex.remove(order.getOrderId()) != null && queue.add(order)) {
+                index.put(order.getOrderId(), order);
+            }
+        }
+    }
+}
@@ -29,6 +29,12 @@ public class StockTraderOrderProcessor implements OrderProcessor {
     /** The exchange used for the execution of orders */
     private StockExchange exchange;
 
+    /** The broker's copy of the exchange state, null to query the exchange */
+    private ExchangeMirror mirror;
+
+    /** Records the use of prefetched accounts, null if accounts are not prefetched */
+    private AccountPrefetcher prefetcher;
+
 
     /**
      * Constructor
@@ -41,20 +47,46 @@ public class StockTraderOrderProcessor implements OrderProcessor {
     }
 
 
+    /**
+     * Constructor
+     * @param accountManager  - the account manager to be used to update account balances.
+     * @param exchange - the exchange to be used for the execution of orders
+     * @param mirror - the copy of the exchange state used for the market state and prices, null to query the exchange
+     */
+    public StockTraderOrderProcessor(final AccountManager accountManager, final StockExchange exchange,
+                                     final ExchangeMirror mirror) {
+        this(accountManager, exchange);
+        this.mirror = mirror;
+    }
+
+
     /**
      * Executes for order using the exchange
      * @param order - the order to process
      */
     @Override
     public void process(final Order order) {
-        if (exchange.isOpen()) {
+        if (mirror != null ? mirror.isOpen() : exchange.isOpen()) {
+            if (prefetcher != null) {
+                prefetcher.claim(order.getAccountId());
+            }
             try {
-                accountManager.getAccount(order.getAccountId())
-                        .reflectOrder(order, exchange.getQuote(order.getStockTicker()).getPrice());
+                final int price = mirror != null ? mirror.getPrice(order.getStockTicker())
+                                                 : exchange.getQuote(order.getStockTicker()).getPrice();
+                accountManager.getAccount(order.getAccountId()).reflectOrder(order, price);
                 exchange.executeTrade(order);
             } catch (AccountException e) {
                 LOGGER.log(Level.SEVERE, "Unable to get account for " + order.getAccountId(), e);
             }
         }
     }
+
+
+    /**
+     * Sets the prefetcher recording the use of prefetched accounts
+     * @param prefetcher - the prefetcher, null if accounts are not prefetched
+     */
+    public void setAccountPrefetcher(final AccountPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
 }
@@ -1,6 +1,5 @@
 package edu.uw.danco.broker;
 
-import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.order.StopBuyOrder;
 
 /**
@@ -11,14 +10,14 @@ import edu.uw.ext.framework.order.StopBuyOrder;
  *
  * Dispatch filter that dispatches any orders having a price below the current market price (threshold).
  */
-public class StopBuyOrderDispatchFilter extends OrderDispatchFilter<Integer, StopBuyOrder> {
+public class StopBuyOrderDispatchFilter extends PriceDispatchFilter<StopBuyOrder> {
 
     /**
      * Constructor
      * @param initPrice - the initial price
      */
     public StopBuyOrderDispatchFilter(final int initPrice) {
-        setThreshold(initPrice);
+        super(initPrice);
     }
 
 
@@ -29,6 +28,6 @@ public class StopBuyOrderDispatchFilter extends OrderDispatchFilter<Integer, Sto
      */
     @Override
     public boolean check(final StopBuyOrder order) {
-        return order.getPrice() <= getThreshold();
+        return order.getPrice() <= getThresholdPrice();
     }
 }
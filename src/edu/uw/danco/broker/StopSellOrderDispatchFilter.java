@@ -1,6 +1,5 @@
 package edu.uw.danco.broker;
 
-import edu.uw.ext.framework.broker.OrderDispatchFilter;
 import edu.uw.ext.framework.order.StopSellOrder;
 
 /**
@@ -11,14 +10,14 @@ import edu.uw.ext.framework.order.StopSellOrder;
  *
  * Dispatch filter that dispatches any orders having a price above the current market price (threshold).
  */
-public class StopSellOrderDispatchFilter extends OrderDispatchFilter<Integer, StopSellOrder> {
+public class StopSellOrderDispatchFilter extends PriceDispatchFilter<StopSellOrder> {
 
     /**
      * Cosntructor
      * @param initPrice - the initial price
      */
     public StopSellOrderDispatchFilter(final int initPrice) {
-        setThreshold(initPrice);
+        super(initPrice);
     }
 
 
@@ -29,6 +28,6 @@ public class StopSellOrderDispatchFilter extends OrderDispatchFilter<Integer, St
      */
     @Override
     public boolean check(final StopSellOrder order) {
-        return order.getPrice() >= getThreshold();
+        return order.getPrice() >= getThresholdPrice();
     }
 }
@@ -0,0 +1,112 @@
+package edu.uw.danco.broker;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/30/13
+ * Time: 6:15 PM
+ *
+ * Interns the ticker symbols traded on an exchange to dense int ids, 0 to size() - 1, so per ticker state can be held
+ * in arrays indexed by id. The table is fixed at construction and is safe for use by any number of threads. The ids
+ * are held in an open addressed table, at most half full, of symbols and parallel int ids, so a lookup boxes nothing.
+ * Looking up an id hashes the ticker, using the hash cached in the String, and compares it with the symbols along its
+ * probe sequence, usually one.
+ */
+public final class SymbolTable {
+
+    /** Multiplier used to spread the hash codes, the 32 bit golden ratio */
+    private static final int SPREAD = 0x9E3779B9;
+
+    /** The symbols by slot, a null marks an empty slot */
+    private final String[] slots;
+
+    /** The ids by slot, parallel to slots */
+    private final int[] slotIds;
+
+    /** One less than the table size, wraps a probe sequence */
+    private final int mask;
+
+    /** Shift selecting a slot from the top bits of a spread hash */
+    private final int shift;
+
+    /** The ticker symbols by id */
+    private final String[] symbols;
+
+
+    /**
+     * Constructor
+     * @param symbols - the ticker symbols, ids are assigned in this order and duplicates are ignored
+     */
+    public SymbolTable(final String[] symbols) {
+        int capacity = 2;
+        while (capacity < symbols.length * 2) {
+            capacity <<= 1;
+        }
+        slots = new String[capacity];
+        slotIds = new int[capacity];
+        mask = capacity - 1;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        final String[] unique = new String[symbols.length];
+        int size = 0;
+        for (String symbol : symbols) {
+            int slot = slotOf(symbol);
+            while (slots[slot] != null && !slots[slot].equals(symbol)) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] == null) {
+                slots[slot] = symbol;
+                slotIds[slot] = size;
+                unique[size++] = symbol;
+            }
+        }
+        this.symbols = new String[size];
+        System.arraycopy(unique, 0, this.symbols, 0, size);
+    }
+
+
+    /**
+     * Gets the id of a ticker symbol
+     * @param symbol - the ticker symbol
+     * @return - the id, or -1 if the symbol is not in the table
+     */
+    public int idOf(final String symbol) {
+        if (symbol == null) {
+            return -1;
+        }
+        for (int slot = slotOf(symbol); slots[slot] != null; slot = (slot + 1) & mask) {
+            if (slots[slot].equals(symbol)) {
+                return slotIds[slot];
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Gets the ticker symbol with an id
+     * @param id - the id
+     * @return - the ticker symbol
+     */
+    public String symbolOf(final int id) {
+        return symbols[id];
+    }
+
+
+    /**
+     * Gets the number of symbols in the table
+     * @return - the number of symbols, one more than the largest id
+     */
+    public int size() {
+        return symbols.length;
+    }
+
+
+    /**
+     * Gets the first slot of a symbol's probe sequence
+     * @param symbol - the ticker symbol
+     * @return - the slot
+     */
+    private int slotOf(final String symbol) {
+        return (symbol.hashCode() * SPREAD) >>> shift;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/2/13
+ * Time: 3:30 PM
+ *
+ * A fixed set of single threaded executors, each ticker is assigned to one of them by its id. All the work for a
+ * ticker runs on its shard's thread in submission order, so the ticker's state needs no locking, while tickers on
+ * different shards are processed in parallel.
+ */
+public class TickerShards {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(TickerShards.class.getName());
+
+    /** The shard executors */
+    private final ExecutorService[] shards;
+
+
+    /**
+     * Constructor, starts the shard threads.
+     * @param shardCount - the number of shards
+     * @param name - prefix for the shard thread names
+     */
+    public TickerShards(final int shardCount, final String name) {
+        shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final String threadName = name + "-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Runs a task on a ticker's shard.
+     * @param id - the ticker id
+     * @param task - the task
+     */
+    public void execute(final int id, final Runnable task) {
+        shards[id % shards.length].execute(task);
+    }
+
+
+    /**
+     * Runs a task on a ticker's shard and waits for its result.
+     * @param id - the ticker id
+     * @param task - the task
+     * @param <T> - the result type
+     * @return - the task's result
+     * @throws IllegalStateException - if interrupted while waiting, or the task throws a checked exception
+     */
+    public <T> T call(final int id, final Callable<T> task) {
+        try {
+            return shards[id % shards.length].submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for ticker shard", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+
+    /**
+     * Stops the shard threads once their outstanding tasks have run.
+     */
+    public void shutdown() {
+        LOGGER.fine("Shutting down ticker shards");
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
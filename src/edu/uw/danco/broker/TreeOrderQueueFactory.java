@@ -0,0 +1,36 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/18/13
+ * Time: 10:48 AM
+ *
+ * OrderQueueFactory creating the TreeSet backed OrderQueueImpl, this is the default and is not thread safe.
+ */
+public class TreeOrderQueueFactory implements OrderQueueFactory {
+
+    /** Instance for use in Singleton pattern */
+    public static final TreeOrderQueueFactory INSTANCE = new TreeOrderQueueFactory();
+
+    @Override
+    public OrderQueue<StopBuyOrder> newStopBuyOrderQueue(final OrderDispatchFilter<?, StopBuyOrder> filter) {
+        return new OrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, filter);
+    }
+
+    @Override
+    public OrderQueue<StopSellOrder> newStopSellOrderQueue(final OrderDispatchFilter<?, StopSellOrder> filter) {
+        return new OrderQueueImpl<StopSellOrder>(StopSellOrderComparator.INSTANCE, filter);
+    }
+
+    @Override
+    public OrderQueue<Order> newMarketOrderQueue(final OrderDispatchFilter<?, Order> filter) {
+        return new OrderQueueImpl<Order>(filter);
+    }
+}
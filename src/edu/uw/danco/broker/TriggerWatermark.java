@@ -0,0 +1,123 @@
+package edu.uw.danco.broker;
+
+import edu.uw.ext.framework.order.Order;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 5/24/13
+ * Time: 8:05 PM
+ *
+ * Caches the best resting price of a stop order queue, the next price at which any order in the queue can trigger.
+ * A price that does not cross the watermark cannot dispatch anything, so it need not touch the queue at all.
+ *
+ * The watermark may be tighter than the queue (causing an unnecessary dispatch attempt) but never looser. It is
+ * lowered before an order is added, and is not tightened while an add is in progress or if an add occurred while the
+ * queue was being examined; a change counter is packed with the price so both are updated atomically.
+ */
+public final class TriggerWatermark {
+
+    /** Key of an empty queue, no price crosses it */
+    private static final int EMPTY = Integer.MAX_VALUE;
+
+    /** Mask for the key in the packed state */
+    private static final long KEY_MASK = 0xFFFFFFFFL;
+
+    /** Change counter in the high word, price key in the low word */
+    private final AtomicLong state = new AtomicLong(EMPTY & KEY_MASK);
+
+    /** Number of orders currently being added */
+    private final AtomicInteger pendingAdds = new AtomicInteger();
+
+    /** If true the lowest priced order triggers first (stop buy), otherwise the highest (stop sell) */
+    private final boolean lowestFirst;
+
+
+    /**
+     * Constructor
+     * @param lowestFirst - true for a stop buy queue, false for a stop sell queue
+     */
+    public TriggerWatermark(final boolean lowestFirst) {
+        this.lowestFirst = lowestFirst;
+    }
+
+
+    /**
+     * Tests if a price reaches the watermark, only then may orders be dispatchable.
+     * @param price - the price
+     * @return - true if the queue may hold orders dispatchable at the price
+     */
+    public boolean isCrossed(final int price) {
+        return (int) state.get() <= toKey(price);
+    }
+
+
+    /**
+     * Tests if the watermark is within a distance of a price, the queue may hold orders close to triggering.
+     * @param price - the price
+     * @param distance - the distance from the price
+     * @return - true if the queue may hold orders triggering within the distance of the price
+     */
+    public boolean isWithin(final int price, final int distance) {
+        return (long) (int) state.get() <= (long) toKey(price) + distance;
+    }
+
+
+    /**
+     * Lowers the watermark to include an order about to be added, must be paired with a call to endAdd once the
+     * order has been added to the queue.
+     * @param price - the price of the order
+     */
+    public void beginAdd(final int price) {
+        pendingAdds.incrementAndGet();
+        final int key = toKey(price);
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = ((current & ~KEY_MASK) + (1L << 32)) | (Math.min((int) current, key) & KEY_MASK);
+        } while (!state.compareAndSet(current, next));
+    }
+
+
+    /**
+     * Signals the order passed to beginAdd is now in the queue.
+     */
+    public void endAdd() {
+        pendingAdds.decrementAndGet();
+    }
+
+
+    /**
+     * Resets the watermark to the price of the first order in the queue, following a dispatch.
+     * @param queue - the queue the watermark is for
+     * @param orderPrice - accessor for the order prices
+     * @param <E> - the order type
+     */
+    public <E extends Order> void refresh(final BrokerOrderQueue<E> queue, final OrderPrice<E> orderPrice) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            if (pendingAdds.get() > 0) {
+                return;
+            }
+            final E first = queue.peek();
+            final int key = first == null ? EMPTY : toKey(orderPrice.priceOf(first));
+            next = (current & ~KEY_MASK) | (key & KEY_MASK);
+        } while (!state.compareAndSet(current, next));
+    }
+
+
+    /**
+     * Converts a price to a key, lower keys trigger first.
+     * @param price - the price
+     * @return - the key
+     */
+    private int toKey(final int price) {
+        return lowestFirst ? price : -price;
+    }
+}
@@ -0,0 +1,193 @@
+package edu.uw.danco.broker;
+
+import edu.uw.danco.dao.ResourceLimiter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/11/13
+ * Time: 9:40 PM
+ *
+ * OrderProcessor executing orders on virtual threads, so executions blocked on the database, the file system or the
+ * exchange cost no platform thread and thousands may be in flight. An account's orders are executed one at a time in
+ * dispatch order: the first order for an idle account starts a thread, orders arriving while it runs are queued
+ * behind it and executed by the same thread. An optional ResourceLimiter bounds how many orders execute at once, to
+ * bound only the calls to the exchange wrap the exchange in a LimitedStockExchange instead.
+ *
+ * The delegate, and the account manager behind it, must be safe for use by several threads at once.
+ */
+public class VirtualThreadOrderProcessor implements OrderProcessor {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreadOrderProcessor.class.getName());
+
+    /** How long shutdown waits for executing orders, in seconds */
+    private static final long SHUTDOWN_SECONDS = 30L;
+
+    /** The processor executing the orders */
+    private final OrderProcessor delegate;
+
+    /** Bounds the concurrent executions of the delegate, null if unbounded */
+    private final ResourceLimiter limiter;
+
+    /** Starts a thread per account run */
+    private final ExecutorService executor;
+
+    /** The orders waiting for each account with an execution in progress, guarded by this */
+    private final Map<String, ArrayDeque<Order>> active = new HashMap<String, ArrayDeque<Order>>();
+
+    /** Number of orders executed */
+    private final AtomicLong executed = new AtomicLong();
+
+    /** Number of orders whose execution failed */
+    private final AtomicLong failed = new AtomicLong();
+
+
+    /**
+     * Constructor
+     * @param delegate - the processor executing the orders
+     * @param limiter - bounds the concurrent executions, null if unbounded
+     * @param name - prefix for the thread names when virtual threads are not available
+     */
+    public VirtualThreadOrderProcessor(final OrderProcessor delegate, final ResourceLimiter limiter,
+                                       final String name) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        executor = VirtualThreads.newPerTaskExecutor(name + "-order");
+        if (!VirtualThreads.isAvailable()) {
+            LOGGER.info("Virtual threads not available, executing orders on platform threads");
+        }
+    }
+
+
+    /**
+     * Queues the order behind any executing for its account, starting a thread for the account if it is idle.
+     * @param order - the order to process
+     */
+    @Override
+    public void process(final Order order) {
+        final String accountId = order.getAccountId();
+        final ArrayDeque<Order> orders;
+        synchronized (this) {
+            final ArrayDeque<Order> waiting = active.get(accountId);
+            if (waiting != null) {
+                waiting.addLast(order);
+                return;
+            }
+            orders = new ArrayDeque<Order>();
+            orders.addLast(order);
+            active.put(accountId, orders);
+        }
+        final Runnable run = new Runnable() {
+            @Override
+            public void run() {
+                runAccount(accountId, orders);
+            }
+        };
+        try {
+            executor.execute(run);
+        } catch (RejectedExecutionException e) {
+            run.run();
+        }
+    }
+
+
+    /**
+     * Gets the number of accounts with executions in progress
+     * @return - the number of active accounts
+     */
+    public synchronized int getActiveAccounts() {
+        return active.size();
+    }
+
+
+    /**
+     * Gets the number of orders executed
+     * @return - the number of orders executed, including failed orders
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+
+    /**
+     * Gets the number of orders whose execution failed
+     * @return - the number of failed orders
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+
+    /**
+     * Stops accepting work for new threads and waits for the executing orders to complete, orders arriving
+     * afterwards are executed on the calling thread.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warning("Order executions still running at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(String.format("Executed %d orders, %d failed", executed.get(), failed.get()));
+        }
+    }
+
+
+    /**
+     * Executes an account's orders until none are waiting.
+     * @param accountId - the account
+     * @param orders - the account's waiting orders
+     */
+    private void runAccount(final String accountId, final ArrayDeque<Order> orders) {
+        while (true) {
+            final Order order;
+            synchronized (this) {
+                order = orders.pollFirst();
+                if (order == null) {
+                    active.remove(accountId);
+                    return;
+                }
+            }
+            execute(order);
+        }
+    }
+
+
+    /**
+     * Executes an order, holding a permit for the duration.
+     * @param order - the order
+     */
+    private void execute(final Order order) {
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        try {
+            delegate.process(order);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            LOGGER.log(Level.SEVERE, "Order " + order.getOrderId() + " failed", e);
+        } finally {
+            if (limiter != null) {
+                limiter.release();
+            }
+            executed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.uw.danco.broker;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/11/13
+ * Time: 9:10 PM
+ *
+ * Creates executors starting a new virtual thread for every task. The virtual thread executor is looked up
+ * reflectively, so the code builds and runs on JVMs without virtual threads; there an unbounded pool of daemon
+ * platform threads is used instead.
+ */
+public final class VirtualThreads {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreads.class.getName());
+
+    /** The JDK's virtual thread per task executor factory method, null if the JVM has no virtual threads */
+    private static final Method NEW_VIRTUAL_EXECUTOR = lookup();
+
+
+    /**
+     * Prevent instantiation
+     */
+    private VirtualThreads() {
+    }
+
+
+    /**
+     * Tests if the JVM supports virtual threads
+     * @return - true if virtual threads are available
+     */
+    public static boolean isAvailable() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+
+    /**
+     * Creates an executor running each task on its own thread, a virtual thread if the JVM supports them
+     * @param name - prefix for the thread names of the fallback executor
+     * @return - the executor
+     */
+    public static ExecutorService newPerTaskExecutor(final String name) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Unable to create virtual thread executor, using platform threads", e);
+            }
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor
+     * @return - the method, or null if the JVM has no virtual threads
+     */
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            LOGGER.fine("Virtual threads not available");
+            return null;
+        }
+    }
+}
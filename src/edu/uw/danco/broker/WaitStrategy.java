@@ -0,0 +1,43 @@
+package edu.uw.danco.broker;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/3/13
+ * Time: 9:10 PM
+ *
+ * How a thread waits for an EventRingBuffer to have events to consume or room to publish, trading latency against the
+ * CPU consumed while waiting.
+ */
+public enum WaitStrategy {
+    /** Spin without yielding, lowest latency but occupies a core */
+    BUSY_SPIN,
+
+    /** Yield the processor between checks */
+    YIELD,
+
+    /** Park briefly between checks, least CPU but adds up to the park time to the latency */
+    PARK;
+
+    /** Time parked between checks by the PARK strategy, in nanoseconds */
+    private static final long PARK_NANOS = 50000L;
+
+
+    /**
+     * Waits once before the caller checks again.
+     */
+    public void idle() {
+        switch (this) {
+            case BUSY_SPIN:
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                LockSupport.parkNanos(PARK_NANOS);
+                break;
+        }
+    }
+}
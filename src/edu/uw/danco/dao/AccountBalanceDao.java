@@ -0,0 +1,25 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/16/13
+ * Time: 2:40 PM
+ *
+ * An AccountDao able to apply a change in balance to a stored account in place, without rewriting the rest of the
+ * account.
+ */
+public interface AccountBalanceDao extends AccountDao {
+
+    /**
+     * Adds an amount to the stored balance of an account. The stored balance is adjusted relative to its current
+     * value, so concurrent adjustments of an account are all applied.
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the operation fails
+     */
+    void adjustBalance(String accountName, int delta) throws AccountException;
+}
@@ -12,6 +12,12 @@ import edu.uw.ext.framework.dao.DaoFactoryException;
  */
 public class AccountDaoFactoryImpl implements DaoFactory {
 
+    /** Group commit window in milliseconds, 0 to commit each write on its own */
+    private long groupCommitMillis;
+
+    /** Number of writes that closes a group commit batch early */
+    private int groupCommitMaxBatch = 256;
+
     /**
      * Instantiates a new AccountDao object.
      * @return - a newly instantiated account DAO object
@@ -19,7 +25,44 @@ public class AccountDaoFactoryImpl implements DaoFactory {
      */
     @Override
     public AccountDao getAccountDao() throws DaoFactoryException {
-        AccountDao accountDao = new AccountDaoImpl();
+        AccountDaoImpl accountDao = new AccountDaoImpl();
+        accountDao.setGroupCommit(groupCommitMillis, groupCommitMaxBatch);
         return accountDao;
     }
+
+
+    /**
+     * Gets the group commit window
+     * @return - the window in milliseconds, 0 if each write is committed on its own
+     */
+    public long getGroupCommitMillis() {
+        return groupCommitMillis;
+    }
+
+
+    /**
+     * Enables group commit, concurrent account writes arriving within the window are committed as one batch
+     * @param groupCommitMillis - the window in milliseconds, 0 to commit each write on its own
+     */
+    public void setGroupCommitMillis(final long groupCommitMillis) {
+        this.groupCommitMillis = groupCommitMillis;
+    }
+
+
+    /**
+     * Gets the number of writes that closes a group commit batch early
+     * @return - the maximum batch size
+     */
+    public int getGroupCommitMaxBatch() {
+        return groupCommitMaxBatch;
+    }
+
+
+    /**
+     * Sets the number of writes that closes a group commit batch without waiting out the window
+     * @param groupCommitMaxBatch - the maximum batch size
+     */
+    public void setGroupCommitMaxBatch(final int groupCommitMaxBatch) {
+        this.groupCommitMaxBatch = groupCommitMaxBatch;
+    }
 }
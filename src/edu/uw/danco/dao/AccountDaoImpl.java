@@ -3,11 +3,11 @@ package edu.uw.danco.dao;
 import edu.uw.danco.account.AccountImpl;
 import edu.uw.danco.account.AddressImpl;
 import edu.uw.danco.account.CreditCardImpl;
+import edu.uw.danco.account.LazyAccountImpl;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
 import edu.uw.ext.framework.account.CreditCard;
-import edu.uw.ext.framework.dao.AccountDao;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -17,6 +17,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,14 +27,21 @@ import java.util.logging.Logger;
  * Date: 4/16/13
  * Time: 8:45 PM
  *
- * The DataSource for our DAO implementation
+ * The DataSource for our DAO implementation. The connection and its prepared statements are shared, so access is
+ * synchronized. Several accounts may be written as one JDBC batch in one transaction, and with group commit enabled
+ * concurrent single account writes are combined into such batches. A change in balance alone is written with a
+ * single column update, and an account view reads only the trading columns, leaving the profile to be read on use.
+ *
+ * On JDK 21 a virtual thread blocked in JDBC inside one of the synchronized methods pins its carrier thread, so with
+ * virtual thread execution every order waiting on the database holds a platform thread. Use the PooledAccountDaoImpl,
+ * which takes no monitor around its JDBC calls, with virtual thread execution.
  */
-public class AccountDaoImpl implements AccountDao {
+public class AccountDaoImpl implements BatchAccountDao, AccountBalanceDao, AccountViewDao {
     /** Empty string */
     private static final String EMPTY_STRING = "";
 
     /** The SQL used to lookup an account in the mysql DB */
-    private static final String ACCOUNT_LOOKUP_SQL =
+    static final String ACCOUNT_LOOKUP_SQL =
             "SELECT password_hash, balance, fullname, phone, email,"
                     + "       street, city, state, zip,"
                     + "       card_number, issuer, cardtype, holder, expires"
@@ -41,8 +49,24 @@ public class AccountDaoImpl implements AccountDao {
                     + " WHERE account_name = ?";
 
 
+    /** The SQL used to lookup the trading fields of an account */
+    static final String ACCOUNT_VIEW_SQL =
+            "SELECT password_hash, balance"
+                    + "  FROM account"
+                    + " WHERE account_name = ?";
+
+
+    /** The SQL used to lookup the profile fields of an account */
+    static final String ACCOUNT_PROFILE_SQL =
+            "SELECT fullname, phone, email,"
+                    + "       street, city, state, zip,"
+                    + "       card_number, issuer, cardtype, holder, expires"
+                    + "  FROM account"
+                    + " WHERE account_name = ?";
+
+
     /** The SQL used to update an account in the mysql DB */
-    private static final String ACCOUNT_UPDATE_SQL =
+    static final String ACCOUNT_UPDATE_SQL =
             "INSERT INTO account"
                     + " ( account_name, password_hash, balance, fullname, phone, email,"
                     + "   street, city, state, zip,"
@@ -66,21 +90,34 @@ public class AccountDaoImpl implements AccountDao {
 
     //create references to the SQL PreparedStatement parameters
 
+    /** The SQL used to update only the trading fields of an account, for a view whose profile is not loaded */
+    static final String ACCOUNT_TRADING_UPDATE_SQL =
+            "UPDATE account"
+                    + "   SET password_hash = ?, balance = ?"
+                    + " WHERE account_name = ?";
+
     /** The SQL used to delete an account from the mysql DB */
-    private static final String ACCOUNT_DELETE_SQL =
+    static final String ACCOUNT_DELETE_SQL =
             "DELETE from account "
                     + " WHERE account_name = ?";
 
 
     /** THe SQL used to delete all the accounts */
-    private static final String ACCOUNT_RESET_SQL = "DELETE from account";
+    static final String ACCOUNT_RESET_SQL = "DELETE from account";
+
+
+    /** The SQL used to add to the balance of an account */
+    static final String ACCOUNT_BALANCE_SQL =
+            "UPDATE account"
+                    + "   SET balance = balance + ?"
+                    + " WHERE account_name = ?";
 
 
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(AccountDaoImpl.class.getName());
 
     /** THe name of the db to connect to */
-    private static final String JDBC_ACCOUNT_DB = "jdbc/AccountDb";
+    static final String JDBC_ACCOUNT_DB = "jdbc/AccountDb";
 
     /** THe connection to the data store */
     private Connection conn = null;
@@ -88,15 +125,30 @@ public class AccountDaoImpl implements AccountDao {
     /** Prepared statement used to retrieve account information */
     private PreparedStatement getAccountPs = null;
 
+    /** Prepared statement used to retrieve the trading fields of an account */
+    private PreparedStatement getAccountViewPs = null;
+
+    /** Prepared statement used to retrieve the profile fields of an account */
+    private PreparedStatement getProfilePs = null;
+
     /** Prepared statement used to update an account */
     private PreparedStatement updateAccountPs = null;
 
+    /** Prepared statement used to update the trading fields of an account */
+    private PreparedStatement updateTradingPs = null;
+
     /** Prepared statement used to delete an account */
     private PreparedStatement deleteAccountPs = null;
 
     /** Prepared statement used to reset all accounts */
     private PreparedStatement resetAccountPs = null;
 
+    /** Prepared statement used to adjust an account balance */
+    private PreparedStatement adjustBalancePs = null;
+
+    /** Combines concurrent writes into batches, null if each write is committed on its own */
+    private volatile GroupCommitter groupCommitter;
+
 
     /**
      * Constructs an AccountDao instance.
@@ -110,9 +162,13 @@ public class AccountDaoImpl implements AccountDao {
             try {
                 conn = ds.getConnection();
                 getAccountPs = conn.prepareStatement(ACCOUNT_LOOKUP_SQL);
+                getAccountViewPs = conn.prepareStatement(ACCOUNT_VIEW_SQL);
+                getProfilePs = conn.prepareStatement(ACCOUNT_PROFILE_SQL);
                 updateAccountPs = conn.prepareStatement(ACCOUNT_UPDATE_SQL);
+                updateTradingPs = conn.prepareStatement(ACCOUNT_TRADING_UPDATE_SQL);
                 deleteAccountPs = conn.prepareStatement(ACCOUNT_DELETE_SQL);
                 resetAccountPs = conn.prepareStatement(ACCOUNT_RESET_SQL);
+                adjustBalancePs = conn.prepareStatement(ACCOUNT_BALANCE_SQL);
             } catch (SQLException e) {
                 LOGGER.log(Level.SEVERE, "Unable to get DB connection", e);
             }
@@ -127,7 +183,7 @@ public class AccountDaoImpl implements AccountDao {
      * @return - the account if located, otherwise null
      */
     @Override
-    public Account getAccount(String accountName) {
+    public synchronized Account getAccount(String accountName) {
         Account account = null;
 
         ResultSet rs = null;
@@ -136,30 +192,7 @@ public class AccountDaoImpl implements AccountDao {
             rs = getAccountPs.executeQuery();
 
             if (rs.next()) {
-                account = new AccountImpl();
-
-                account.setName(accountName);
-                account.setPasswordHash(rs.getBytes(1));
-                account.setBalance(rs.getInt(2));
-                account.setFullName(rs.getString(3));
-                account.setPhone(rs.getString(4));
-                account.setEmail(rs.getString(5));
-
-                Address address = new AddressImpl();            //should be able to use beanfactory to create the
-                // Address
-                address.setStreetAddress(rs.getString(6));
-                address.setCity(rs.getString(7));
-                address.setState(rs.getString(8));
-                address.setZipCode(rs.getString(9));
-                account.setAddress(address);
-
-                CreditCard cc = new CreditCardImpl();
-                cc.setAccountNumber(rs.getString(10));
-                cc.setIssuer(rs.getString(11));
-                cc.setType(rs.getString(12));
-                cc.setHolder(rs.getString(13));
-                cc.setExpirationDate(rs.getString(14));
-                account.setCreditCard(cc);
+                account = readAccount(rs, accountName);
             }
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Unable to retrieve account for accountName = " + accountName, e);
@@ -180,7 +213,66 @@ public class AccountDaoImpl implements AccountDao {
 
 
     /**
-     * Adds or updates an account
+     * Lookup the trading fields of an account, the profile fields are read on first use
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public synchronized Account getAccountView(final String accountName) {
+        Account account = null;
+
+        ResultSet rs = null;
+        try {
+            getAccountViewPs.setString(1, accountName);
+            rs = getAccountViewPs.executeQuery();
+
+            if (rs.next()) {
+                account = new LazyAccountImpl(accountName, rs.getBytes(1), rs.getInt(2), this);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Unable to retrieve account for accountName = " + accountName, e);
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to set accountname to: " + accountName, e);
+        } finally {
+            closeQuietly(rs);
+        }
+
+        return account;
+    }
+
+
+    /**
+     * Lookup the profile fields of an account
+     * @param accountName - the name of the account
+     * @return - an account holding the profile fields, or null if the account is not located
+     * @throws AccountException - if the profile could not be read
+     */
+    @Override
+    public synchronized Account getProfile(final String accountName) throws AccountException {
+        Account account = null;
+
+        ResultSet rs = null;
+        try {
+            getProfilePs.setString(1, accountName);
+            rs = getProfilePs.executeQuery();
+
+            if (rs.next()) {
+                account = new AccountImpl();
+                readProfile(rs, account, 1);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Unable to retrieve profile for accountName = " + accountName, e);
+            throw new AccountException(e);
+        } finally {
+            closeQuietly(rs);
+        }
+
+        return account;
+    }
+
+
+    /**
+     * Adds or updates an account, with group commit enabled the write joins the current batch
      * @param account - the account to add or update
      * @throws AccountException - if the operation fails
      *
@@ -190,57 +282,207 @@ public class AccountDaoImpl implements AccountDao {
      */
     @Override
     public void setAccount(Account account) throws AccountException {
+        final GroupCommitter committer = groupCommitter;
+        if (committer != null) {
+            committer.write(account);
+        } else {
+            writeAccount(account);
+        }
+    }
+
+
+    /**
+     * Adds or updates several accounts as one JDBC batch in a single transaction
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the batch fails, none of the accounts are written
+     */
+    @Override
+    public synchronized void setAccounts(final Collection<? extends Account> accounts) throws AccountException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        boolean autoCommit = true;
         try {
-            updateAccountPs.setString(1, account.getName());
-            updateAccountPs.setBytes(2, account.getPasswordHash());
-            updateAccountPs.setInt(3, account.getBalance());
-            updateAccountPs.setString(4, account.getFullName());
-            updateAccountPs.setString(5, account.getPhone());
-            updateAccountPs.setString(6, account.getEmail());
-
-            Address addr = account.getAddress();
-            if (addr != null) {
-                updateAccountPs.setString(7, addr.getStreetAddress());
-                updateAccountPs.setString(8, addr.getCity());
-                updateAccountPs.setString(9, addr.getState());
-                updateAccountPs.setString(10, addr.getZipCode());
-            } else {
-                updateAccountPs.setString(7, EMPTY_STRING); // prefer to use setNull for these; also create references to the column indexes rather than magic numbers
-                updateAccountPs.setString(8, EMPTY_STRING);
-                updateAccountPs.setString(9, EMPTY_STRING);
-                updateAccountPs.setString(10, EMPTY_STRING);
+            autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            boolean trading = false;
+            for (Account account : accounts) {
+                if (isTradingOnly(account)) {
+                    bindTrading(updateTradingPs, account);
+                    updateTradingPs.addBatch();
+                    trading = true;
+                } else {
+                    bindAccount(updateAccountPs, account);
+                    updateAccountPs.addBatch();
+                }
             }
+            updateAccountPs.executeBatch();
+            if (trading) {
+                updateTradingPs.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Unable to update " + accounts.size() + " accounts", e);
+            try {
+                conn.rollback();
+            } catch (SQLException rollbackFailure) {
+                LOGGER.log(Level.SEVERE, "Unable to roll back account updates", rollbackFailure);
+            }
+            throw new AccountException(e);
+        } finally {
+            try {
+                updateAccountPs.clearBatch();
+                updateAccountPs.clearParameters();
+                updateTradingPs.clearBatch();
+                updateTradingPs.clearParameters();
+                conn.setAutoCommit(autoCommit);
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Unable to restore auto commit", e);
+            }
+        }
+    }
+
+
+    /**
+     * Adds an amount to the stored balance of an account, only the balance column is written
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the operation fails
+     */
+    @Override
+    public synchronized void adjustBalance(final String accountName, final int delta) throws AccountException {
+        final int rows;
+        try {
+            adjustBalancePs.setInt(1, delta);
+            adjustBalancePs.setString(2, accountName);
+            rows = adjustBalancePs.executeUpdate();
+            adjustBalancePs.clearParameters();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Unable to adjust balance of account " + accountName, e);
+            throw new AccountException(e);
+        }
+        if (rows == 0) {
+            throw new AccountException("No such account " + accountName);
+        }
+    }
+
+
+    /**
+     * Enables group commit, concurrent calls to setAccount are collected for the window and written as one batch.
+     * @param windowMillis - time the first write of a batch waits for others, in milliseconds, 0 to disable
+     * @param maxBatch - number of writes that closes a batch without waiting out the window
+     */
+    public void setGroupCommit(final long windowMillis, final int maxBatch) {
+        groupCommitter = windowMillis > 0 ? new GroupCommitter(this, windowMillis, maxBatch) : null;
+    }
+
 
-            CreditCard cc = account.getCreditCard();
-            if (cc != null) {
-                updateAccountPs.setString(11, cc.getAccountNumber());
-                updateAccountPs.setString(12, cc.getIssuer());
-                updateAccountPs.setString(13, cc.getType());
-                updateAccountPs.setString(14, cc.getHolder());
-                updateAccountPs.setString(15, cc.getExpirationDate());
+    /**
+     * Gets the group committer, for its statistics
+     * @return - the group committer, null if group commit is not enabled
+     */
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+
+    /**
+     * Writes and commits a single account, only its trading fields if it is a view whose profile is not loaded
+     * @param account - the account to add or update
+     */
+    private synchronized void writeAccount(final Account account) {
+        try {
+            final PreparedStatement ps;
+            if (isTradingOnly(account)) {
+                ps = updateTradingPs;
+                bindTrading(ps, account);
             } else {
-                updateAccountPs.setString(11, EMPTY_STRING);
-                updateAccountPs.setString(12, EMPTY_STRING);
-                updateAccountPs.setString(13, EMPTY_STRING);
-                updateAccountPs.setString(14, EMPTY_STRING);
-                updateAccountPs.setString(15, EMPTY_STRING);
+                ps = updateAccountPs;
+                bindAccount(ps, account);
             }
-
-            updateAccountPs.executeUpdate();
-            updateAccountPs.clearParameters();
+            ps.executeUpdate();
+            ps.clearParameters();
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Unable to update account", e);
         }
     }
 
 
+    /**
+     * Tests if only the trading fields of an account are to be written. A view whose profile has not been loaded
+     * cannot have changed its profile, so the profile is left unread and its columns unwritten.
+     * @param account - the account
+     * @return - true if the account is a view whose profile is not loaded
+     */
+    static boolean isTradingOnly(final Account account) {
+        return account instanceof LazyAccountImpl && !((LazyAccountImpl) account).isProfileLoaded();
+    }
+
+
+    /**
+     * Sets the parameters of the trading update statement from an account
+     * @param updateTradingPs - the trading update statement
+     * @param account - the account
+     * @throws SQLException - if a parameter cannot be set
+     */
+    static void bindTrading(final PreparedStatement updateTradingPs, final Account account) throws SQLException {
+        updateTradingPs.setBytes(1, account.getPasswordHash());
+        updateTradingPs.setInt(2, account.getBalance());
+        updateTradingPs.setString(3, account.getName());
+    }
+
+
+    /**
+     * Sets the parameters of the update statement from an account
+     * @param updateAccountPs - the update statement
+     * @param account - the account
+     * @throws SQLException - if a parameter cannot be set
+     */
+    static void bindAccount(final PreparedStatement updateAccountPs, final Account account) throws SQLException {
+        updateAccountPs.setString(1, account.getName());
+        updateAccountPs.setBytes(2, account.getPasswordHash());
+        updateAccountPs.setInt(3, account.getBalance());
+        updateAccountPs.setString(4, account.getFullName());
+        updateAccountPs.setString(5, account.getPhone());
+        updateAccountPs.setString(6, account.getEmail());
+
+        Address addr = account.getAddress();
+        if (addr != null) {
+            updateAccountPs.setString(7, addr.getStreetAddress());
+            updateAccountPs.setString(8, addr.getCity());
+            updateAccountPs.setString(9, addr.getState());
+            updateAccountPs.setString(10, addr.getZipCode());
+        } else {
+            updateAccountPs.setString(7, EMPTY_STRING); // prefer to use setNull for these; also create references to the column indexes rather than magic numbers
+            updateAccountPs.setString(8, EMPTY_STRING);
+            updateAccountPs.setString(9, EMPTY_STRING);
+            updateAccountPs.setString(10, EMPTY_STRING);
+        }
+
+        CreditCard cc = account.getCreditCard();
+        if (cc != null) {
+            updateAccountPs.setString(11, cc.getAccountNumber());
+            updateAccountPs.setString(12, cc.getIssuer());
+            updateAccountPs.setString(13, cc.getType());
+            updateAccountPs.setString(14, cc.getHolder());
+            updateAccountPs.setString(15, cc.getExpirationDate());
+        } else {
+            updateAccountPs.setString(11, EMPTY_STRING);
+            updateAccountPs.setString(12, EMPTY_STRING);
+            updateAccountPs.setString(13, EMPTY_STRING);
+            updateAccountPs.setString(14, EMPTY_STRING);
+            updateAccountPs.setString(15, EMPTY_STRING);
+        }
+    }
+
+
     /**
      * Remove the account
      * @param accountName - the name of the account to be deleted
      * @throws AccountException - if the operation fails
      */
     @Override
-    public void deleteAccount(String accountName) throws AccountException {
+    public synchronized void deleteAccount(String accountName) throws AccountException {
         try {
             deleteAccountPs.setString(1, accountName);
 
@@ -256,7 +498,7 @@ public class AccountDaoImpl implements AccountDao {
      * @throws AccountException - if the operation fails
      */
     @Override
-    public void reset() throws AccountException {
+    public synchronized void reset() throws AccountException {
         try {
             resetAccountPs.executeUpdate();
         } catch (SQLException e) {
@@ -270,7 +512,7 @@ public class AccountDaoImpl implements AccountDao {
      * @throws AccountException
      */
     @Override
-    public void close() throws AccountException {
+    public synchronized void close() throws AccountException {
         try {
             // prepared statements should automatically get closed by closing the connection.
             if (conn != null) {
@@ -282,4 +524,68 @@ public class AccountDaoImpl implements AccountDao {
             conn = null;
         }
     }
+
+    /**
+     * Creates an account from the current row of an account lookup
+     * @param rs - the result set, positioned on the account's row
+     * @param accountName - the account name
+     * @return - the account
+     * @throws SQLException - if a column cannot be read
+     * @throws AccountException - if the account name is not valid
+     */
+    static Account readAccount(final ResultSet rs, final String accountName) throws SQLException, AccountException {
+        final Account account = new AccountImpl();
+
+        account.setName(accountName);
+        account.setPasswordHash(rs.getBytes(1));
+        account.setBalance(rs.getInt(2));
+        readProfile(rs, account, 3);
+
+        return account;
+    }
+
+
+    /**
+     * Sets the profile fields of an account from the current row of a lookup
+     * @param rs - the result set, positioned on the account's row
+     * @param account - the account
+     * @param column - the column holding the full name, the remaining profile columns follow it
+     * @throws SQLException - if a column cannot be read
+     */
+    static void readProfile(final ResultSet rs, final Account account, final int column) throws SQLException {
+        account.setFullName(rs.getString(column));
+        account.setPhone(rs.getString(column + 1));
+        account.setEmail(rs.getString(column + 2));
+
+        Address address = new AddressImpl();            //should be able to use beanfactory to create the
+        // Address
+        address.setStreetAddress(rs.getString(column + 3));
+        address.setCity(rs.getString(column + 4));
+        address.setState(rs.getString(column + 5));
+        address.setZipCode(rs.getString(column + 6));
+        account.setAddress(address);
+
+        CreditCard cc = new CreditCardImpl();
+        cc.setAccountNumber(rs.getString(column + 7));
+        cc.setIssuer(rs.getString(column + 8));
+        cc.setType(rs.getString(column + 9));
+        cc.setHolder(rs.getString(column + 10));
+        cc.setExpirationDate(rs.getString(column + 11));
+        account.setCreditCard(cc);
+    }
+
+
+    /**
+     * Closes a result set, logging any failure
+     * @param rs - the result set, may be null
+     */
+    static void closeQuietly(final ResultSet rs) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Unable to close ResultSet", e);
+        }
+    }
 }
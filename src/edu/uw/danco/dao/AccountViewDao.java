@@ -0,0 +1,35 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/17/13
+ * Time: 7:35 PM
+ *
+ * An AccountDao able to read an account's trading fields on their own, leaving the profile fields to be read when
+ * they are first used.
+ */
+public interface AccountViewDao extends AccountDao {
+
+    /**
+     * Lookup the name, password hash and balance of an account. The full name, phone, email, address and credit card
+     * of the returned account are read from this DAO on first access.
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    Account getAccountView(String accountName);
+
+
+    /**
+     * Lookup the profile fields of an account
+     * @param accountName - the name of the account
+     * @return - an account holding the full name, phone, email, address and credit card, or null if the account
+     *           is not located
+     * @throws AccountException - if the profile could not be read
+     */
+    Account getProfile(String accountName) throws AccountException;
+}
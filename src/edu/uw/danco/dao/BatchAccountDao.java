@@ -0,0 +1,26 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.Collection;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/14/13
+ * Time: 7:10 PM
+ *
+ * An AccountDao able to write several accounts in one operation.
+ */
+public interface BatchAccountDao extends AccountDao {
+
+    /**
+     * Adds or updates several accounts. Where the store supports it the accounts are written together, so either
+     * all or none are written.
+     * @param accounts - the accounts to add or update, in the order they are to be written
+     * @throws AccountException - if the operation fails
+     */
+    void setAccounts(Collection<? extends Account> accounts) throws AccountException;
+}
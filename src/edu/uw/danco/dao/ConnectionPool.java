@@ -0,0 +1,365 @@
+package edu.uw.danco.dao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/15/13
+ * Time: 2:20 PM
+ *
+ * A bounded pool of JDBC connections. Connections are opened on demand up to the pool size and reused, a borrower
+ * finding all connections in use waits up to the maximum wait. Each pooled connection keeps the statements prepared
+ * on it, so a statement is prepared once per connection rather than once per use. The pool records the time spent
+ * waiting for connections and the time connections spend borrowed, from which its utilization is derived.
+ */
+public class ConnectionPool {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    /** The source of the connections */
+    private final DataSource dataSource;
+
+    /** Maximum number of connections */
+    private final int maxSize;
+
+    /** Maximum time to wait for a connection, in milliseconds */
+    private final long maxWaitMillis;
+
+    /** One permit per connection that may be borrowed */
+    private final Semaphore permits;
+
+    /** The idle connections, guarded by itself */
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<PooledConnection>();
+
+    /** Time the pool was created, in nanoseconds */
+    private final long createdNanos = System.nanoTime();
+
+    /** Number of connections opened */
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /** Number of connections borrowed */
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    /** The most connections borrowed at once */
+    private final AtomicInteger maxInUse = new AtomicInteger();
+
+    /** Number of borrows */
+    private final AtomicLong borrows = new AtomicLong();
+
+    /** Number of borrows that had to wait */
+    private final AtomicLong waits = new AtomicLong();
+
+    /** Time spent waiting for connections, in nanoseconds */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /** The longest wait for a connection, in nanoseconds */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /** Time connections have spent borrowed, in nanoseconds */
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    /** Set once the pool is closed */
+    private volatile boolean closed;
+
+
+    /**
+     * Constructor, no connections are opened until borrowed.
+     * @param dataSource - the source of the connections
+     * @param maxSize - maximum number of connections
+     * @param maxWaitMillis - maximum time to wait for a connection, in milliseconds
+     */
+    public ConnectionPool(final DataSource dataSource, final int maxSize, final long maxWaitMillis) {
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        permits = new Semaphore(maxSize, true);
+    }
+
+
+    /**
+     * Borrows a connection, waiting if all are in use. The connection must be returned with release.
+     * @return - the connection
+     * @throws SQLException - if no connection becomes available in time, or a new connection cannot be opened
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        final long start = System.nanoTime();
+        if (!permits.tryAcquire()) {
+            waits.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            final long waited = System.nanoTime() - start;
+            waitNanos.addAndGet(waited);
+            updateMax(maxWaitNanos, waited);
+            if (!acquired) {
+                throw new SQLException("Timed out waiting for a connection after " + maxWaitMillis + " ms");
+            }
+        }
+
+        PooledConnection conn;
+        synchronized (idle) {
+            conn = idle.pollFirst();
+        }
+        if (conn == null) {
+            try {
+                conn = new PooledConnection(dataSource.getConnection());
+                opened.incrementAndGet();
+            } catch (SQLException e) {
+                permits.release();
+                throw e;
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        borrows.incrementAndGet();
+        updateMax(maxInUse, inUse.incrementAndGet());
+        conn.borrowedAt = System.nanoTime();
+        return conn;
+    }
+
+
+    /**
+     * Returns a borrowed connection to the pool.
+     * @param conn - the connection
+     * @param broken - true if the connection failed and is to be closed rather than reused
+     */
+    public void release(final PooledConnection conn, final boolean broken) {
+        busyNanos.addAndGet(System.nanoTime() - conn.borrowedAt);
+        inUse.decrementAndGet();
+        if (broken || closed) {
+            conn.close();
+            opened.decrementAndGet();
+        } else {
+            synchronized (idle) {
+                idle.addFirst(conn);
+            }
+        }
+        permits.release();
+    }
+
+
+    /**
+     * Closes the idle connections, connections still borrowed are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            for (PooledConnection conn : idle) {
+                conn.close();
+            }
+            opened.addAndGet(-idle.size());
+            idle.clear();
+        }
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(String.format("Connection pool: %d borrows, %d waits, average wait %d us, "
+                                      + "max in use %d of %d, utilization %.2f",
+                                      getBorrowCount(), getWaitCount(), getAverageWaitNanos() / 1000L,
+                                      getMaxInUse(), maxSize, getUtilization()));
+        }
+    }
+
+
+    /**
+     * Gets the maximum number of connections
+     * @return - the pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+
+    /**
+     * Gets the number of connections open, borrowed or idle
+     * @return - the number of open connections
+     */
+    public int getOpenCount() {
+        return opened.get();
+    }
+
+
+    /**
+     * Gets the number of connections borrowed
+     * @return - the connections in use
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+
+    /**
+     * Gets the most connections borrowed at once
+     * @return - the maximum connections in use
+     */
+    public int getMaxInUse() {
+        return maxInUse.get();
+    }
+
+
+    /**
+     * Gets the number of borrows
+     * @return - the number of borrows
+     */
+    public long getBorrowCount() {
+        return borrows.get();
+    }
+
+
+    /**
+     * Gets the number of borrows that had to wait for a connection
+     * @return - the number of waits
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+
+    /**
+     * Gets the total time spent waiting for connections
+     * @return - the wait time in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+
+
+    /**
+     * Gets the average time a borrow waited for a connection, over all borrows
+     * @return - the average wait in nanoseconds
+     */
+    public long getAverageWaitNanos() {
+        final long count = borrows.get();
+        return count == 0 ? 0 : waitNanos.get() / count;
+    }
+
+
+    /**
+     * Gets the longest a borrow has waited for a connection
+     * @return - the longest wait in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+
+    /**
+     * Gets the fraction of the pool's capacity used since it was created, the time connections have spent borrowed
+     * over the time all the connections could have been borrowed
+     * @return - the utilization, from 0 to 1
+     */
+    public double getUtilization() {
+        final long elapsed = System.nanoTime() - createdNanos;
+        return elapsed <= 0 ? 0.0 : (double) busyNanos.get() / ((double) elapsed * maxSize);
+    }
+
+
+    /**
+     * Raises a maximum to a value.
+     * @param max - the maximum
+     * @param value - the value
+     */
+    private static void updateMax(final AtomicInteger max, final int value) {
+        int current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+
+    /**
+     * Raises a maximum to a value.
+     * @param max - the maximum
+     * @param value - the value
+     */
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+
+    /**
+     * A pooled connection and the statements prepared on it. Used by one borrower at a time.
+     */
+    public static final class PooledConnection {
+        /** The connection */
+        private final Connection connection;
+
+        /** The statements prepared on the connection by SQL */
+        private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+        /** Time the connection was borrowed, in nanoseconds */
+        private long borrowedAt;
+
+
+        /**
+         * Constructor
+         * @param connection - the connection
+         */
+        private PooledConnection(final Connection connection) {
+            this.connection = connection;
+        }
+
+
+        /**
+         * Gets the connection
+         * @return - the connection
+         */
+        public Connection getConnection() {
+            return connection;
+        }
+
+
+        /**
+         * Gets a statement prepared on this connection, preparing it on first use
+         * @param sql - the SQL
+         * @return - the prepared statement, its parameters cleared
+         * @throws SQLException - if the statement cannot be prepared
+         */
+        public PreparedStatement prepare(final String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null) {
+                ps = connection.prepareStatement(sql);
+                statements.put(sql, ps);
+            } else {
+                ps.clearParameters();
+            }
+            return ps;
+        }
+
+
+        /**
+         * Closes the connection, its statements are closed with it.
+         */
+        private void close() {
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Unable to close pooled connection", e);
+            }
+        }
+    }
+}
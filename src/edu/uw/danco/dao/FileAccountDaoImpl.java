@@ -1,11 +1,11 @@
 package edu.uw.danco.dao;
 
 import edu.uw.danco.account.AddressImpl;
+import edu.uw.danco.account.LazyAccountImpl;
 import edu.uw.ext.framework.account.Account;
 import edu.uw.ext.framework.account.AccountException;
 import edu.uw.ext.framework.account.Address;
 import edu.uw.ext.framework.account.CreditCard;
-import edu.uw.ext.framework.dao.AccountDao;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.context.support.FileSystemXmlApplicationContext;
 
@@ -13,11 +13,14 @@ import java.io.*;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -26,8 +29,12 @@ import java.util.zip.ZipOutputStream;
  * User: dcostinett
  * Date: 4/23/13
  * Time: 9:17 PM
+ *
+ * Stores each account as a zip file. The balance is also kept in a small fixed size file beside the zip, so a change
+ * in balance patches four bytes in place instead of rewriting the zip; the balance file overrides the zipped balance.
+ * An account view reads only the account entry of the zip, the address and credit card entries are read on use.
  */
-public class FileAccountDaoImpl implements AccountDao {
+public class FileAccountDaoImpl implements BatchAccountDao, AccountBalanceDao, AccountViewDao {
     /** The logger */
     private static final Logger LOGGER = Logger.getLogger(FileAccountDaoImpl.class.getName());
 
@@ -70,6 +77,12 @@ public class FileAccountDaoImpl implements AccountDao {
     /** name and relative location of zip file */
     public static final String ZIP_FILE_NAME = "%s/%s.zip";
 
+    /** name and relative location of balance file */
+    public static final String BALANCE_FILE_NAME = "%s/%s.bal";
+
+    /** Size of the balance file */
+    private static final int BALANCE_SIZE = 4;
+
     /** Name of xml file with application configuration information */
     public static final String APPLICATION_CONTEXT_FILE_NAME = "context.xml";
 
@@ -130,6 +143,11 @@ public class FileAccountDaoImpl implements AccountDao {
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Unable to ope zip file: " + file.getName(), e);
             }
+
+            final Integer balance = readBalance(accountName);
+            if (balance != null) {
+                acct.setBalance(balance);
+            }
         }
 
         return acct;
@@ -147,14 +165,7 @@ public class FileAccountDaoImpl implements AccountDao {
             acct.setFullName(props.getProperty(FULL_NAME));
             acct.setPhone(props.getProperty(PHONE));
             acct.setEmail(props.getProperty(EMAIL));
-            String pw = props.getProperty(PASSWORD_HASH);
-            String[] theBytes = pw.substring(1, pw.length() - 1).split(",");
-            byte[] bytes = new byte[theBytes.length];
-            int index = 0;
-            for (String b : theBytes) {
-                bytes[index++] = Byte.parseByte(b.trim());
-            }
-            acct.setPasswordHash(bytes);
+            acct.setPasswordHash(parsePasswordHash(props.getProperty(PASSWORD_HASH)));
         } catch (AccountException e) {
             LOGGER.log(Level.SEVERE,
                   String.format("Unable to set account value: %s to %s", "name",
@@ -163,6 +174,120 @@ public class FileAccountDaoImpl implements AccountDao {
     }
 
 
+    /**
+     * Parses a password hash written as a byte array's string form
+     * @param pw - the string form, such as [1, -2, 3]
+     * @return - the password hash
+     */
+    private static byte[] parsePasswordHash(final String pw) {
+        String[] theBytes = pw.substring(1, pw.length() - 1).split(",");
+        byte[] bytes = new byte[theBytes.length];
+        int index = 0;
+        for (String b : theBytes) {
+            bytes[index++] = Byte.parseByte(b.trim());
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Restore the name, password hash and balance of an account, reading only the account entry of its zip file. The
+     * profile fields are restored from the whole zip file on first use.
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public Account getAccountView(final String accountName) {
+        final File file = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, accountName));
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final Properties props = readAccountEntry(file);
+            if (props == null) {
+                return null;
+            }
+
+            final Integer stored = readBalance(accountName);
+            final int balance = stored != null ? stored : Integer.parseInt(props.getProperty(BALANCE));
+            return new LazyAccountImpl(props.getProperty(NAME), parsePasswordHash(props.getProperty(PASSWORD_HASH)),
+                                       balance, this);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to open zip file: " + file.getName(), e);
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to set account name to: " + accountName, e);
+        }
+        return null;
+    }
+
+
+    /**
+     * Reads only the account entry of an account's zip file
+     * @param file - the zip file
+     * @return - the account properties, or null if the zip file has no account entry
+     * @throws IOException - if the zip file cannot be read
+     */
+    private Properties readAccountEntry(final File file) throws IOException {
+        final ZipFile zip = new ZipFile(file);
+        try {
+            final ZipEntry entry = zip.getEntry(ACCOUNT);
+            if (entry == null) {
+                return null;
+            }
+            final Properties props = new Properties();
+            final InputStream in = zip.getInputStream(entry);
+            props.load(in);
+            in.close();
+            return props;
+        } finally {
+            zip.close();
+        }
+    }
+
+
+    /**
+     * Restore the profile fields of an account from its zip file
+     * @param accountName - the name of the account
+     * @return - an account holding the profile fields, or null if the account is not located
+     * @throws AccountException - if the zip file cannot be read
+     */
+    @Override
+    public Account getProfile(final String accountName) throws AccountException {
+        final File file = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, accountName));
+        if (!file.exists()) {
+            return null;
+        }
+        BeanFactory beanFactory = new FileSystemXmlApplicationContext(APPLICATION_CONTEXT_FILE_NAME);
+        final Account acct = beanFactory.getBean(Account.class);
+        try {
+            final ZipFile zip = new ZipFile(file);
+            try {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    final Properties props = new Properties();
+                    final InputStream in = zip.getInputStream(entry);
+                    props.load(in);
+                    in.close();
+                    if (entry.getName().equalsIgnoreCase(ACCOUNT)) {
+                        updateAccount(acct, props);
+                    } else if (entry.getName().equalsIgnoreCase(ADDRESS)) {
+                        updateAccountAddress(acct, props);
+                    } else if (entry.getName().equalsIgnoreCase(CREDIT_CARD)) {
+                        updateCreditCard(acct, props);
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read profile from zip file: " + file.getName(), e);
+            throw new AccountException(e);
+        }
+        return acct;
+    }
+
+
     /**
      * Update the account address
      * @param acct the account to update
@@ -200,12 +325,27 @@ public class FileAccountDaoImpl implements AccountDao {
 
 
     /**
-     * Write out an account to separate files representing the account, address and cc info
+     * Write out an account to separate files representing the account, address and cc info. For a view whose profile
+     * is not loaded and whose password is unchanged only the balance file is written, the profile is not read.
      * @param account - the account
-     * @throws AccountException - if unable to create the file
+     * @throws AccountException - if unable to create the file, or the account is a view whose profile cannot be read
      */
     @Override
     public void setAccount(Account account) throws AccountException {
+        if (account instanceof LazyAccountImpl && !((LazyAccountImpl) account).isProfileLoaded()
+                && isStoredPassword(account)) {
+            try {
+                writeBalance(account.getName(), account.getBalance());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Unable to write balance file for " + account.getName(), e);
+                throw new AccountException(e);
+            }
+            return;
+        }
+        if (account instanceof LazyAccountImpl && !((LazyAccountImpl) account).loadProfile()) {
+            throw new AccountException("Unable to read profile of account " + account.getName()
+                                       + ", not rewriting it");
+        }
         try {
             FileOutputStream fos = new FileOutputStream(
                     String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, account.getName()));
@@ -220,6 +360,7 @@ public class FileAccountDaoImpl implements AccountDao {
                 addEntry(zipped, CREDIT_CARD, account.getCreditCard().toString());
             }
             zipped.close();
+            writeBalance(account.getName(), account.getBalance());
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Unable to open zip file for " + account.getName(), e);
             throw new AccountException(e);
@@ -227,6 +368,64 @@ public class FileAccountDaoImpl implements AccountDao {
     }
 
 
+    /**
+     * Adds an amount to the balance of an account by patching its balance file in place, the zip is not rewritten
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the balance file cannot be written
+     */
+    @Override
+    public synchronized void adjustBalance(final String accountName, final int delta) throws AccountException {
+        if (!new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, accountName)).exists()) {
+            throw new AccountException("No such account " + accountName);
+        }
+        Integer balance = readBalance(accountName);
+        if (balance == null) {
+            balance = getAccount(accountName).getBalance();
+        }
+        try {
+            writeBalance(accountName, balance + delta);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to adjust balance of account " + accountName, e);
+            throw new AccountException(e);
+        }
+    }
+
+
+    /**
+     * Tests if the zip file of an account holds the account's current password hash
+     * @param account - the account
+     * @return - true if the account's zip file exists and holds its password hash
+     */
+    private boolean isStoredPassword(final Account account) {
+        final File file = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, account.getName()));
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            final Properties props = readAccountEntry(file);
+            return props != null
+                   && Arrays.equals(parsePasswordHash(props.getProperty(PASSWORD_HASH)), account.getPasswordHash());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read zip file: " + file.getName(), e);
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes out several accounts, each to its own file, so the accounts are not written together
+     * @param accounts - the accounts
+     * @throws AccountException - if unable to create a file, the accounts before it have been written
+     */
+    @Override
+    public void setAccounts(final Collection<? extends Account> accounts) throws AccountException {
+        for (Account account : accounts) {
+            setAccount(account);
+        }
+    }
+
+
     /**
      * Deletes a specific account file representation
      * @param accountName
@@ -237,6 +436,7 @@ public class FileAccountDaoImpl implements AccountDao {
         File f = new File(String.format(ZIP_FILE_NAME, ACCOUNTS_FOLDER, accountName));
         if (f.exists()) {
             f.delete();
+            new File(String.format(BALANCE_FILE_NAME, ACCOUNTS_FOLDER, accountName)).delete();
         } else {
             LOGGER.log(Level.SEVERE, "Unable to delete account " + accountName);
             throw new AccountException("Unable to delete account " + accountName);
@@ -279,6 +479,47 @@ public class FileAccountDaoImpl implements AccountDao {
     }
 
 
+    /**
+     * Reads the balance file of an account
+     * @param accountName - the name of the account
+     * @return - the balance, or null if the account has no balance file
+     */
+    private synchronized Integer readBalance(final String accountName) {
+        final File f = new File(String.format(BALANCE_FILE_NAME, ACCOUNTS_FOLDER, accountName));
+        if (f.length() < BALANCE_SIZE) {
+            return null;
+        }
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                return raf.readInt();
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Unable to read balance file for account " + accountName, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Overwrites the balance file of an account in place, creating it if needed
+     * @param accountName - the name of the account
+     * @param balance - the balance
+     * @throws IOException - if the file cannot be written
+     */
+    private synchronized void writeBalance(final String accountName, final int balance) throws IOException {
+        final RandomAccessFile raf =
+                new RandomAccessFile(String.format(BALANCE_FILE_NAME, ACCOUNTS_FOLDER, accountName), "rw");
+        try {
+            raf.writeInt(balance);
+        } finally {
+            raf.close();
+        }
+    }
+
+
     /** Get a properties object representing the account information */
     private Properties getAccountProperties(Account account) {
         Properties props = new Properties();
@@ -0,0 +1,166 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/14/13
+ * Time: 7:35 PM
+ *
+ * Combines the account writes of concurrent callers into batches written together. The first writer of a batch
+ * waits for the commit window, collecting the writes arriving meanwhile, then writes the batch through the DAO's
+ * batch operation; every writer in the batch returns once the batch is written, or throws if it failed. The next
+ * batch is collected while the previous one is being written.
+ */
+public class GroupCommitter {
+
+    /** The DAO writing the batches */
+    private final BatchAccountDao dao;
+
+    /** Time the first writer of a batch waits for others, in milliseconds */
+    private final long windowMillis;
+
+    /** Number of writes that closes a batch without waiting out the window */
+    private final int maxBatch;
+
+    /** The batch collecting writes, guarded by this */
+    private Batch current = new Batch();
+
+    /** Number of batches written, guarded by this */
+    private long batches;
+
+    /** Number of accounts written, guarded by this */
+    private long accounts;
+
+
+    /**
+     * Constructor
+     * @param dao - the DAO writing the batches
+     * @param windowMillis - time the first writer of a batch waits for others, in milliseconds
+     * @param maxBatch - number of writes that closes a batch early
+     */
+    public GroupCommitter(final BatchAccountDao dao, final long windowMillis, final int maxBatch) {
+        this.dao = dao;
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+    }
+
+
+    /**
+     * Writes an account as part of the current batch, returning once the batch is written.
+     * @param account - the account to add or update
+     * @throws AccountException - if the batch fails to write
+     */
+    public void write(final Account account) throws AccountException {
+        final Batch batch;
+        final boolean leader;
+        synchronized (this) {
+            batch = current;
+            batch.accounts.add(account);
+            leader = batch.accounts.size() == 1;
+            if (batch.accounts.size() >= maxBatch) {
+                current = new Batch();
+                notifyAll();
+            }
+        }
+        if (leader) {
+            lead(batch);
+        }
+        synchronized (batch) {
+            boolean interrupted = false;
+            while (!batch.done) {
+                try {
+                    batch.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+        }
+    }
+
+
+    /**
+     * Gets the number of batches written
+     * @return - the number of batches
+     */
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+
+    /**
+     * Gets the number of accounts written
+     * @return - the number of accounts
+     */
+    public synchronized long getAccountCount() {
+        return accounts;
+    }
+
+
+    /**
+     * Waits out the commit window, closes the batch and writes it.
+     * @param batch - the batch led by the calling thread
+     */
+    private void lead(final Batch batch) {
+        final List<Account> toWrite;
+        synchronized (this) {
+            final long deadline = System.currentTimeMillis() + windowMillis;
+            long remaining = windowMillis;
+            while (current == batch && remaining > 0) {
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+            if (current == batch) {
+                current = new Batch();
+            }
+            toWrite = batch.accounts;
+            batches++;
+            accounts += toWrite.size();
+        }
+
+        AccountException failure = null;
+        try {
+            dao.setAccounts(toWrite);
+        } catch (AccountException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new AccountException(e);
+        }
+        synchronized (batch) {
+            batch.failure = failure;
+            batch.done = true;
+            batch.notifyAll();
+        }
+    }
+
+
+    /**
+     * The writes committed together.
+     */
+    private static final class Batch {
+        /** The accounts to write, in arrival order */
+        private final List<Account> accounts = new ArrayList<Account>();
+
+        /** Set once the batch has been written or has failed, guarded by the batch */
+        private boolean done;
+
+        /** The failure writing the batch, null if it was written */
+        private AccountException failure;
+    }
+}
@@ -0,0 +1,230 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+import edu.uw.ext.framework.dao.AccountDao;
+
+import java.util.Collection;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/11/13
+ * Time: 8:30 PM
+ *
+ * AccountDao decorator holding a ResourceLimiter permit for the duration of each call, so however many threads use
+ * the DAO only a bounded number reach the database or file system at once. Batch writes are passed through as one
+ * call if the DAO supports them, as are balance adjustments and account views. For a DAO without in place balance
+ * adjustment a balance adjustment reads and rewrites the account.
+ */
+public class LimitedAccountDao implements BatchAccountDao, AccountBalanceDao, AccountViewDao {
+
+    /** The DAO performing the calls */
+    private final AccountDao dao;
+
+    /** Bounds the concurrent calls */
+    private final ResourceLimiter limiter;
+
+
+    /**
+     * Constructor
+     * @param dao - the DAO performing the calls
+     * @param limiter - bounds the concurrent calls
+     */
+    public LimitedAccountDao(final AccountDao dao, final ResourceLimiter limiter) {
+        this.dao = dao;
+        this.limiter = limiter;
+    }
+
+
+    /**
+     * Lookup an account by account name
+     * @param accountName - the name of the desired account
+     * @return - the account if located otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        limiter.acquire();
+        try {
+            return dao.getAccount(accountName);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Lookup the trading fields of an account if the DAO supports account views, otherwise the whole account
+     * @param accountName - the name of the desired account
+     * @return - the account if located otherwise null
+     */
+    @Override
+    public Account getAccountView(final String accountName) {
+        limiter.acquire();
+        try {
+            return dao instanceof AccountViewDao ? ((AccountViewDao) dao).getAccountView(accountName)
+                                                 : dao.getAccount(accountName);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Lookup the profile fields of an account
+     * @param accountName - the name of the account
+     * @return - an account holding the profile fields, or null if the account is not located
+     * @throws AccountException - if the profile could not be read
+     */
+    @Override
+    public Account getProfile(final String accountName) throws AccountException {
+        limiter.acquire();
+        try {
+            return dao instanceof AccountViewDao ? ((AccountViewDao) dao).getProfile(accountName)
+                                                 : dao.getAccount(accountName);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Adds or updates an account
+     * @param account - the account to add/update
+     * @throws AccountException - if operation fails
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        limiter.acquire();
+        try {
+            dao.setAccount(account);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Adds or updates several accounts, in one call if the DAO supports batch writes
+     * @param accounts - the accounts to add/update
+     * @throws AccountException - if operation fails
+     */
+    @Override
+    public void setAccounts(final Collection<? extends Account> accounts) throws AccountException {
+        limiter.acquire();
+        try {
+            if (dao instanceof BatchAccountDao) {
+                ((BatchAccountDao) dao).setAccounts(accounts);
+            } else {
+                for (Account account : accounts) {
+                    dao.setAccount(account);
+                }
+            }
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Adds an amount to the stored balance of an account, in place if the DAO supports it, otherwise by reading and
+     * rewriting the account. The read and rewrite are only atomic with respect to other adjustments made through this
+     * instance, test the wrapped DAO with isBalanceDao before relying on this for a DAO shared with other writers.
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the operation fails
+     */
+    @Override
+    public void adjustBalance(final String accountName, final int delta) throws AccountException {
+        if (!isBalanceDao()) {
+            rewriteBalance(accountName, delta);
+            return;
+        }
+        limiter.acquire();
+        try {
+            ((AccountBalanceDao) dao).adjustBalance(accountName, delta);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Adds an amount to the balance of an account by reading and rewriting the account
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the operation fails
+     */
+    private synchronized void rewriteBalance(final String accountName, final int delta) throws AccountException {
+        limiter.acquire();
+        try {
+            final Account account = dao.getAccount(accountName);
+            if (account == null) {
+                throw new AccountException("No such account " + accountName);
+            }
+            account.setBalance(account.getBalance() + delta);
+            dao.setAccount(account);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Tests if the wrapped DAO adjusts balances in place
+     * @return - true if the wrapped DAO is an AccountBalanceDao
+     */
+    public boolean isBalanceDao() {
+        return dao instanceof AccountBalanceDao;
+    }
+
+
+    /**
+     * Remove the account
+     * @param accountName - the name of the account to remove
+     * @throws AccountException - if operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        limiter.acquire();
+        try {
+            dao.deleteAccount(accountName);
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Remove all accounts
+     * @throws AccountException - if operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        limiter.acquire();
+        try {
+            dao.reset();
+        } finally {
+            limiter.release();
+        }
+    }
+
+
+    /**
+     * Close the underlying DAO
+     * @throws AccountException - if operation fails
+     */
+    @Override
+    public void close() throws AccountException {
+        dao.close();
+    }
+
+
+    /**
+     * Gets the limiter bounding the concurrent calls
+     * @return - the limiter
+     */
+    public ResourceLimiter getLimiter() {
+        return limiter;
+    }
+}
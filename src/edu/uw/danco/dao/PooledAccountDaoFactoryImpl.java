@@ -0,0 +1,69 @@
+package edu.uw.danco.dao;
+
+import edu.uw.ext.framework.dao.AccountDao;
+import edu.uw.ext.framework.dao.DaoFactory;
+import edu.uw.ext.framework.dao.DaoFactoryException;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/15/13
+ * Time: 3:40 PM
+ *
+ * Creates account DAOs drawing their connections from a pool.
+ */
+public class PooledAccountDaoFactoryImpl implements DaoFactory {
+
+    /** Maximum number of connections */
+    private int poolSize = PooledAccountDaoImpl.DEFAULT_POOL_SIZE;
+
+    /** Maximum time to wait for a connection, in milliseconds */
+    private long maxWaitMillis = PooledAccountDaoImpl.DEFAULT_MAX_WAIT_MILLIS;
+
+    /**
+     * Instantiates a new pooled AccountDao object.
+     * @return - a newly instantiated account DAO object
+     * @throws DaoFactoryException if unable to instantiate the DAO object
+     */
+    @Override
+    public AccountDao getAccountDao() throws DaoFactoryException {
+        AccountDao accountDao = new PooledAccountDaoImpl(poolSize, maxWaitMillis);
+        return accountDao;
+    }
+
+
+    /**
+     * Gets the maximum number of connections
+     * @return - the pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+
+    /**
+     * Sets the maximum number of connections
+     * @param poolSize - the pool size
+     */
+    public void setPoolSize(final int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+
+    /**
+     * Gets the maximum time to wait for a connection
+     * @return - the maximum wait in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+
+    /**
+     * Sets the maximum time to wait for a connection
+     * @param maxWaitMillis - the maximum wait in milliseconds
+     */
+    public void setMaxWaitMillis(final long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+}
@@ -0,0 +1,404 @@
+package edu.uw.danco.dao;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.LazyAccountImpl;
+import edu.uw.danco.dao.ConnectionPool.PooledConnection;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/15/13
+ * Time: 3:10 PM
+ *
+ * Account DAO using a pool of connections rather than one shared connection. Every operation borrows a connection
+ * and uses statements prepared on that connection, so operations run concurrently up to the pool size and callers
+ * never share statement parameters. Uses the same SQL and column mapping as AccountDaoImpl.
+ */
+public class PooledAccountDaoImpl implements BatchAccountDao, AccountBalanceDao, AccountViewDao {
+
+    /** The logger */
+    private static final Logger LOGGER = Logger.getLogger(PooledAccountDaoImpl.class.getName());
+
+    /** Default maximum number of connections */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /** Default maximum time to wait for a connection, in milliseconds */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5000L;
+
+    /** The connection pool, null if the data source could not be located */
+    private final ConnectionPool pool;
+
+
+    /**
+     * Constructs a DAO using the account data source from the naming context, with the default pool settings.
+     */
+    public PooledAccountDaoImpl() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+
+    /**
+     * Constructs a DAO using the account data source from the naming context.
+     * @param poolSize - maximum number of connections
+     * @param maxWaitMillis - maximum time to wait for a connection, in milliseconds
+     */
+    public PooledAccountDaoImpl(final int poolSize, final long maxWaitMillis) {
+        this(lookupDataSource(), poolSize, maxWaitMillis);
+    }
+
+
+    /**
+     * Constructor
+     * @param dataSource - the source of the connections
+     * @param poolSize - maximum number of connections
+     * @param maxWaitMillis - maximum time to wait for a connection, in milliseconds
+     */
+    public PooledAccountDaoImpl(final DataSource dataSource, final int poolSize, final long maxWaitMillis) {
+        pool = dataSource == null ? null : new ConnectionPool(dataSource, poolSize, maxWaitMillis);
+    }
+
+
+    /**
+     * Lookup an account by account name
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public Account getAccount(final String accountName) {
+        Account account = null;
+        PooledConnection conn = null;
+        boolean broken = false;
+        ResultSet rs = null;
+        try {
+            conn = borrow();
+            final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_LOOKUP_SQL);
+            ps.setString(1, accountName);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                account = AccountDaoImpl.readAccount(rs, accountName);
+            }
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to retrieve account for accountName = " + accountName, e);
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to set accountname to: " + accountName, e);
+        } finally {
+            AccountDaoImpl.closeQuietly(rs);
+            release(conn, broken);
+        }
+        return account;
+    }
+
+
+    /**
+     * Lookup the trading fields of an account, the profile fields are read on first use
+     * @param accountName - the name of the desired account
+     * @return - the account if located, otherwise null
+     */
+    @Override
+    public Account getAccountView(final String accountName) {
+        Account account = null;
+        PooledConnection conn = null;
+        boolean broken = false;
+        ResultSet rs = null;
+        try {
+            conn = borrow();
+            final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_VIEW_SQL);
+            ps.setString(1, accountName);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                account = new LazyAccountImpl(accountName, rs.getBytes(1), rs.getInt(2), this);
+            }
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to retrieve account for accountName = " + accountName, e);
+        } catch (AccountException e) {
+            LOGGER.log(Level.SEVERE, "Unable to set accountname to: " + accountName, e);
+        } finally {
+            AccountDaoImpl.closeQuietly(rs);
+            release(conn, broken);
+        }
+        return account;
+    }
+
+
+    /**
+     * Lookup the profile fields of an account
+     * @param accountName - the name of the account
+     * @return - an account holding the profile fields, or null if the account is not located
+     * @throws AccountException - if the profile could not be read, including when no connection is available
+     */
+    @Override
+    public Account getProfile(final String accountName) throws AccountException {
+        Account account = null;
+        PooledConnection conn = null;
+        boolean broken = false;
+        ResultSet rs = null;
+        try {
+            conn = borrow();
+            final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_PROFILE_SQL);
+            ps.setString(1, accountName);
+            rs = ps.executeQuery();
+            if (rs.next()) {
+                account = new AccountImpl();
+                AccountDaoImpl.readProfile(rs, account, 1);
+            }
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to retrieve profile for accountName = " + accountName, e);
+            throw new AccountException(e);
+        } finally {
+            AccountDaoImpl.closeQuietly(rs);
+            release(conn, broken);
+        }
+        return account;
+    }
+
+
+    /**
+     * Adds or updates an account. Only the trading fields of an account view whose profile is not loaded are written,
+     * the profile is never read to write it.
+     * @param account - the account to add or update
+     * @throws AccountException - if the operation fails
+     */
+    @Override
+    public void setAccount(final Account account) throws AccountException {
+        final boolean tradingOnly = AccountDaoImpl.isTradingOnly(account);
+        PooledConnection conn = null;
+        boolean broken = false;
+        try {
+            conn = borrow();
+            final PreparedStatement ps;
+            if (tradingOnly) {
+                ps = conn.prepare(AccountDaoImpl.ACCOUNT_TRADING_UPDATE_SQL);
+                AccountDaoImpl.bindTrading(ps, account);
+            } else {
+                ps = conn.prepare(AccountDaoImpl.ACCOUNT_UPDATE_SQL);
+                AccountDaoImpl.bindAccount(ps, account);
+            }
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to update account", e);
+            throw new AccountException(e);
+        } finally {
+            release(conn, broken);
+        }
+    }
+
+
+    /**
+     * Adds or updates several accounts as one JDBC batch in a single transaction. Account views whose profile is not
+     * loaded have only their trading fields written.
+     * @param accounts - the accounts to add or update
+     * @throws AccountException - if the batch fails, none of the accounts are written
+     */
+    @Override
+    public void setAccounts(final Collection<? extends Account> accounts) throws AccountException {
+        if (accounts.isEmpty()) {
+            return;
+        }
+        final List<Account> full = new ArrayList<Account>(accounts.size());
+        final List<Account> tradingOnly = new ArrayList<Account>();
+        for (Account account : accounts) {
+            if (AccountDaoImpl.isTradingOnly(account)) {
+                tradingOnly.add(account);
+            } else {
+                full.add(account);
+            }
+        }
+        PooledConnection conn = null;
+        boolean broken = false;
+        try {
+            conn = borrow();
+            final Connection connection = conn.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                if (!full.isEmpty()) {
+                    final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_UPDATE_SQL);
+                    for (Account account : full) {
+                        AccountDaoImpl.bindAccount(ps, account);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                if (!tradingOnly.isEmpty()) {
+                    final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_TRADING_UPDATE_SQL);
+                    for (Account account : tradingOnly) {
+                        AccountDaoImpl.bindTrading(ps, account);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to update " + accounts.size() + " accounts", e);
+            throw new AccountException(e);
+        } finally {
+            release(conn, broken);
+        }
+    }
+
+
+    /**
+     * Adds an amount to the stored balance of an account, only the balance column is written
+     * @param accountName - the name of the account
+     * @param delta - the amount to add, negative to deduct
+     * @throws AccountException - if the account does not exist or the operation fails
+     */
+    @Override
+    public void adjustBalance(final String accountName, final int delta) throws AccountException {
+        PooledConnection conn = null;
+        boolean broken = false;
+        final int rows;
+        try {
+            conn = borrow();
+            final PreparedStatement ps = conn.prepare(AccountDaoImpl.ACCOUNT_BALANCE_SQL);
+            ps.setInt(1, delta);
+            ps.setString(2, accountName);
+            rows = ps.executeUpdate();
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to adjust balance of account " + accountName, e);
+            throw new AccountException(e);
+        } finally {
+            release(conn, broken);
+        }
+        if (rows == 0) {
+            throw new AccountException("No such account " + accountName);
+        }
+    }
+
+
+    /**
+     * Remove the account
+     * @param accountName - the name of the account to be deleted
+     * @throws AccountException - if the operation fails
+     */
+    @Override
+    public void deleteAccount(final String accountName) throws AccountException {
+        execute(AccountDaoImpl.ACCOUNT_DELETE_SQL, accountName);
+    }
+
+
+    /**
+     * Remove all the accounts. This is primarily to facilitate testing
+     * @throws AccountException - if the operation fails
+     */
+    @Override
+    public void reset() throws AccountException {
+        execute(AccountDaoImpl.ACCOUNT_RESET_SQL, null);
+    }
+
+
+    /**
+     * Close the DAO, closing the pooled connections.
+     * @throws AccountException
+     */
+    @Override
+    public void close() throws AccountException {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+
+    /**
+     * Gets the connection pool, for its statistics
+     * @return - the connection pool, null if the data source could not be located
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+
+    /**
+     * Executes an update statement taking at most an account name
+     * @param sql - the SQL
+     * @param accountName - the account name, null if the statement takes no parameter
+     * @throws AccountException - if the operation fails
+     */
+    private void execute(final String sql, final String accountName) throws AccountException {
+        PooledConnection conn = null;
+        boolean broken = false;
+        try {
+            conn = borrow();
+            final PreparedStatement ps = conn.prepare(sql);
+            if (accountName != null) {
+                ps.setString(1, accountName);
+            }
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            broken = true;
+            LOGGER.log(Level.SEVERE, "Unable to execute " + sql, e);
+            throw new AccountException(e);
+        } finally {
+            release(conn, broken);
+        }
+    }
+
+
+    /**
+     * Borrows a connection from the pool
+     * @return - the connection
+     * @throws SQLException - if no connection is available
+     */
+    private PooledConnection borrow() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("No account data source");
+        }
+        return pool.borrow();
+    }
+
+
+    /**
+     * Returns a connection to the pool
+     * @param conn - the connection, null if none was borrowed
+     * @param broken - true if an operation on the connection failed
+     */
+    private void release(final PooledConnection conn, final boolean broken) {
+        if (conn != null) {
+            pool.release(conn, broken);
+        }
+    }
+
+
+    /**
+     * Looks up the account data source in the naming context
+     * @return - the data source, or null if it cannot be located
+     */
+    private static DataSource lookupDataSource() {
+        try {
+            final Context ctx = new InitialContext();
+            final DataSource ds = (DataSource) ctx.lookup(AccountDaoImpl.JDBC_ACCOUNT_DB);
+            ctx.close();
+            return ds;
+        } catch (NamingException e) {
+            LOGGER.log(Level.SEVERE, "Unable to initialize application context.", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package edu.uw.danco.dao;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: dcostinett
+ * Date: 6/11/13
+ * Time: 8:05 PM
+ *
+ * Bounds the number of threads using a downstream resource, such as database connections or file handles, at once.
+ * Callers beyond the limit wait for a permit, so any number of threads may be in flight without overrunning the
+ * resource. Keeps counts of the waits and the time spent waiting.
+ */
+public class ResourceLimiter {
+
+    /** The name of the resource, for logging */
+    private final String name;
+
+    /** The number of permits */
+    private final int permits;
+
+    /** The permits */
+    private final Semaphore semaphore;
+
+    /** Number of permits held */
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    /** The most permits held at once */
+    private final AtomicInteger maxInUse = new AtomicInteger();
+
+    /** Number of acquisitions that had to wait */
+    private final AtomicLong waits = new AtomicLong();
+
+    /** Time spent waiting for permits, in nanoseconds */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+
+    /**
+     * Constructor
+     * @param name - the name of the resource
+     * @param permits - the number of threads allowed to use the resource at once
+     */
+    public ResourceLimiter(final String name, final int permits) {
+        this.name = name;
+        this.permits = permits;
+        semaphore = new Semaphore(permits);
+    }
+
+
+    /**
+     * Takes a permit, waiting for one if none are free. Every acquire must be paired with a release.
+     */
+    public void acquire() {
+        if (!semaphore.tryAcquire()) {
+            final long start = System.nanoTime();
+            semaphore.acquireUninterruptibly();
+            waits.incrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+        final int held = inUse.incrementAndGet();
+        int max = maxInUse.get();
+        while (held > max && !maxInUse.compareAndSet(max, held)) {
+            max = maxInUse.get();
+        }
+    }
+
+
+    /**
+     * Returns a permit.
+     */
+    public void release() {
+        inUse.decrementAndGet();
+        semaphore.release();
+    }
+
+
+    /**
+     * Gets the name of the resource
+     * @return - the resource name
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Gets the number of threads allowed to use the resource at once
+     * @return - the number of permits
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+
+    /**
+     * Gets the number of permits held
+     * @return - the permits in use
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+
+    /**
+     * Gets the most permits held at once
+     * @return - the maximum permits in use
+     */
+    public int getMaxInUse() {
+        return maxInUse.get();
+    }
+
+
+    /**
+     * Gets the number of acquisitions that had to wait for a permit
+     * @return - the number of waits
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+
+    /**
+     * Gets the time spent waiting for permits
+     * @return - the wait time in nanoseconds
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
+    }
+}
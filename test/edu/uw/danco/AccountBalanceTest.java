@@ -0,0 +1,51 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.ext.framework.account.Account;
+
+/**
+ * Tests the account manager's balance adjustments.
+ */
+public final class AccountBalanceTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Test account's password */
+    private static final String PASSWORD = "password1";
+
+    /** Test account's initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /**
+     * Adjusts balances through a manager limiting the concurrent calls to a DAO without in place balance adjustment,
+     * and verifies the account is persisted in full rather than read back and rewritten by the limiting wrapper.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testLimitedPlainDaoPersistsAccount() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setDaoConcurrency(2);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+        manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+        final Account account = manager.getAccount(ACCT_NAME);
+        final int reads = dao.getReads();
+        final int writes = dao.getWrites();
+
+        for (int i = 0; i < 10; i++) {
+            account.setBalance(account.getBalance() - 100);
+            manager.adjustBalance(account, -100);
+        }
+
+        assertEquals(INIT_BALANCE - 1000, dao.storedBalance(ACCT_NAME));
+        assertEquals(reads, dao.getReads());
+        assertEquals(writes + 10, dao.getWrites());
+        manager.close();
+    }
+}
@@ -0,0 +1,130 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountCache;
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests the account cache and its use by the account manager.
+ */
+public final class AccountCacheTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Test account's password */
+    private static final String PASSWORD = "password1";
+
+    /** Test account's initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /**
+     * Verifies repeated lookups are served from the cache and that persist and delete keep it coherent.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testManagerCacheCoherence() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setCacheSize(100);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+
+        final Account created = manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+        final int readsAfterCreate = dao.getReads();
+        for (int i = 0; i < 10; i++) {
+            assertSame(created, manager.getAccount(ACCT_NAME));
+        }
+        assertTrue(manager.validateLogin(ACCT_NAME, PASSWORD));
+        assertEquals(readsAfterCreate, dao.getReads());
+        assertEquals(11, manager.getAccountCache().getHitCount());
+
+        final Account updated = new AccountImpl(ACCT_NAME, created.getPasswordHash(), INIT_BALANCE * 2);
+        manager.persist(updated);
+        assertEquals(INIT_BALANCE * 2, manager.getAccount(ACCT_NAME).getBalance());
+        assertEquals(INIT_BALANCE * 2, dao.storedBalance(ACCT_NAME));
+
+        manager.deleteAccount(ACCT_NAME);
+        assertNull(manager.getAccount(ACCT_NAME));
+        manager.close();
+    }
+
+    /**
+     * Verifies a failed write drops the account from the cache, so the next lookup returns the stored state.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testFailedWriteInvalidatesCache() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setCacheSize(100);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+        final Account created = manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+
+        dao.setFailWrites(true);
+        final Account updated = new AccountImpl(ACCT_NAME, created.getPasswordHash(), INIT_BALANCE * 2);
+        try {
+            manager.persist(updated);
+            fail("Expected the write to fail");
+        } catch (AccountException e) {
+            // expected
+        }
+        dao.setFailWrites(false);
+
+        final int reads = dao.getReads();
+        final Account reloaded = manager.getAccount(ACCT_NAME);
+        assertEquals(reads + 1, dao.getReads());
+        assertNotSame(created, reloaded);
+        assertEquals(INIT_BALANCE, reloaded.getBalance());
+        manager.close();
+    }
+
+    /**
+     * Verifies the least recently used account is evicted when the cache is full.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testLruEviction() throws Exception {
+        final AccountCache cache = new AccountCache(2, 0);
+        cache.put(new AccountImpl("account1", new byte[0], INIT_BALANCE));
+        cache.put(new AccountImpl("account2", new byte[0], INIT_BALANCE));
+        assertNotNull(cache.get("account1"));
+        cache.put(new AccountImpl("account3", new byte[0], INIT_BALANCE));
+
+        assertNotNull(cache.get("account1"));
+        assertNull(cache.get("account2"));
+        assertNotNull(cache.get("account3"));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Verifies entries expire after the time to live.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testExpiry() throws Exception {
+        final AccountCache cache = new AccountCache(10, 20);
+        cache.put(new AccountImpl(ACCT_NAME, new byte[0], INIT_BALANCE));
+        assertNotNull(cache.get(ACCT_NAME));
+        Thread.sleep(50);
+        assertNull(cache.get(ACCT_NAME));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,136 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.broker.AccountPrefetcher;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests prefetching the accounts of stop orders close to triggering.
+ */
+public final class AccountPrefetcherTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Test accounts' password */
+    private static final String PASSWORD = "password1";
+
+    /** Test accounts' initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /** Initial price */
+    private static final int INIT_PRICE = 1000;
+
+    /** Distance within which accounts are prefetched */
+    private static final int DISTANCE = 50;
+
+    /**
+     * Rests stop orders near and far from the price, verifies only the near accounts are loaded and the claims of
+     * those accounts are hits.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testNearOrdersPrefetched() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setCacheSize(100);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+        manager.createAccount("nearbuyer", PASSWORD, INIT_BALANCE);
+        manager.createAccount("nearseller", PASSWORD, INIT_BALANCE);
+        manager.createAccount("farbuyer", PASSWORD, INIT_BALANCE);
+        manager.getAccountCache().clear();
+        final int readsAtStart = dao.getReads();
+
+        final AccountPrefetcher prefetcher = new AccountPrefetcher(manager, 1, 100, 60000L, "test");
+        final OrderManagerImpl orderManager = new OrderManagerImpl(TICKER, INIT_PRICE);
+        orderManager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+            }
+        });
+        orderManager.setAccountPrefetcher(prefetcher, DISTANCE);
+        orderManager.queueOrder(new StopBuyOrder("nearbuyer", 10, TICKER, INIT_PRICE + 80));
+        orderManager.queueOrder(new StopBuyOrder("farbuyer", 10, TICKER, INIT_PRICE + 500));
+        orderManager.queueOrder(new StopSellOrder("nearseller", 10, TICKER, INIT_PRICE - 80));
+
+        orderManager.adjustPrice(INIT_PRICE);
+        assertEquals(0, prefetcher.getPrefetchCount());
+
+        orderManager.adjustPrice(INIT_PRICE + 40);
+        orderManager.adjustPrice(INIT_PRICE - 40);
+        assertEquals(2, prefetcher.getPrefetchCount());
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (dao.getReads() < readsAtStart + 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(readsAtStart + 2, dao.getReads());
+
+        Thread.sleep(50);
+        assertTrue(prefetcher.claim("nearbuyer"));
+        assertTrue(prefetcher.claim("nearseller"));
+        assertFalse(prefetcher.claim("farbuyer"));
+        manager.getAccount("nearbuyer");
+        manager.getAccount("nearseller");
+        assertEquals(readsAtStart + 2, dao.getReads());
+
+        prefetcher.shutdown();
+        assertEquals(2, prefetcher.getHitCount());
+        assertEquals(1, prefetcher.getMissCount());
+        assertEquals(0, prefetcher.getWastedCount());
+    }
+
+
+    /**
+     * Moves the price repeatedly within range of resting stop orders and verifies each account is requested once,
+     * that the queue is visited again only when the range extends, and that an order queued within the prefetched
+     * range is requested as it is queued.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testPrefetchOnlyWhenRangeChanges() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, new AccountManagerConfig());
+        final AccountPrefetcher prefetcher = new AccountPrefetcher(manager, 1, 100, 60000L, "test");
+        final OrderManagerImpl orderManager = new OrderManagerImpl(TICKER, INIT_PRICE);
+        orderManager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+            }
+        });
+        orderManager.setAccountPrefetcher(prefetcher, DISTANCE);
+        orderManager.queueOrder(new StopBuyOrder("buyer1", 10, TICKER, INIT_PRICE + 60));
+        orderManager.queueOrder(new StopBuyOrder("buyer2", 10, TICKER, INIT_PRICE + 70));
+        orderManager.queueOrder(new StopBuyOrder("buyer3", 10, TICKER, INIT_PRICE + 95));
+
+        for (int i = 0; i < 100; i++) {
+            orderManager.adjustPrice(INIT_PRICE + 20 + i % 5);
+        }
+        assertEquals(2, prefetcher.getRequestCount());
+
+        orderManager.adjustPrice(INIT_PRICE + 45);
+        assertEquals(3, prefetcher.getRequestCount());
+
+        orderManager.queueOrder(new StopBuyOrder("buyer4", 10, TICKER, INIT_PRICE + 65));
+        assertEquals(4, prefetcher.getRequestCount());
+        orderManager.queueOrder(new StopBuyOrder("buyer5", 10, TICKER, INIT_PRICE + 400));
+        assertEquals(4, prefetcher.getRequestCount());
+
+        for (int i = 0; i < 100; i++) {
+            orderManager.adjustPrice(INIT_PRICE + 40 + i % 5);
+        }
+        assertEquals(4, prefetcher.getRequestCount());
+        prefetcher.shutdown();
+    }
+}
@@ -0,0 +1,183 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.account.AccountWriteBehind;
+import edu.uw.ext.framework.account.Account;
+
+/**
+ * Tests write behind persistence in the account manager.
+ */
+public final class AccountWriteBehindTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Test account's password */
+    private static final String PASSWORD = "password1";
+
+    /** Test account's initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /**
+     * Verifies repeated updates of an account are merged into one write and are visible before it is flushed.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testUpdatesAreMerged() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, writeBehindConfig(1000));
+
+        final Account account = manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+        assertEquals(1, dao.getWrites());
+        for (int i = 1; i <= 10; i++) {
+            account.setBalance(INIT_BALANCE + i);
+            manager.persist(account);
+        }
+        assertEquals(1, dao.getWrites());
+        assertEquals(INIT_BALANCE + 10, manager.getAccount(ACCT_NAME).getBalance());
+
+        manager.flush();
+        assertEquals(2, dao.getWrites());
+        assertEquals(INIT_BALANCE + 10, dao.storedBalance(ACCT_NAME));
+
+        account.setBalance(INIT_BALANCE);
+        manager.persist(account);
+        manager.close();
+        assertEquals(3, dao.getWrites());
+        assertEquals(INIT_BALANCE, dao.storedBalance(ACCT_NAME));
+    }
+
+    /**
+     * Verifies deleting an account discards its pending write.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testDeleteDiscardsPendingWrite() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, writeBehindConfig(1000));
+
+        final Account account = manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+        account.setBalance(INIT_BALANCE * 2);
+        manager.persist(account);
+        manager.deleteAccount(ACCT_NAME);
+        manager.close();
+        assertNull(dao.getAccount(ACCT_NAME));
+        assertEquals(1, dao.getWrites());
+    }
+
+    /**
+     * Verifies reaching the pending limit triggers a flush.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testSizeTrigger() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, writeBehindConfig(5));
+
+        for (int i = 0; i < 5; i++) {
+            manager.createAccount(ACCT_NAME + i, PASSWORD, INIT_BALANCE);
+        }
+        for (int i = 0; i < 5; i++) {
+            final Account account = manager.getAccount(ACCT_NAME + i);
+            account.setBalance(INIT_BALANCE * 2);
+            manager.persist(account);
+        }
+        for (int wait = 0; wait < 100 && dao.getWrites() < 10; wait++) {
+            Thread.sleep(20);
+        }
+        assertEquals(10, dao.getWrites());
+        manager.close();
+    }
+
+    /**
+     * Verifies an account being written by a running flush is still served from the write behind buffer, so an
+     * update made during the flush is applied to the latest state.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testAccountVisibleWhileFlushing() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final MemoryAccountDao dao = new MemoryAccountDao() {
+            @Override
+            public void setAccounts(final Collection<? extends Account> batch) {
+                writing.countDown();
+                try {
+                    proceed.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.setAccounts(batch);
+            }
+        };
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, writeBehindConfig(1000));
+        final Account account = manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+        account.setBalance(INIT_BALANCE + 1);
+        manager.persist(account);
+
+        final Thread flusher = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    manager.flush();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        flusher.start();
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        final Account during = manager.getAccount(ACCT_NAME);
+        assertSame(account, during);
+        assertEquals(INIT_BALANCE + 1, during.getBalance());
+        proceed.countDown();
+        flusher.join();
+        manager.close();
+        assertEquals(INIT_BALANCE + 1, dao.storedBalance(ACCT_NAME));
+    }
+
+    /**
+     * Verifies an account marked dirty after the buffer is closed is written immediately.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testMarkDirtyAfterClose() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountWriteBehind writeBehind = new AccountWriteBehind(dao, 1, 60000);
+        writeBehind.close();
+        writeBehind.markDirty(new AccountImpl(ACCT_NAME, new byte[] {1}, INIT_BALANCE));
+        assertEquals(1, dao.getWrites());
+        assertNull(writeBehind.getPending(ACCT_NAME));
+    }
+
+    /**
+     * Creates a write behind configuration with a long flush interval.
+     *
+     * @param maxPending the size trigger
+     * @return the configuration
+     */
+    private AccountManagerConfig writeBehindConfig(final int maxPending) {
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setWriteBehind(true);
+        config.setWriteBehindMaxPending(maxPending);
+        config.setWriteBehindMillis(60000);
+        return config;
+    }
+}
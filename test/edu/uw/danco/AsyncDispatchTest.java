@@ -0,0 +1,167 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.AsyncOrderQueueFactory;
+import edu.uw.danco.broker.ConcurrentOrderQueueFactory;
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.OrderDispatcher;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.danco.broker.TreeOrderQueueFactory;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests the queues created by the AsyncOrderQueueFactory dispatch on the dispatcher thread.
+ */
+public final class AsyncDispatchTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Number of producer threads */
+    private static final int PRODUCERS = 8;
+
+    /** Orders placed by each producer */
+    private static final int ORDERS_PER_PRODUCER = 2000;
+
+    /**
+     * Enqueues orders from several threads into a concurrent queue in asynchronous mode and verifies every order is
+     * dispatched exactly once, on the dispatcher thread.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testConcurrentEnqueueDispatchedOnce() throws Exception {
+        final OrderDispatcher dispatcher = new OrderDispatcher("test-dispatcher");
+        final AsyncOrderQueueFactory factory =
+                new AsyncOrderQueueFactory(ConcurrentOrderQueueFactory.INSTANCE, dispatcher);
+        final OrderQueue<Order> queue = factory.newMarketOrderQueue(new MarketDispatchFilter(true));
+        final int total = PRODUCERS * ORDERS_PER_PRODUCER;
+        final Map<Integer, AtomicInteger> dispatched = new ConcurrentHashMap<Integer, AtomicInteger>();
+        final AtomicInteger foreignThread = new AtomicInteger();
+        final CountDownLatch allDispatched = new CountDownLatch(total);
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                if (!"test-dispatcher".equals(Thread.currentThread().getName())) {
+                    foreignThread.incrementAndGet();
+                }
+                dispatched.get(Integer.valueOf(order.getOrderId())).incrementAndGet();
+                allDispatched.countDown();
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ORDERS_PER_PRODUCER; i++) {
+                            final Order order = new MarketBuyOrder("acct" + producer, 1 + i % 10, TICKER);
+                            dispatched.put(Integer.valueOf(order.getOrderId()), new AtomicInteger());
+                            queue.enqueue(order);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+
+        assertTrue(allDispatched.await(30, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+        assertEquals(total, dispatched.size());
+        for (AtomicInteger count : dispatched.values()) {
+            assertEquals(1, count.get());
+        }
+        assertEquals(0, foreignThread.get());
+    }
+
+
+    /**
+     * Verifies orders enqueued once the dispatcher has been shut down are dispatched on the calling thread.
+     */
+    @Test
+    public void testDispatchAfterShutdown() {
+        final OrderDispatcher dispatcher = new OrderDispatcher("test-dispatcher");
+        final AsyncOrderQueueFactory factory = new AsyncOrderQueueFactory(TreeOrderQueueFactory.INSTANCE, dispatcher);
+        final OrderQueue<Order> queue = factory.newMarketOrderQueue(new MarketDispatchFilter(true));
+        final AtomicInteger dispatched = new AtomicInteger();
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.incrementAndGet();
+            }
+        });
+        dispatcher.shutdown();
+
+        queue.enqueue(new MarketBuyOrder("acct", 10, TICKER));
+        assertEquals(1, dispatched.get());
+        queue.enqueue(new MarketBuyOrder("acct", 20, TICKER));
+        assertEquals(2, dispatched.get());
+    }
+
+
+    /**
+     * Applies a conflated price movement to an order manager whose queues are in asynchronous mode while the
+     * dispatcher thread is busy, and verifies the stop orders crossed only at the high and the low are dispatched.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testConflatedPriceWithAsyncDispatch() throws Exception {
+        final OrderDispatcher dispatcher = new OrderDispatcher("test-dispatcher");
+        final AsyncOrderQueueFactory factory = new AsyncOrderQueueFactory(TreeOrderQueueFactory.INSTANCE, dispatcher);
+
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final OrderQueue<Order> blocker = factory.newMarketOrderQueue(new MarketDispatchFilter(true));
+        blocker.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                busy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        blocker.enqueue(new MarketBuyOrder("acct", 10, TICKER));
+        assertTrue(busy.await(10, TimeUnit.SECONDS));
+
+        final OrderManagerImpl manager = new OrderManagerImpl(TICKER, 100, factory);
+        final AtomicInteger dispatched = new AtomicInteger();
+        manager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.incrementAndGet();
+            }
+        });
+        manager.queueOrder(new StopBuyOrder("acct", 10, TICKER, 105));
+        manager.queueOrder(new StopSellOrder("acct", 10, TICKER, 95));
+
+        manager.adjustPrice(94, 106, 100);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertEquals(2, dispatched.get());
+    }
+}
@@ -0,0 +1,54 @@
+package edu.uw.danco;
+
+import edu.uw.danco.broker.ConcurrentOrderQueueImpl;
+import edu.uw.danco.broker.StopBuyOrderComparator;
+import edu.uw.danco.broker.StopSellOrderComparator;
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+import test.AbstractOrderQueueTest;
+
+/**
+ * Concrete subclass of AbstractQueueTest, runs the standard order queue tests against the thread safe
+ * ConcurrentOrderQueueImpl.
+ */
+public class ConcurrentOrderQueueTest extends AbstractOrderQueueTest {
+    /**
+     * Creates a ConcurrentOrderQueueImpl ordering StopBuyOrders.
+     *
+     * @param filter the OrderDispatch filter to be used
+     *
+     * @return a new OrderQueue instance
+     */
+    protected final OrderQueue<StopBuyOrder> createStopBuyOrderQueue(
+                        final OrderDispatchFilter<?, StopBuyOrder> filter) {
+        return new ConcurrentOrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, filter);
+    }
+
+    /**
+     * Creates a ConcurrentOrderQueueImpl ordering StopSellOrders.
+     *
+     * @param filter the OrderDispatch filter to be used
+     *
+     * @return a new OrderQueue instance
+     */
+    protected final OrderQueue<StopSellOrder> createStopSellOrderQueue(
+                          final OrderDispatchFilter<?, StopSellOrder> filter) {
+        return new ConcurrentOrderQueueImpl<StopSellOrder>(StopSellOrderComparator.INSTANCE, filter);
+    }
+
+    /**
+     * Creates a ConcurrentOrderQueueImpl, the queue will order the Orders according to their natural ordering.
+     *
+     * @param filter the OrderDispatch filter to be used
+     *
+     * @return a new OrderQueue instance
+     */
+    protected final OrderQueue<Order> createAnyOrderQueue(
+                            final OrderDispatchFilter<?, Order> filter) {
+        return new ConcurrentOrderQueueImpl<Order>(filter);
+    }
+}
@@ -0,0 +1,158 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.EventRingBuffer;
+import edu.uw.danco.broker.WaitStrategy;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.ExchangeListener;
+
+/**
+ * Tests the exchange event ring buffer.
+ */
+public final class EventRingBufferTest {
+    /** Number of events published, many times the buffer capacity */
+    private static final int EVENTS = 100000;
+
+    /** Buffer capacity */
+    private static final int CAPACITY = 64;
+
+    /**
+     * Tests the busy spin strategy.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testBusySpin() throws Exception {
+        checkDelivery(WaitStrategy.BUSY_SPIN);
+    }
+
+    /**
+     * Tests the yielding strategy.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testYield() throws Exception {
+        checkDelivery(WaitStrategy.YIELD);
+    }
+
+    /**
+     * Tests the parking strategy.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testPark() throws Exception {
+        checkDelivery(WaitStrategy.PARK);
+    }
+
+    /**
+     * Publishes a repeating sequence of event kinds through a small buffer and verifies every event is delivered
+     * once, in order.
+     *
+     * @param waitStrategy the wait strategy under test
+     * @throws Exception if interrupted
+     */
+    private void checkDelivery(final WaitStrategy waitStrategy) throws Exception {
+        final int[] delivered = new int[1];
+        final boolean[] outOfOrder = new boolean[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        final EventRingBuffer ring = new EventRingBuffer(CAPACITY, waitStrategy, new ExchangeListener() {
+            @Override
+            public void exchangeOpened(final ExchangeEvent event) {
+                received(EventRingBuffer.EXCHANGE_OPENED);
+            }
+
+            @Override
+            public void exchangeClosed(final ExchangeEvent event) {
+                received(EventRingBuffer.EXCHANGE_CLOSED);
+            }
+
+            @Override
+            public void priceChanged(final ExchangeEvent event) {
+                received(EventRingBuffer.PRICE_CHANGED);
+            }
+
+            private void received(final int kind) {
+                if (kind != delivered[0] % 3) {
+                    outOfOrder[0] = true;
+                }
+                delivered[0]++;
+                if (delivered[0] == EVENTS) {
+                    done.countDown();
+                }
+            }
+        }, "test-events");
+
+        for (int i = 0; i < EVENTS; i++) {
+            ring.publish(i % 3, null);
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        ring.shutdown();
+        assertEquals(EVENTS, delivered[0]);
+        assertEquals(false, outOfOrder[0]);
+    }
+
+    /**
+     * Publishes from the consumer thread, more events than the buffer holds, while the buffer is full and verifies
+     * the consumer delivers them inline rather than waiting on itself.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testPublishFromConsumer() throws Exception {
+        final int[] prices = new int[1];
+        final int[] opens = new int[1];
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final EventRingBuffer[] ring = new EventRingBuffer[1];
+        ring[0] = new EventRingBuffer(CAPACITY, WaitStrategy.YIELD, new ExchangeListener() {
+            @Override
+            public void exchangeOpened(final ExchangeEvent event) {
+                opens[0]++;
+                if (opens[0] == 1) {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (int i = 0; i < CAPACITY * 2; i++) {
+                        ring[0].publish(EventRingBuffer.PRICE_CHANGED, null);
+                    }
+                }
+            }
+
+            @Override
+            public void exchangeClosed(final ExchangeEvent event) {
+                done.countDown();
+            }
+
+            @Override
+            public void priceChanged(final ExchangeEvent event) {
+                prices[0]++;
+            }
+        }, "test-events");
+
+        ring[0].publish(EventRingBuffer.EXCHANGE_OPENED, null);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        // the open event holds its slot until delivered, these fill the rest of the buffer
+        for (int i = 0; i < CAPACITY - 2; i++) {
+            ring[0].publish(EventRingBuffer.PRICE_CHANGED, null);
+        }
+        ring[0].publish(EventRingBuffer.EXCHANGE_CLOSED, null);
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        ring[0].shutdown();
+        assertEquals(CAPACITY * 2 + CAPACITY - 2, prices[0]);
+    }
+}
@@ -0,0 +1,133 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.BrokerConfig;
+import edu.uw.danco.broker.BrokerImpl;
+import edu.uw.danco.broker.ExchangeMirror;
+import edu.uw.danco.broker.SymbolTable;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.exchange.ExchangeEvent;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+
+/**
+ * Tests the broker's copy of the exchange state.
+ */
+public final class ExchangeMirrorTest {
+    /** Tickers traded on the test exchange */
+    private static final String[] TICKERS = {"BA", "F", "IBM"};
+
+    /** Price the test exchange quotes */
+    private static final int EXCHANGE_PRICE = 1000;
+
+    /** Number of calls made to the test exchange */
+    private final AtomicInteger exchangeCalls = new AtomicInteger();
+
+    /**
+     * Verifies a price is fetched from the exchange once, then served from the mirror.
+     */
+    @Test
+    public void testQuoteServedFromMirror() {
+        final ExchangeMirror mirror = new ExchangeMirror(exchange(), new SymbolTable(TICKERS));
+        final int callsAtStart = exchangeCalls.get();
+
+        assertEquals(EXCHANGE_PRICE, mirror.getQuote("BA").getPrice());
+        assertEquals(EXCHANGE_PRICE, mirror.getPrice("BA"));
+        assertEquals(callsAtStart + 1, exchangeCalls.get());
+
+        mirror.setPrice(2, 1500);
+        final StockQuote[] quotes = mirror.getQuotes(new String[] {"IBM", "XYZ", "BA"});
+        assertEquals(1500, quotes[0].getPrice());
+        assertNull(quotes[1]);
+        assertEquals(EXCHANGE_PRICE, quotes[2].getPrice());
+        assertEquals(callsAtStart + 1, exchangeCalls.get());
+    }
+
+    /**
+     * Verifies the market state and ticker list.
+     */
+    @Test
+    public void testMarketState() {
+        final ExchangeMirror mirror = new ExchangeMirror(exchange(), new SymbolTable(TICKERS));
+        assertFalse(mirror.isOpen());
+        mirror.setOpen(true);
+        assertTrue(mirror.isOpen());
+        assertEquals(TICKERS.length, mirror.getTickers().length);
+        assertEquals(-1, mirror.getPrice("XYZ"));
+    }
+
+    /**
+     * Verifies the broker serves the market state and ticker list from its mirror, following the exchange events.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testBrokerMarketStateFromMirror() throws Exception {
+        final BrokerConfig config = new BrokerConfig();
+        config.setMirrorExchange(true);
+        final BrokerImpl broker = new BrokerImpl("test", accountManager(), exchange(), config);
+        try {
+            final int callsAtStart = exchangeCalls.get();
+            assertFalse(broker.isMarketOpen());
+            assertArrayEquals(TICKERS, broker.getTickers());
+
+            broker.exchangeOpened(new ExchangeEvent(this));
+            assertTrue(broker.isMarketOpen());
+            broker.exchangeClosed(new ExchangeEvent(this));
+            assertFalse(broker.isMarketOpen());
+            assertEquals(callsAtStart, exchangeCalls.get());
+        } finally {
+            broker.close();
+        }
+    }
+
+    /**
+     * Creates an account manager, the tests place no orders.
+     *
+     * @return the account manager
+     */
+    private static AccountManager accountManager() {
+        return (AccountManager) Proxy.newProxyInstance(AccountManager.class.getClassLoader(),
+                new Class<?>[] {AccountManager.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a closed exchange quoting every ticker at the same price and counting its calls.
+     *
+     * @return the exchange
+     */
+    private StockExchange exchange() {
+        return (StockExchange) Proxy.newProxyInstance(StockExchange.class.getClassLoader(),
+                new Class<?>[] {StockExchange.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                exchangeCalls.incrementAndGet();
+                if ("getQuote".equals(method.getName())) {
+                    return new StockQuote((String) args[0], EXCHANGE_PRICE);
+                } else if ("getTickers".equals(method.getName())) {
+                    return TICKERS.clone();
+                } else if ("isOpen".equals(method.getName())) {
+                    return Boolean.FALSE;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,352 @@
+package edu.uw.danco;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+/**
+ * In process stand-in for a JDBC DataSource holding the account table, built from dynamic proxies. Understands the
+ * account lookup, upsert, column update, delete and reset statements, stores each row as the parameters of its
+ * upsert, and counts connections, prepared statements, commits and concurrently executing statements. Each statement
+ * execution sleeps briefly, as a database round trip would.
+ */
+public class FakeDataSource {
+    /** Simulated round trip time in milliseconds */
+    private static final long ROUND_TRIP_MILLIS = 1L;
+
+    /** The account table's columns, in the order of the upsert parameters */
+    private static final List<String> COLUMNS = Arrays.asList(
+            "account_name", "password_hash", "balance", "fullname", "phone", "email", "street", "city", "state", "zip",
+            "card_number", "issuer", "cardtype", "holder", "expires");
+
+    /** The rows by account name, each the parameters of its upsert indexed from 1 */
+    private final Map<String, Object[]> rows = new HashMap<String, Object[]>();
+
+    /** Number of connections opened */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    /** Number of statements prepared */
+    private final AtomicInteger prepared = new AtomicInteger();
+
+    /** Number of commits */
+    private final AtomicInteger commits = new AtomicInteger();
+
+    /** Statements containing this text fail, null if none fail */
+    private volatile String failingSql;
+
+    /** Number of full row upserts */
+    private int upserts;
+
+    /** Number of statements executing */
+    private final AtomicInteger executing = new AtomicInteger();
+
+    /** The most statements executing at once */
+    private final AtomicInteger maxExecuting = new AtomicInteger();
+
+    /**
+     * Creates the data source.
+     *
+     * @return the data source
+     */
+    public DataSource dataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getConnection".equals(method.getName())) {
+                    connections.incrementAndGet();
+                    return connection();
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Gets the number of connections opened.
+     *
+     * @return the connection count
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Gets the number of statements prepared.
+     *
+     * @return the prepared statement count
+     */
+    public int getPrepared() {
+        return prepared.get();
+    }
+
+    /**
+     * Gets the number of commits.
+     *
+     * @return the commit count
+     */
+    public int getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * Makes the statements containing some text fail with an SQLException.
+     *
+     * @param sqlFragment the text, null to stop failing statements
+     */
+    public void setFailingSql(final String sqlFragment) {
+        failingSql = sqlFragment;
+    }
+
+    /**
+     * Gets a stored column of an account.
+     *
+     * @param accountName the account name
+     * @param column the column name
+     * @return the value
+     */
+    public synchronized Object storedColumn(final String accountName, final String column) {
+        return rows.get(accountName)[COLUMNS.indexOf(column) + 1];
+    }
+
+    /**
+     * Gets the number of full row upserts.
+     *
+     * @return the upsert count
+     */
+    public synchronized int getUpserts() {
+        return upserts;
+    }
+
+    /**
+     * Gets the most statements executing at once.
+     *
+     * @return the maximum concurrency
+     */
+    public int getMaxExecuting() {
+        return maxExecuting.get();
+    }
+
+    /**
+     * Gets the stored balance of an account.
+     *
+     * @param accountName the account name
+     * @return the balance
+     */
+    public synchronized int storedBalance(final String accountName) {
+        return (Integer) rows.get(accountName)[3];
+    }
+
+    /**
+     * Creates a connection.
+     *
+     * @return the connection
+     */
+    private Connection connection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("prepareStatement".equals(name)) {
+                    prepared.incrementAndGet();
+                    return statement((String) args[0]);
+                } else if ("commit".equals(name)) {
+                    commits.incrementAndGet();
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Creates a prepared statement.
+     *
+     * @param sql the statement's SQL
+     * @return the statement
+     */
+    private PreparedStatement statement(final String sql) {
+        final Object[][] params = {new Object[16]};
+        final List<Object[]> batch = new ArrayList<Object[]>();
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
+                final String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length == 2) {
+                    params[0][(Integer) args[0]] = args[1];
+                } else if ("clearParameters".equals(name)) {
+                    params[0] = new Object[16];
+                } else if ("addBatch".equals(name)) {
+                    batch.add(params[0].clone());
+                } else if ("clearBatch".equals(name)) {
+                    batch.clear();
+                } else if ("executeQuery".equals(name)) {
+                    final Object[] row = execute(sql, params[0]);
+                    return resultSet(selectedColumns(sql), row);
+                } else if ("executeUpdate".equals(name)) {
+                    final Object[] row = execute(sql, params[0]);
+                    return row == null && sql.trim().toUpperCase().startsWith("UPDATE") ? 0 : 1;
+                } else if ("executeBatch".equals(name)) {
+                    for (Object[] batchParams : batch) {
+                        execute(sql, batchParams);
+                    }
+                    final int[] counts = new int[batch.size()];
+                    batch.clear();
+                    return counts;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Executes a statement against the rows.
+     *
+     * @param sql the statement's SQL
+     * @param params the parameters
+     * @return the row looked up, or null
+     * @throws InterruptedException if interrupted during the round trip
+     */
+    private Object[] execute(final String sql, final Object[] params) throws InterruptedException, SQLException {
+        final String failing = failingSql;
+        if (failing != null && sql.contains(failing)) {
+            throw new SQLException("Injected failure");
+        }
+        final int now = executing.incrementAndGet();
+        int max = maxExecuting.get();
+        while (now > max && !maxExecuting.compareAndSet(max, now)) {
+            max = maxExecuting.get();
+        }
+        try {
+            Thread.sleep(ROUND_TRIP_MILLIS);
+            synchronized (this) {
+                final String statement = sql.trim().toUpperCase();
+                if (statement.startsWith("SELECT")) {
+                    return rows.get(params[1]);
+                } else if (statement.startsWith("INSERT")) {
+                    upserts++;
+                    rows.put((String) params[1], params.clone());
+                } else if (statement.startsWith("UPDATE")) {
+                    return update(sql, params);
+                } else if (statement.contains("WHERE")) {
+                    rows.remove(params[1]);
+                } else {
+                    rows.clear();
+                }
+                return null;
+            }
+        } finally {
+            executing.decrementAndGet();
+        }
+    }
+
+    /**
+     * Applies an update of the form SET column = ?, ... or SET column = column + ?, keyed by the account name
+     * parameter following the assignments.
+     *
+     * @param sql the statement's SQL
+     * @param params the parameters
+     * @return the updated row, or null if no row matched
+     */
+    private Object[] update(final String sql, final Object[] params) {
+        final String upper = sql.toUpperCase();
+        final String[] assignments = sql.substring(upper.indexOf("SET") + 3, upper.indexOf("WHERE")).split(",");
+        final Object[] row = rows.get(params[assignments.length + 1]);
+        if (row != null) {
+            for (int i = 0; i < assignments.length; i++) {
+                final String[] sides = assignments[i].split("=");
+                final int column = COLUMNS.indexOf(sides[0].trim()) + 1;
+                if (sides[1].contains("+")) {
+                    row[column] = (Integer) row[column] + (Integer) params[i + 1];
+                } else {
+                    row[column] = params[i + 1];
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Gets the upsert parameter index of each column selected by a query.
+     *
+     * @param sql the query
+     * @return the parameter indexes, in select list order
+     */
+    private static int[] selectedColumns(final String sql) {
+        final String upper = sql.toUpperCase();
+        final String[] names = sql.substring(upper.indexOf("SELECT") + 6, upper.indexOf("FROM")).split(",");
+        final int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = COLUMNS.indexOf(names[i].trim()) + 1;
+        }
+        return columns;
+    }
+
+    /**
+     * Creates a result set over at most one row.
+     *
+     * @param columns the upsert parameter index of each selected column
+     * @param row the row, or null for an empty result
+     * @return the result set
+     */
+    private static ResultSet resultSet(final int[] columns, final Object[] row) {
+        final boolean[] read = {false};
+        return proxy(ResultSet.class, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                final String name = method.getName();
+                if ("next".equals(name)) {
+                    final boolean hasRow = row != null && !read[0];
+                    read[0] = true;
+                    return hasRow;
+                } else if (name.startsWith("get") && args != null && args.length == 1
+                           && args[0] instanceof Integer) {
+                    final Object value = row[columns[(Integer) args[0] - 1]];
+                    return value == null ? defaultValue(method) : value;
+                }
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * Gets the value returned by a method the stand-in does not implement.
+     *
+     * @param method the method
+     * @return the default for the return type
+     */
+    private static Object defaultValue(final Method method) {
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a proxy implementing a JDBC interface.
+     *
+     * @param type the interface
+     * @param handler the handler
+     * @param <T> the interface type
+     * @return the proxy
+     */
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(), new Class<?>[] {type},
+                                                handler));
+    }
+}
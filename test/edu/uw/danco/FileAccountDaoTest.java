@@ -0,0 +1,112 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.LazyAccountImpl;
+import edu.uw.danco.dao.FileAccountDaoImpl;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests the file DAO's balance file, which is patched in place without rewriting the account's zip file. Runs from
+ * the project directory, the DAO reads context.xml and writes to the accounts folder.
+ */
+public final class FileAccountDaoTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fbalance";
+
+    /** Test account's password hash */
+    private static final byte[] HASH = {'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    /** Test account's initial balance */
+    private static final int INIT_BALANCE = 100000;
+
+    /** Test account's full name */
+    private static final String FULL_NAME = "Fred Balance";
+
+    /** The DAO under test */
+    private FileAccountDaoImpl dao;
+
+    /**
+     * Writes the test account.
+     *
+     * @throws Exception if the account cannot be written
+     */
+    @Before
+    public void setUp() throws Exception {
+        dao = new FileAccountDaoImpl();
+        dao.reset();
+        final AccountImpl account = new AccountImpl(ACCT_NAME, HASH, INIT_BALANCE);
+        account.setFullName(FULL_NAME);
+        dao.setAccount(account);
+    }
+
+    /**
+     * Adjusts the balance and verifies only the balance file changes, and that adjusting a missing account fails.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testAdjustBalancePatchesBalanceFile() throws Exception {
+        final File zip = new File(String.format(FileAccountDaoImpl.ZIP_FILE_NAME, "accounts", ACCT_NAME));
+        final long zipLength = zip.length();
+        final long zipModified = zip.lastModified();
+
+        dao.adjustBalance(ACCT_NAME, -250);
+        dao.adjustBalance(ACCT_NAME, 50);
+
+        assertEquals(INIT_BALANCE - 200, readBalanceFile());
+        assertEquals(zipLength, zip.length());
+        assertEquals(zipModified, zip.lastModified());
+        assertEquals(INIT_BALANCE - 200, dao.getAccount(ACCT_NAME).getBalance());
+        assertEquals(FULL_NAME, dao.getAccount(ACCT_NAME).getFullName());
+        try {
+            dao.adjustBalance("fmissing", 10);
+            fail("Adjusted a missing account");
+        } catch (AccountException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Writes an account view whose profile is not loaded and verifies only its balance is written, without reading
+     * the profile.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testUnloadedViewWritesBalanceOnly() throws Exception {
+        final LazyAccountImpl view = (LazyAccountImpl) dao.getAccountView(ACCT_NAME);
+        view.setBalance(INIT_BALANCE - 500);
+        dao.setAccount(view);
+
+        assertFalse(view.isProfileLoaded());
+        assertEquals(INIT_BALANCE - 500, readBalanceFile());
+        assertEquals(FULL_NAME, dao.getAccount(ACCT_NAME).getFullName());
+    }
+
+    /**
+     * Reads the test account's balance file.
+     *
+     * @return the stored balance
+     * @throws Exception if the file cannot be read
+     */
+    private int readBalanceFile() throws Exception {
+        final DataInputStream in = new DataInputStream(new FileInputStream(
+                String.format(FileAccountDaoImpl.BALANCE_FILE_NAME, "accounts", ACCT_NAME)));
+        try {
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.dao.GroupCommitter;
+
+/**
+ * Tests combining concurrent account writes into batches.
+ */
+public final class GroupCommitterTest {
+    /** Test accounts' password hash */
+    private static final byte[] HASH = new byte[] {1, 2, 3};
+
+    /** Number of writing threads */
+    private static final int WRITERS = 8;
+
+    /** Number of writes made by each thread */
+    private static final int WRITES_PER_WRITER = 50;
+
+    /**
+     * Writes from several threads at once and verifies every write is stored in fewer batches than writes.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testConcurrentWritesAreGrouped() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final GroupCommitter committer = new GroupCommitter(dao, 5L, 64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] writers = new Thread[WRITERS];
+        final Exception[] failure = new Exception[1];
+        for (int w = 0; w < WRITERS; w++) {
+            final String name = "account" + w + "xx";
+            writers[w] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 1; i <= WRITES_PER_WRITER; i++) {
+                            committer.write(new AccountImpl(name, HASH, i));
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            writers[w].start();
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(null, failure[0]);
+        assertEquals(WRITERS * WRITES_PER_WRITER, dao.getWrites());
+        assertEquals(WRITERS * WRITES_PER_WRITER, committer.getAccountCount());
+        assertEquals(committer.getBatchCount(), dao.getBatches());
+        assertTrue(dao.getBatches() < WRITERS * WRITES_PER_WRITER / 2);
+        for (int w = 0; w < WRITERS; w++) {
+            assertEquals(WRITES_PER_WRITER, dao.storedBalance("account" + w + "xx"));
+        }
+    }
+}
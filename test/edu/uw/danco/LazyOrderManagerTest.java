@@ -0,0 +1,250 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.BrokerConfig;
+import edu.uw.danco.broker.BrokerImpl;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.ext.framework.account.AccountManager;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Tests the broker's order managers are created on first use and released once idle.
+ */
+public final class LazyOrderManagerTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Tickers traded on the test exchange */
+    private static final String[] TICKERS = {"BA", "F", "IBM"};
+
+    /** Ticker the test exchange fails to quote */
+    private static final String UNQUOTED_TICKER = "IBM";
+
+    /** Price the test exchange quotes */
+    private static final int EXCHANGE_PRICE = 1000;
+
+    /** Idle time after which an order manager is released */
+    private static final long IDLE_MILLIS = 20;
+
+    /** Number of quotes requested from the test exchange, by ticker */
+    private final Map<String, AtomicInteger> quotes = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * Verifies no order manager is created until an order for its ticker is placed, and the order is then found.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testCreatedOnFirstUse() throws Exception {
+        final BrokerImpl broker = new BrokerImpl("test", accountManager(), exchange(), config(0));
+        try {
+            assertEquals(0, quoteCount("BA"));
+            assertEquals(0, quoteCount("F"));
+
+            final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 100);
+            broker.placeOrder(order);
+            assertTrue(quoteCount("BA") > 0);
+            assertEquals(0, quoteCount("F"));
+            assertSame(order, broker.findOrder("BA", order.getOrderId()));
+
+            final int created = quoteCount("BA");
+            broker.placeOrder(new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 200));
+            assertEquals(created, quoteCount("BA"));
+        } finally {
+            broker.close();
+        }
+    }
+
+    /**
+     * Verifies an order manager is released once its queues have been empty for the idle time, and recreated by the
+     * next order for its ticker.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testIdleManagerEvicted() throws Exception {
+        final BrokerImpl broker = new BrokerImpl("test", accountManager(), exchange(), config(IDLE_MILLIS));
+        try {
+            final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 100);
+            broker.placeOrder(order);
+            final int created = quoteCount("BA");
+
+            // an order manager holding an order is never released
+            Thread.sleep(IDLE_MILLIS * 10);
+            assertSame(order, broker.findOrder("BA", order.getOrderId()));
+            assertSame(order, broker.cancelOrder("BA", order.getOrderId()));
+
+            Thread.sleep(IDLE_MILLIS * 10);
+            final StopBuyOrder next = new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 100);
+            broker.placeOrder(next);
+            assertTrue(quoteCount("BA") > created);
+            assertSame(next, broker.findOrder("BA", next.getOrderId()));
+        } finally {
+            broker.close();
+        }
+    }
+
+    /**
+     * Places and cancels orders while the evictor releases the order manager as soon as it is empty, verifying every
+     * order lands in a registered order manager rather than one being released.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testOrderRacingEviction() throws Exception {
+        final BrokerImpl broker = new BrokerImpl("test", accountManager(), exchange(), config(1));
+        try {
+            final long end = System.currentTimeMillis() + 500;
+            int placed = 0;
+            while (System.currentTimeMillis() < end) {
+                final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 100);
+                broker.placeOrder(order);
+                assertSame(order, broker.findOrder("BA", order.getOrderId()));
+                assertSame(order, broker.cancelOrder("BA", order.getOrderId()));
+                placed++;
+                if (placed % 64 == 0) {
+                    Thread.sleep(1);
+                }
+            }
+            assertTrue(quoteCount("BA") > 1);
+        } finally {
+            broker.close();
+        }
+    }
+
+    /**
+     * Verifies a sharded stop order is queued before placeOrder returns, so it is found and cancelled at once, and a
+     * failure to queue it is reported to the caller.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testShardedPlacement() throws Exception {
+        final BrokerConfig config = config(0);
+        config.setOrderManagerShards(2);
+        final BrokerImpl broker = new BrokerImpl("test", accountManager(), exchange(), config);
+        try {
+            for (int i = 0; i < 100; i++) {
+                final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, TICKERS[i % 2], EXCHANGE_PRICE + 100);
+                broker.placeOrder(order);
+                assertSame(order, broker.cancelOrder(order.getStockTicker(), order.getOrderId()));
+            }
+
+            try {
+                broker.placeOrder(new StopBuyOrder(ACCT_NAME, 10, UNQUOTED_TICKER, EXCHANGE_PRICE + 100));
+                fail("Expected the order manager creation to fail");
+            } catch (IllegalStateException e) {
+                // expected, the exchange cannot quote the ticker
+            }
+        } finally {
+            broker.close();
+        }
+    }
+
+    /**
+     * Verifies an order manager is idle only once its queues have been empty for the idle time, and any order resets
+     * the idle time.
+     */
+    @Test
+    public void testIsIdle() {
+        final OrderManagerImpl manager = new OrderManagerImpl("BA", EXCHANGE_PRICE);
+        assertFalse(manager.isIdle(1000, 100));
+        assertFalse(manager.isIdle(1099, 100));
+        assertTrue(manager.isIdle(1100, 100));
+
+        final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, "BA", EXCHANGE_PRICE + 100);
+        manager.queueOrder(order);
+        assertFalse(manager.isIdle(1200, 100));
+        assertSame(order, manager.cancelOrder(order.getOrderId()));
+        assertFalse(manager.isIdle(1300, 100));
+        assertTrue(manager.isIdle(1400, 100));
+    }
+
+    /**
+     * Creates the broker configuration, with lazily created order managers.
+     *
+     * @param idleMillis the idle time after which order managers are released, 0 to keep them
+     * @return the configuration
+     */
+    private static BrokerConfig config(final long idleMillis) {
+        final BrokerConfig config = new BrokerConfig();
+        config.setLazyOrderManagers(true);
+        config.setOrderManagerIdleMillis(idleMillis);
+        return config;
+    }
+
+    /**
+     * Gets the number of quotes requested for a ticker.
+     *
+     * @param ticker the ticker
+     * @return the number of quotes requested
+     */
+    private int quoteCount(final String ticker) {
+        final AtomicInteger count = quotes.get(ticker);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Creates an account manager, the tests place no orders that execute.
+     *
+     * @return the account manager
+     */
+    private static AccountManager accountManager() {
+        return (AccountManager) Proxy.newProxyInstance(AccountManager.class.getClassLoader(),
+                new Class<?>[] {AccountManager.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Creates a closed exchange quoting every ticker but one at the same price and counting the quotes by ticker.
+     *
+     * @return the exchange
+     */
+    private StockExchange exchange() {
+        return (StockExchange) Proxy.newProxyInstance(StockExchange.class.getClassLoader(),
+                new Class<?>[] {StockExchange.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getQuote".equals(method.getName())) {
+                    final String ticker = (String) args[0];
+                    if (UNQUOTED_TICKER.equals(ticker)) {
+                        throw new IllegalStateException("No quote for " + ticker);
+                    }
+                    AtomicInteger count = quotes.get(ticker);
+                    if (count == null) {
+                        quotes.put(ticker, new AtomicInteger());
+                        count = quotes.get(ticker);
+                    }
+                    count.incrementAndGet();
+                    return new StockQuote(ticker, EXCHANGE_PRICE);
+                } else if ("getTickers".equals(method.getName())) {
+                    return TICKERS.clone();
+                } else if ("isOpen".equals(method.getName())) {
+                    return Boolean.FALSE;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.MarketOpenDrainer;
+import edu.uw.danco.broker.OrderQueueImpl;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Tests the parallel execution of the market open backlog.
+ */
+public final class MarketOpenDrainerTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Number of accounts placing orders */
+    private static final int ACCOUNTS = 50;
+
+    /** Number of orders placed by each account */
+    private static final int ORDERS_PER_ACCOUNT = 40;
+
+    /**
+     * Queues orders for many accounts while the market is closed, drains them on four threads and verifies every
+     * order executed, each account's orders in the order they were queued.
+     * @throws Exception if the drain fails
+     */
+    @Test
+    public void testDrainKeepsAccountOrder() throws Exception {
+        final Map<String, List<Order>> executed = new ConcurrentHashMap<String, List<Order>>();
+        final OrderProcessor trader = new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                List<Order> orders = executed.get(order.getAccountId());
+                if (orders == null) {
+                    orders = new ArrayList<Order>();
+                    executed.put(order.getAccountId(), orders);
+                }
+                orders.add(order);
+            }
+        };
+        final MarketOpenDrainer drainer = new MarketOpenDrainer(trader, 4, 64, "test");
+        final MarketDispatchFilter filter = new MarketDispatchFilter(false);
+        final OrderQueueImpl<Order> queue = new OrderQueueImpl<Order>(filter);
+        queue.setOrderProcessor(drainer);
+
+        final List<Order> placed = new ArrayList<Order>();
+        for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+            for (int acct = 0; acct < ACCOUNTS; acct++) {
+                final Order order = new MarketBuyOrder("acct" + acct, 10, TICKER);
+                placed.add(order);
+                queue.enqueue(order);
+            }
+        }
+        assertTrue(executed.isEmpty());
+
+        final Future<?> drain = drainer.drain(new Runnable() {
+            @Override
+            public void run() {
+                filter.setThreshold(Boolean.TRUE);
+            }
+        });
+        drain.get(10, TimeUnit.SECONDS);
+        drainer.shutdown();
+
+        assertEquals(ACCOUNTS, executed.size());
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            final List<Order> orders = executed.get("acct" + acct);
+            assertEquals(ORDERS_PER_ACCOUNT, orders.size());
+            for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+                assertEquals(placed.get(i * ACCOUNTS + acct), orders.get(i));
+            }
+        }
+        assertEquals(null, queue.peek());
+    }
+
+
+    /**
+     * Verifies drain returns while the backlog is still executing, and that the backlog is executed in chunks no
+     * larger than threads * batchSize.
+     * @throws Exception if the drain fails
+     */
+    @Test
+    public void testDrainReturnsAndExecutesInChunks() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger released = new AtomicInteger();
+        final List<Integer> releasedAtExecution = new ArrayList<Integer>();
+        final OrderProcessor trader = new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                synchronized (releasedAtExecution) {
+                    releasedAtExecution.add(Integer.valueOf(released.get()));
+                }
+            }
+        };
+        final MarketOpenDrainer drainer = new MarketOpenDrainer(trader, 2, 5, "test");
+        final MarketDispatchFilter filter = new MarketDispatchFilter(false);
+        final OrderQueueImpl<Order> queue = new OrderQueueImpl<Order>(filter);
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                released.incrementAndGet();
+                drainer.process(order);
+            }
+        });
+        final int orders = 100;
+        for (int i = 0; i < orders; i++) {
+            queue.enqueue(new MarketBuyOrder("acct" + i, 10, TICKER));
+        }
+
+        final Future<?> drain = drainer.drain(new Runnable() {
+            @Override
+            public void run() {
+                filter.setThreshold(Boolean.TRUE);
+                queue.dispatchOrders();
+            }
+        });
+        assertTrue(!drain.isDone());
+        release.countDown();
+        drain.get(10, TimeUnit.SECONDS);
+        drainer.shutdown();
+
+        assertEquals(orders, releasedAtExecution.size());
+        assertEquals(2 * 5, releasedAtExecution.get(0).intValue());
+    }
+
+    /**
+     * Closes the market immediately after opening it, before the coordinator has run the open, and verifies the
+     * market queue is left closed.
+     * @throws Exception if the drain fails
+     */
+    @Test
+    public void testOpenThenCloseLeavesMarketClosed() throws Exception {
+        final MarketOpenDrainer drainer = new MarketOpenDrainer(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+            }
+        }, 2, 5, "test");
+        final MarketDispatchFilter filter = new MarketDispatchFilter(false);
+        final OrderQueueImpl<Order> queue = new OrderQueueImpl<Order>(filter);
+        queue.setOrderProcessor(drainer);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        drainer.runAfterDrains(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        drainer.drain(new Runnable() {
+            @Override
+            public void run() {
+                filter.setThreshold(Boolean.TRUE);
+            }
+        });
+        final Future<?> close = drainer.runAfterDrains(new Runnable() {
+            @Override
+            public void run() {
+                filter.setThreshold(Boolean.FALSE);
+            }
+        });
+        release.countDown();
+        close.get(10, TimeUnit.SECONDS);
+        drainer.shutdown();
+
+        assertEquals(Boolean.FALSE, filter.getThreshold());
+        queue.enqueue(new MarketBuyOrder("acct", 10, TICKER));
+        assertTrue(queue.peek() != null);
+    }
+}
@@ -0,0 +1,130 @@
+package edu.uw.danco;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.dao.BatchAccountDao;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * In memory AccountDao for tests, stores a copy of the name, password hash and balance of each account and counts
+ * the reads, writes and batches.
+ */
+public class MemoryAccountDao implements BatchAccountDao {
+    /** The stored accounts */
+    private final Map<String, Account> accounts = new HashMap<String, Account>();
+
+    /** Number of getAccount calls */
+    private int reads;
+
+    /** Number of accounts written */
+    private int writes;
+
+    /** Number of setAccounts calls */
+    private int batches;
+
+    /** If true setAccount fails */
+    private boolean failWrites;
+
+    @Override
+    public synchronized Account getAccount(final String accountName) {
+        reads++;
+        final Account stored = accounts.get(accountName);
+        return stored == null ? null : copy(stored);
+    }
+
+    @Override
+    public synchronized void setAccount(final Account account) throws AccountException {
+        if (failWrites) {
+            throw new AccountException("Write failed");
+        }
+        writes++;
+        accounts.put(account.getName(), copy(account));
+    }
+
+    @Override
+    public synchronized void setAccounts(final Collection<? extends Account> batch) {
+        batches++;
+        for (Account account : batch) {
+            writes++;
+            accounts.put(account.getName(), copy(account));
+        }
+    }
+
+    @Override
+    public synchronized void deleteAccount(final String accountName) {
+        accounts.remove(accountName);
+    }
+
+    @Override
+    public synchronized void reset() {
+        accounts.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Gets the number of getAccount calls.
+     *
+     * @return the read count
+     */
+    public synchronized int getReads() {
+        return reads;
+    }
+
+    /**
+     * Gets the number of accounts written, singly or in batches.
+     *
+     * @return the write count
+     */
+    public synchronized int getWrites() {
+        return writes;
+    }
+
+    /**
+     * Gets the number of setAccounts calls.
+     *
+     * @return the batch count
+     */
+    public synchronized int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Makes setAccount fail, or succeed again.
+     *
+     * @param failWrites true to make setAccount fail
+     */
+    public synchronized void setFailWrites(final boolean failWrites) {
+        this.failWrites = failWrites;
+    }
+
+    /**
+     * Gets the stored balance of an account without counting a read.
+     *
+     * @param accountName the account name
+     * @return the stored balance
+     */
+    public synchronized int storedBalance(final String accountName) {
+        return accounts.get(accountName).getBalance();
+    }
+
+    /**
+     * Copies the stored fields of an account.
+     *
+     * @param account the account
+     * @return the copy
+     */
+    private static Account copy(final Account account) {
+        try {
+            return new AccountImpl(account.getName(), account.getPasswordHash(), account.getBalance());
+        } catch (AccountException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.BrokerOrderQueue;
+import edu.uw.danco.broker.ConcurrentOrderQueueFactory;
+import edu.uw.danco.broker.LongObjectMap;
+import edu.uw.danco.broker.OrderQueueFactory;
+import edu.uw.danco.broker.PriceLevelOrderQueueFactory;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.danco.broker.TreeOrderQueueFactory;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Tests order lookup and cancellation by order id.
+ */
+public final class OrderCancelTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Initial price */
+    private static final int INIT_PRICE = 1000;
+
+    /** Number of orders placed */
+    private static final int ORDERS = 100;
+
+    /**
+     * Tests the TreeSet backed queue.
+     */
+    @Test
+    public void testTreeQueueCancel() {
+        checkCancel(TreeOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests the concurrent queue.
+     */
+    @Test
+    public void testConcurrentQueueCancel() {
+        checkCancel(ConcurrentOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests the price level order book.
+     */
+    @Test
+    public void testPriceLevelQueueCancel() {
+        checkCancel(PriceLevelOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Compares the primitive keyed map against a HashMap under random puts and removes.
+     */
+    @Test
+    public void testLongObjectMap() {
+        final Random random = new Random(17);
+        final LongObjectMap<Long> map = new LongObjectMap<Long>();
+        final Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 100000; i++) {
+            final long key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, key * 3), map.put(key, key * 3));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 2000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    /**
+     * Places orders at a few prices, cancels every third one, then raises the price so every order is dispatchable
+     * and verifies only the remaining orders are dispatched.
+     *
+     * @param queueFactory the factory for the queue under test
+     */
+    private void checkCancel(final OrderQueueFactory queueFactory) {
+        final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(INIT_PRICE);
+        final BrokerOrderQueue<StopBuyOrder> queue =
+                (BrokerOrderQueue<StopBuyOrder>) queueFactory.newStopBuyOrderQueue(filter);
+        final List<Order> dispatched = new ArrayList<Order>();
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.add(order);
+            }
+        });
+
+        final List<StopBuyOrder> orders = new ArrayList<StopBuyOrder>();
+        for (int i = 0; i < ORDERS; i++) {
+            final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 1 + i % 5);
+            orders.add(order);
+            queue.enqueue(order);
+        }
+
+        int cancelled = 0;
+        for (int i = 0; i < ORDERS; i += 3) {
+            final StopBuyOrder order = orders.get(i);
+            assertSame(order, queue.find(order.getOrderId()));
+            assertSame(order, queue.cancel(order.getOrderId()));
+            assertNull(queue.find(order.getOrderId()));
+            assertNull(queue.cancel(order.getOrderId()));
+            cancelled++;
+        }
+
+        filter.setThreshold(INIT_PRICE + 10);
+        assertEquals(ORDERS - cancelled, dispatched.size());
+        for (Order order : dispatched) {
+            assertEquals(false, orders.indexOf(order) % 3 == 0);
+            assertNull(queue.find(order.getOrderId()));
+        }
+        assertNull(queue.peek());
+    }
+}
@@ -0,0 +1,152 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.ConcurrentOrderQueueImpl;
+import edu.uw.danco.broker.StopBuyOrderComparator;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Contention benchmark for the concurrent order queue, several producer threads enqueue stop buy orders while the
+ * main thread moves the price up and down, causing orders to be dispatched. Verifies no orders are lost and logs the
+ * throughput.
+ */
+public final class OrderQueueContentionTest {
+    /** Class' logger. */
+    private static final Logger logger = Logger.getLogger(OrderQueueContentionTest.class.getName());
+
+    /** Number of producer threads */
+    private static final int PRODUCERS = 8;
+
+    /** Orders placed by each producer */
+    private static final int ORDERS_PER_PRODUCER = 20000;
+
+    /** Base price of the orders */
+    private static final int BASE_PRICE = 1000;
+
+    /** Range of the order prices */
+    private static final int PRICE_RANGE = 100;
+
+    /**
+     * Runs the producers against the queue while the price moves, then raises the price to dispatch all remaining
+     * orders.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testConcurrentEnqueueAndDispatch() throws Exception {
+        final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(0);
+        final OrderQueue<StopBuyOrder> queue =
+                new ConcurrentOrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, filter);
+        final AtomicInteger processed = new AtomicInteger();
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                processed.incrementAndGet();
+            }
+        });
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ORDERS_PER_PRODUCER; i++) {
+                            queue.enqueue(new StopBuyOrder("acct" + producer, 1 + i % 10, "BA",
+                                                           BASE_PRICE + (i % PRICE_RANGE)));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        final long startTime = System.nanoTime();
+        start.countDown();
+        int tick = 0;
+        while (done.getCount() > 0) {
+            filter.setThreshold(BASE_PRICE + (tick++ % PRICE_RANGE));
+        }
+        filter.setThreshold(BASE_PRICE + PRICE_RANGE);
+        final long elapsed = System.nanoTime() - startTime;
+
+        final int total = PRODUCERS * ORDERS_PER_PRODUCER;
+        logger.info(String.format("%d orders, %d producers, %d ticks in %d ms (%.0f orders/s)",
+                                  total, PRODUCERS, tick, elapsed / 1000000,
+                                  total / (elapsed / 1.0e9)));
+        assertEquals(total, processed.get());
+        assertEquals(null, queue.dequeue());
+    }
+
+
+    /**
+     * Verifies enqueues from several threads run in parallel. The comparator holds each producer's first comparison
+     * until every producer is inside an enqueue, which only happens if the enqueues are not serialized.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testEnqueuesRunInParallel() throws Exception {
+        final CountDownLatch inside = new CountDownLatch(PRODUCERS);
+        final AtomicInteger overlapped = new AtomicInteger();
+        final ThreadLocal<Boolean> held = new ThreadLocal<Boolean>();
+        final Comparator<StopBuyOrder> gate = new Comparator<StopBuyOrder>() {
+            @Override
+            public int compare(final StopBuyOrder o1, final StopBuyOrder o2) {
+                if (Thread.currentThread().getName().startsWith("producer") && held.get() == null) {
+                    held.set(Boolean.TRUE);
+                    inside.countDown();
+                    try {
+                        if (inside.await(5, TimeUnit.SECONDS)) {
+                            overlapped.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return StopBuyOrderComparator.INSTANCE.compare(o1, o2);
+            }
+        };
+        final OrderQueue<StopBuyOrder> queue =
+                new ConcurrentOrderQueueImpl<StopBuyOrder>(gate, new StopBuyOrderDispatchFilter(0));
+        queue.enqueue(new StopBuyOrder("acct", 10, "BA", BASE_PRICE));
+
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        queue.enqueue(new StopBuyOrder("acct" + producer, 10, "BA", BASE_PRICE + 1 + producer));
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "producer-" + p).start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(PRODUCERS, overlapped.get());
+    }
+}
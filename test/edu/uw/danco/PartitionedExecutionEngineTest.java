@@ -0,0 +1,129 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.PartitionedExecutionEngine;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Tests execution of orders on lanes partitioned by account.
+ */
+public final class PartitionedExecutionEngineTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Number of accounts placing orders */
+    private static final int ACCOUNTS = 50;
+
+    /** Number of orders placed by each account */
+    private static final int ORDERS_PER_ACCOUNT = 40;
+
+    /**
+     * Submits orders for many accounts through small lanes and verifies every order executed on its account's lane,
+     * each account's orders in submission order.
+     */
+    @Test
+    public void testLanesKeepAccountOrder() {
+        final Map<String, List<Order>> executed = new ConcurrentHashMap<String, List<Order>>();
+        final Map<String, String> threads = new ConcurrentHashMap<String, String>();
+        final OrderProcessor trader = new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                final String thread = Thread.currentThread().getName();
+                final String previous = threads.put(order.getAccountId(), thread);
+                assertTrue(previous == null || previous.equals(thread));
+                List<Order> orders = executed.get(order.getAccountId());
+                if (orders == null) {
+                    orders = new ArrayList<Order>();
+                    executed.put(order.getAccountId(), orders);
+                }
+                orders.add(order);
+            }
+        };
+        final PartitionedExecutionEngine engine = new PartitionedExecutionEngine(trader, 4, 8, "test");
+
+        final List<Order> placed = new ArrayList<Order>();
+        for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+            for (int acct = 0; acct < ACCOUNTS; acct++) {
+                final Order order = new MarketBuyOrder("acct" + acct, 10, TICKER);
+                placed.add(order);
+                engine.process(order);
+            }
+        }
+        engine.shutdown();
+
+        assertEquals(ACCOUNTS, executed.size());
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            final List<Order> orders = executed.get("acct" + acct);
+            assertEquals(ORDERS_PER_ACCOUNT, orders.size());
+            for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+                assertEquals(placed.get(i * ACCOUNTS + acct), orders.get(i));
+            }
+            assertEquals("test-lane-" + engine.laneOf("acct" + acct), threads.get("acct" + acct));
+        }
+
+        long total = 0;
+        for (int lane = 0; lane < engine.getLaneCount(); lane++) {
+            assertEquals(engine.getSubmitted(lane), engine.getExecuted(lane));
+            assertEquals(0, engine.getQueueDepth(lane));
+            assertTrue(engine.getMaxQueueDepth(lane) <= 8);
+            total += engine.getExecuted(lane);
+        }
+        assertEquals(ACCOUNTS * ORDERS_PER_ACCOUNT, total);
+    }
+
+
+    /**
+     * Shuts the engine down while several threads are still submitting orders and verifies every order is executed,
+     * including orders queued on a lane as it stopped.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testShutdownWhileSubmitting() throws Exception {
+        for (int round = 0; round < 10; round++) {
+            final AtomicInteger executed = new AtomicInteger();
+            final PartitionedExecutionEngine engine = new PartitionedExecutionEngine(new OrderProcessor() {
+                @Override
+                public void process(final Order order) {
+                    executed.incrementAndGet();
+                }
+            }, 4, 8, "test");
+            final int submitters = 4;
+            final CountDownLatch started = new CountDownLatch(submitters);
+            final Thread[] threads = new Thread[submitters];
+            for (int t = 0; t < submitters; t++) {
+                final int submitter = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        for (int i = 0; i < ORDERS_PER_ACCOUNT * ACCOUNTS; i++) {
+                            engine.process(new MarketBuyOrder("acct" + (submitter * ACCOUNTS + i % ACCOUNTS), 10,
+                                                              TICKER));
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            started.await();
+            engine.shutdown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(submitters * ORDERS_PER_ACCOUNT * ACCOUNTS, executed.get());
+        }
+    }
+}
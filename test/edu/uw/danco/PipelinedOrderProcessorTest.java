@@ -0,0 +1,136 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.broker.PipelinedOrderProcessor;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.exchange.StockQuote;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Tests staged order execution.
+ */
+public final class PipelinedOrderProcessorTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Price the test exchange quotes */
+    private static final int PRICE = 100;
+
+    /** Test accounts' password */
+    private static final String PASSWORD = "password1";
+
+    /** Test accounts' initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /** Number of accounts placing orders */
+    private static final int ACCOUNTS = 5;
+
+    /** Number of orders placed by each account */
+    private static final int ORDERS_PER_ACCOUNT = 200;
+
+    /**
+     * Executes interleaved orders for a few accounts through a pipeline with several trades in flight, reading
+     * accounts from a DAO returning copies, and verifies no account update is lost.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testNoUpdateLost() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao);
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            manager.createAccount("account" + acct, PASSWORD, INIT_BALANCE);
+        }
+        final PipelinedOrderProcessor pipeline =
+                new PipelinedOrderProcessor(manager, exchange(), null, null, 4, 16, "test");
+
+        final int[] expected = new int[ACCOUNTS];
+        for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+            for (int acct = 0; acct < ACCOUNTS; acct++) {
+                final Order order = i % 3 == 0 ? new MarketSellOrder("account" + acct, acct + 1, TICKER)
+                                               : new MarketBuyOrder("account" + acct, acct + 1, TICKER);
+                expected[acct] += order.valueOfOrder(PRICE);
+                pipeline.process(order);
+            }
+        }
+        pipeline.shutdown();
+
+        assertEquals(ACCOUNTS * ORDERS_PER_ACCOUNT, pipeline.getPersistedCount());
+        assertEquals(0, pipeline.getFailedCount());
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            assertEquals(INIT_BALANCE + expected[acct], dao.storedBalance("account" + acct));
+        }
+    }
+
+    /**
+     * Verifies a trade the exchange rejects leaves the account unchanged, in memory and in storage.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testFailedTradeLeavesAccountUnchanged() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setCacheSize(10);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+        manager.createAccount("account0", PASSWORD, INIT_BALANCE);
+        final PipelinedOrderProcessor pipeline =
+                new PipelinedOrderProcessor(manager, exchange(2), null, null, 1, 16, "test");
+
+        for (int shares = 1; shares <= 4; shares++) {
+            pipeline.process(new MarketBuyOrder("account0", shares, TICKER));
+        }
+        pipeline.shutdown();
+
+        final int expected = INIT_BALANCE - (1 + 3 + 4) * PRICE;
+        assertEquals(1, pipeline.getFailedCount());
+        assertEquals(expected, manager.getAccount("account0").getBalance());
+        assertEquals(expected, dao.storedBalance("account0"));
+    }
+
+    /**
+     * Creates an open exchange quoting every ticker at the same price.
+     *
+     * @return the exchange
+     */
+    private static StockExchange exchange() {
+        return exchange(0);
+    }
+
+    /**
+     * Creates an open exchange quoting every ticker at the same price, failing the trades of one order size.
+     *
+     * @param failingShares the number of shares whose trades fail, 0 if no trade fails
+     * @return the exchange
+     */
+    private static StockExchange exchange(final int failingShares) {
+        return (StockExchange) Proxy.newProxyInstance(StockExchange.class.getClassLoader(),
+                new Class<?>[] {StockExchange.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("getQuote".equals(method.getName())) {
+                    return new StockQuote((String) args[0], PRICE);
+                } else if ("isOpen".equals(method.getName())) {
+                    return Boolean.TRUE;
+                } else if ("executeTrade".equals(method.getName())) {
+                    if (((Order) args[0]).getNumberOfShares() == failingShares) {
+                        throw new IllegalStateException("Trade rejected");
+                    }
+                    return Integer.valueOf(PRICE);
+                }
+                return null;
+            }
+        });
+    }
+}
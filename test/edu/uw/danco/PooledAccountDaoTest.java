@@ -0,0 +1,248 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountImpl;
+import edu.uw.danco.account.AccountManagerConfig;
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.account.AddressImpl;
+import edu.uw.danco.account.LazyAccountImpl;
+import edu.uw.danco.dao.ConnectionPool;
+import edu.uw.danco.dao.PooledAccountDaoImpl;
+import edu.uw.ext.framework.account.Account;
+import edu.uw.ext.framework.account.AccountException;
+
+/**
+ * Tests the connection pooled account DAO against an in process JDBC stand-in.
+ */
+public final class PooledAccountDaoTest {
+    /** Test accounts' password hash */
+    private static final byte[] HASH = new byte[] {1, 2, 3};
+
+    /** Number of pooled connections */
+    private static final int POOL_SIZE = 4;
+
+    /** Number of threads using the DAO */
+    private static final int THREADS = 16;
+
+    /** Number of updates made by each thread */
+    private static final int UPDATES = 25;
+
+    /**
+     * Reads and writes from many threads at once, verifies the operations ran concurrently on no more than the pooled
+     * connections, statements were prepared once per connection, and no update was lost.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final FakeDataSource db = new FakeDataSource();
+        final PooledAccountDaoImpl dao = new PooledAccountDaoImpl(db.dataSource(), POOL_SIZE, 5000L);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final String name = "account" + t + "xx";
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        dao.setAccount(new AccountImpl(name, HASH, 0));
+                        for (int i = 0; i < UPDATES; i++) {
+                            final Account account = dao.getAccount(name);
+                            account.setBalance(account.getBalance() + 1);
+                            dao.setAccount(account);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        for (int t = 0; t < THREADS; t++) {
+            assertEquals(UPDATES, db.storedBalance("account" + t + "xx"));
+        }
+        final ConnectionPool pool = dao.getPool();
+        assertTrue(db.getConnections() <= POOL_SIZE);
+        assertTrue(pool.getMaxInUse() <= POOL_SIZE);
+        assertTrue(db.getMaxExecuting() > 1);
+        assertTrue(db.getPrepared() <= POOL_SIZE * 2);
+        assertEquals(THREADS * (1 + 2 * UPDATES), pool.getBorrowCount());
+        assertTrue(pool.getWaitCount() > 0);
+        assertTrue(pool.getUtilization() > 0.0);
+        assertEquals(0, pool.getInUse());
+        dao.close();
+    }
+
+    /**
+     * Verifies a batch is written in one transaction and a deleted account is no longer found.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testBatchAndDelete() throws Exception {
+        final FakeDataSource db = new FakeDataSource();
+        final PooledAccountDaoImpl dao = new PooledAccountDaoImpl(db.dataSource(), POOL_SIZE, 5000L);
+        final List<Account> accounts = new ArrayList<Account>();
+        for (int i = 0; i < 10; i++) {
+            accounts.add(new AccountImpl("account" + i + "xx", HASH, i));
+        }
+        dao.setAccounts(accounts);
+        assertEquals(1, db.getCommits());
+        assertEquals(7, dao.getAccount("account7xx").getBalance());
+
+        dao.deleteAccount("account7xx");
+        assertNull(dao.getAccount("account7xx"));
+        dao.reset();
+        assertNull(dao.getAccount("account1xx"));
+        dao.close();
+    }
+
+
+    /**
+     * Verifies concurrent balance adjustments through the account manager are all applied without rewriting the
+     * account, and adjusting a missing account fails.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testAdjustBalance() throws Exception {
+        final FakeDataSource db = new FakeDataSource();
+        final PooledAccountDaoImpl dao = new PooledAccountDaoImpl(db.dataSource(), POOL_SIZE, 5000L);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao);
+        manager.createAccount("account1xx", "password", 1000);
+        final Account account = manager.getAccount("account1xx");
+        assertEquals(1, db.getUpserts());
+
+        final Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < UPDATES; i++) {
+                        try {
+                            manager.adjustBalance(account, 10);
+                        } catch (AccountException e) {
+                            return;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000 + THREADS * UPDATES * 10, db.storedBalance("account1xx"));
+        assertEquals(1, db.getUpserts());
+        try {
+            dao.adjustBalance("missingxx", 10);
+            fail("Adjusted a missing account");
+        } catch (AccountException e) {
+            // expected
+        }
+        manager.close();
+    }
+
+    /**
+     * Verifies accounts read as views carry their trading fields, read their profile only on first use, and keep the
+     * profile when rewritten.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testLazyProfile() throws Exception {
+        final FakeDataSource db = new FakeDataSource();
+        final PooledAccountDaoImpl dao = new PooledAccountDaoImpl(db.dataSource(), POOL_SIZE, 5000L);
+        final AccountImpl full = new AccountImpl("account1xx", HASH, 1000);
+        full.setFullName("Full Name");
+        full.setEmail("name@example.com");
+        final AddressImpl address = new AddressImpl();
+        address.setCity("Seattle");
+        full.setAddress(address);
+        dao.setAccount(full);
+
+        final AccountManagerConfig config = new AccountManagerConfig();
+        config.setLazyProfile(true);
+        final AccountManagerImpl manager = new AccountManagerImpl(dao, config);
+        final LazyAccountImpl account = (LazyAccountImpl) manager.getAccount("account1xx");
+        assertEquals(1000, account.getBalance());
+        assertEquals(HASH.length, account.getPasswordHash().length);
+
+        account.setBalance(900);
+        manager.adjustBalance(account, -100);
+        assertFalse(account.isProfileLoaded());
+        assertEquals(900, db.storedBalance("account1xx"));
+
+        assertEquals("Full Name", account.getFullName());
+        assertTrue(account.isProfileLoaded());
+        assertEquals("Seattle", account.getAddress().getCity());
+
+        account.setPhone("555-1212");
+        dao.setAccount(account);
+        final Account reread = dao.getAccount("account1xx");
+        assertEquals("name@example.com", reread.getEmail());
+        assertEquals("555-1212", reread.getPhone());
+        assertEquals(900, reread.getBalance());
+        manager.close();
+    }
+
+    /**
+     * Verifies writing an account view whose profile is not loaded writes only its trading fields without reading the
+     * profile, leaving the stored profile intact, also while the profile cannot be read, and that the profile is read
+     * once it can be. Uses a single connection, so a profile read during the write could not borrow one.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testUnloadedProfileNotOverwritten() throws Exception {
+        final FakeDataSource db = new FakeDataSource();
+        final PooledAccountDaoImpl dao = new PooledAccountDaoImpl(db.dataSource(), 1, 100L);
+        final AccountImpl full = new AccountImpl("account1xx", HASH, 1000);
+        full.setFullName("Full Name");
+        dao.setAccount(full);
+
+        final LazyAccountImpl view = (LazyAccountImpl) dao.getAccountView("account1xx");
+        view.setBalance(800);
+        dao.setAccount(view);
+        assertFalse(view.isProfileLoaded());
+        assertEquals(800, db.storedBalance("account1xx"));
+        assertEquals("Full Name", db.storedColumn("account1xx", "fullname"));
+
+        final LazyAccountImpl failing = (LazyAccountImpl) dao.getAccountView("account1xx");
+        db.setFailingSql("fullname");
+        failing.setBalance(700);
+        dao.setAccount(failing);
+        dao.setAccounts(Collections.singletonList(failing));
+        assertFalse(failing.isProfileLoaded());
+        assertEquals(700, db.storedBalance("account1xx"));
+        assertEquals("Full Name", db.storedColumn("account1xx", "fullname"));
+
+        db.setFailingSql(null);
+        assertEquals("Full Name", failing.getFullName());
+        assertTrue(failing.isProfileLoaded());
+        dao.close();
+    }
+}
@@ -0,0 +1,114 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.ConflatedPriceListener;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.danco.broker.PriceConflator;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests conflation of price ticks.
+ */
+public final class PriceConflatorTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Initial price */
+    private static final int INIT_PRICE = 1000;
+
+    /**
+     * Holds the consumer on the first update while a burst of ticks is published, then verifies the burst is
+     * delivered as a single update carrying its high, low and last price.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testBurstIsConflated() throws Exception {
+        final CountDownLatch firstUpdate = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch secondUpdate = new CountDownLatch(1);
+        final List<int[]> updates = new ArrayList<int[]>();
+        final PriceConflator conflator = new PriceConflator(2, new ConflatedPriceListener() {
+            @Override
+            public void pricesChanged(final int id, final int low, final int high, final int last) {
+                synchronized (updates) {
+                    updates.add(new int[] {id, low, high, last});
+                }
+                if (firstUpdate.getCount() > 0) {
+                    firstUpdate.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    secondUpdate.countDown();
+                }
+            }
+        }, "test-prices");
+
+        conflator.publish(1, INIT_PRICE);
+        assertTrue(firstUpdate.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            conflator.publish(1, INIT_PRICE + (i % 100) - 40);
+        }
+        conflator.publish(1, INIT_PRICE + 5);
+        release.countDown();
+        assertTrue(secondUpdate.await(5, TimeUnit.SECONDS));
+        conflator.shutdown();
+
+        synchronized (updates) {
+            assertEquals(2, updates.size());
+            final int[] update = updates.get(1);
+            assertEquals(1, update[0]);
+            assertEquals(INIT_PRICE - 40, update[1]);
+            assertEquals(INIT_PRICE + 59, update[2]);
+            assertEquals(INIT_PRICE + 5, update[3]);
+        }
+    }
+
+    /**
+     * Verifies a conflated update dispatches the stop buys crossed by its high and the stop sells crossed by its low,
+     * even though the last price crosses neither.
+     */
+    @Test
+    public void testConflatedAdjustDispatchesRange() {
+        final OrderManagerImpl orderManager = new OrderManagerImpl(TICKER, INIT_PRICE);
+        final List<Order> dispatched = new ArrayList<Order>();
+        orderManager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.add(order);
+            }
+        });
+        final StopBuyOrder buy = new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 20);
+        final StopSellOrder sell = new StopSellOrder(ACCT_NAME, 10, TICKER, INIT_PRICE - 20);
+        orderManager.queueOrder(buy);
+        orderManager.queueOrder(sell);
+        orderManager.queueOrder(new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 50));
+        orderManager.queueOrder(new StopSellOrder(ACCT_NAME, 10, TICKER, INIT_PRICE - 50));
+
+        orderManager.adjustPrice(INIT_PRICE - 30, INIT_PRICE + 30, INIT_PRICE);
+        assertEquals(2, dispatched.size());
+        assertTrue(dispatched.contains(buy));
+        assertTrue(dispatched.contains(sell));
+
+        orderManager.adjustPrice(INIT_PRICE + 1);
+        assertEquals(2, dispatched.size());
+    }
+}
@@ -0,0 +1,107 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.OrderPrice;
+import edu.uw.danco.broker.PriceLevelOrderQueue;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.danco.broker.StopSellOrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests for the price level order book.
+ */
+public final class PriceLevelOrderQueueTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Initial price */
+    private static final int INIT_PRICE = 1000;
+
+    /**
+     * Stop buy levels are dispatched lowest price first, orders within a level in arrival order, and a single price
+     * move releases every crossed level.
+     */
+    @Test
+    public void testStopBuyLevels() {
+        final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(INIT_PRICE);
+        final PriceLevelOrderQueue<StopBuyOrder> queue =
+                new PriceLevelOrderQueue<StopBuyOrder>(OrderPrice.STOP_BUY, true, filter);
+        final List<Order> dispatched = record(queue);
+
+        final StopBuyOrder a = new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 20);
+        final StopBuyOrder b = new StopBuyOrder(ACCT_NAME, 30, TICKER, INIT_PRICE + 10);
+        final StopBuyOrder c = new StopBuyOrder(ACCT_NAME, 50, TICKER, INIT_PRICE + 20);
+        final StopBuyOrder d = new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 30);
+        queue.enqueue(a);
+        queue.enqueue(b);
+        queue.enqueue(c);
+        queue.enqueue(d);
+        assertEquals(0, dispatched.size());
+
+        filter.setThreshold(INIT_PRICE + 25);
+        assertEquals(3, dispatched.size());
+        assertEquals(b.getOrderId(), dispatched.get(0).getOrderId());
+        assertEquals(a.getOrderId(), dispatched.get(1).getOrderId());
+        assertEquals(c.getOrderId(), dispatched.get(2).getOrderId());
+
+        assertNull(queue.dequeue());
+        filter.setThreshold(INIT_PRICE + 30);
+        assertEquals(4, dispatched.size());
+        assertEquals(d.getOrderId(), dispatched.get(3).getOrderId());
+    }
+
+    /**
+     * Stop sell levels are dispatched highest price first.
+     */
+    @Test
+    public void testStopSellLevels() {
+        final StopSellOrderDispatchFilter filter = new StopSellOrderDispatchFilter(INIT_PRICE);
+        final PriceLevelOrderQueue<StopSellOrder> queue =
+                new PriceLevelOrderQueue<StopSellOrder>(OrderPrice.STOP_SELL, false, filter);
+        final List<Order> dispatched = record(queue);
+
+        final StopSellOrder a = new StopSellOrder(ACCT_NAME, 10, TICKER, INIT_PRICE - 20);
+        final StopSellOrder b = new StopSellOrder(ACCT_NAME, 10, TICKER, INIT_PRICE - 10);
+        queue.enqueue(a);
+        queue.enqueue(b);
+
+        filter.setThreshold(INIT_PRICE - 15);
+        assertEquals(1, dispatched.size());
+        assertEquals(b.getOrderId(), dispatched.get(0).getOrderId());
+
+        filter.setThreshold(INIT_PRICE - 50);
+        assertEquals(2, dispatched.size());
+        assertEquals(a.getOrderId(), dispatched.get(1).getOrderId());
+    }
+
+    /**
+     * Registers a processor recording the dispatched orders.
+     *
+     * @param queue the queue
+     *
+     * @return the list the dispatched orders are added to
+     */
+    private static List<Order> record(final PriceLevelOrderQueue<?> queue) {
+        final List<Order> dispatched = new ArrayList<Order>();
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.add(order);
+            }
+        });
+        return dispatched;
+    }
+}
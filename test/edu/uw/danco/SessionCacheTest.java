@@ -0,0 +1,69 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import edu.uw.danco.account.AccountManagerImpl;
+import edu.uw.danco.broker.SessionCache;
+
+/**
+ * Tests the login path and the session cache.
+ */
+public final class SessionCacheTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Test account's password */
+    private static final String PASSWORD = "password1";
+
+    /** Test account's initial balance */
+    private static final int INIT_BALANCE = 1000000;
+
+    /**
+     * Verifies a login reads the account once and rejects a wrong password.
+     *
+     * @throws Exception if any exceptions are raised
+     */
+    @Test
+    public void testLoginReadsAccountOnce() throws Exception {
+        final MemoryAccountDao dao = new MemoryAccountDao();
+        final AccountManagerImpl manager = new AccountManagerImpl(dao);
+        manager.createAccount(ACCT_NAME, PASSWORD, INIT_BALANCE);
+
+        final int reads = dao.getReads();
+        assertNotNull(manager.login(ACCT_NAME, PASSWORD));
+        assertEquals(reads + 1, dao.getReads());
+        assertNull(manager.login(ACCT_NAME, "wrongpassword"));
+        assertFalse(manager.validateLogin(ACCT_NAME, "wrongpassword"));
+    }
+
+    /**
+     * Verifies sessions are bounded, expire when idle and are closed with their account.
+     *
+     * @throws Exception if interrupted
+     */
+    @Test
+    public void testSessionsBoundedAndExpire() throws Exception {
+        final SessionCache sessions = new SessionCache(2, 100L);
+        final String first = sessions.open("account1");
+        final String second = sessions.open("account2");
+        assertFalse(first.equals(second));
+        assertEquals("account1", sessions.accountFor(first));
+
+        sessions.open("account3");
+        assertEquals(2, sessions.size());
+        assertNull(sessions.accountFor(second));
+        assertEquals("account1", sessions.accountFor(first));
+
+        sessions.closeAccount("account1");
+        assertNull(sessions.accountFor(first));
+
+        final String third = sessions.open("account4");
+        Thread.sleep(200L);
+        assertNull(sessions.accountFor(third));
+    }
+}
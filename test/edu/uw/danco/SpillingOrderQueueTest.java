@@ -0,0 +1,209 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.OrderSpillFile;
+import edu.uw.danco.broker.SpillingOrderQueue;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.MarketSellOrder;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+
+/**
+ * Tests the bounded market order queue that spills to disk.
+ */
+public final class SpillingOrderQueueTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Number of shares in each order */
+    private static final int SHARES = 10;
+
+    /** Number of orders held in memory */
+    private static final int MEMORY_CAPACITY = 10;
+
+    /** The spill file */
+    private File spillFile;
+
+    /** The market dispatch filter, initially closed */
+    private MarketDispatchFilter filter;
+
+    /** The orders dispatched */
+    private List<Order> dispatched;
+
+    /**
+     * Creates the spill file and filter.
+     *
+     * @throws Exception if the spill file cannot be created
+     */
+    @Before
+    public void setUp() throws Exception {
+        spillFile = File.createTempFile("market", ".spill");
+        filter = new MarketDispatchFilter(false);
+        dispatched = new ArrayList<Order>();
+    }
+
+    /**
+     * Removes the spill file.
+     */
+    @After
+    public void tearDown() {
+        spillFile.delete();
+    }
+
+    /**
+     * Verifies a closed spill file rejects appends and reads with an IllegalStateException, and may be closed again.
+     *
+     * @throws Exception if the spill file cannot be created
+     */
+    @Test
+    public void testClosedSpillFile() throws Exception {
+        final OrderSpillFile file = new OrderSpillFile(spillFile, 4096);
+        final int offset = file.append(new MarketBuyOrder(ACCT_NAME, SHARES, TICKER));
+        file.close();
+        file.close();
+        assertEquals(0, file.size());
+        try {
+            file.append(new MarketBuyOrder(ACCT_NAME, SHARES, TICKER));
+            fail("Appended to a closed spill file");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            file.next();
+            fail("Read from a closed spill file");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            file.read(offset);
+            fail("Read from a closed spill file");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Places more orders than fit in memory while the market is closed, then opens the market and verifies every
+     * order is dispatched in arrival order.
+     *
+     * @throws Exception if the queue cannot be created
+     */
+    @Test
+    public void testSpillAndReadBack() throws Exception {
+        final SpillingOrderQueue queue = newQueue(1024 * 1024, false);
+        final int orders = MEMORY_CAPACITY * 25;
+        for (int i = 1; i <= orders; i++) {
+            queue.enqueue(i % 2 == 0 ? new MarketBuyOrder(ACCT_NAME + i, SHARES, TICKER)
+                                     : new MarketSellOrder(ACCT_NAME + i, SHARES, TICKER));
+        }
+        assertEquals(orders - MEMORY_CAPACITY, queue.getSpilledCount());
+        assertTrue(dispatched.isEmpty());
+
+        filter.setThreshold(Boolean.TRUE);
+        assertEquals(orders, dispatched.size());
+        for (int i = 1; i <= orders; i++) {
+            final Order order = dispatched.get(i - 1);
+            assertEquals(ACCT_NAME + i, order.getAccountId());
+            assertEquals(i % 2 == 0, order instanceof MarketBuyOrder);
+            assertEquals(SHARES, order.getNumberOfShares());
+            assertEquals(TICKER, order.getStockTicker());
+        }
+        assertEquals(0, queue.getSpilledCount());
+        queue.close();
+    }
+
+    /**
+     * Verifies spilled orders keep their id and class, and can be found and cancelled while spilled.
+     *
+     * @throws Exception if the queue cannot be created
+     */
+    @Test
+    public void testSpilledOrdersKeepIdentity() throws Exception {
+        final SpillingOrderQueue queue = newQueue(1024 * 1024, false);
+        final List<Order> placed = new ArrayList<Order>();
+        for (int i = 0; i < MEMORY_CAPACITY * 3; i++) {
+            final Order order = i % 3 == 0 ? new StopBuyOrder(ACCT_NAME, SHARES, TICKER, 100)
+                                           : new MarketSellOrder(ACCT_NAME, SHARES, TICKER);
+            placed.add(order);
+            queue.enqueue(order);
+        }
+        final Order spilled = placed.get(MEMORY_CAPACITY + 1);
+        final Order cancelled = placed.get(MEMORY_CAPACITY * 2 + 3);
+        assertEquals(spilled.getOrderId(), queue.find(spilled.getOrderId()).getOrderId());
+        assertEquals(cancelled.getOrderId(), queue.cancel(cancelled.getOrderId()).getOrderId());
+        assertNull(queue.find(cancelled.getOrderId()));
+        assertNull(queue.cancel(cancelled.getOrderId()));
+        assertEquals(MEMORY_CAPACITY * 2 - 1, queue.getSpilledCount());
+
+        filter.setThreshold(Boolean.TRUE);
+        placed.remove(cancelled);
+        assertEquals(placed.size(), dispatched.size());
+        for (int i = 0; i < placed.size(); i++) {
+            assertEquals(placed.get(i).getOrderId(), dispatched.get(i).getOrderId());
+            assertSame(placed.get(i).getClass(), dispatched.get(i).getClass());
+        }
+        queue.close();
+    }
+
+    /**
+     * Fills both memory and the spill file and verifies further orders are rejected until the market opens.
+     *
+     * @throws Exception if the queue cannot be created
+     */
+    @Test
+    public void testRejectWhenFull() throws Exception {
+        final SpillingOrderQueue queue = newQueue(256, true);
+        int placed = 0;
+        try {
+            while (true) {
+                queue.enqueue(new MarketBuyOrder(ACCT_NAME, SHARES, TICKER));
+                placed++;
+            }
+        } catch (IllegalStateException e) {
+            assertTrue(placed > MEMORY_CAPACITY);
+        }
+
+        filter.setThreshold(Boolean.TRUE);
+        assertEquals(placed, dispatched.size());
+        queue.enqueue(new MarketBuyOrder(ACCT_NAME, SHARES, TICKER));
+        assertEquals(placed + 1, dispatched.size());
+        queue.close();
+    }
+
+    /**
+     * Creates the queue under test.
+     *
+     * @param spillSize the size of the spill file
+     * @param reject true to reject orders when full
+     * @return the queue
+     * @throws Exception if the queue cannot be created
+     */
+    private SpillingOrderQueue newQueue(final int spillSize, final boolean reject) throws Exception {
+        final SpillingOrderQueue queue = new SpillingOrderQueue(filter, MEMORY_CAPACITY, spillFile, spillSize, reject);
+        queue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                dispatched.add(order);
+            }
+        });
+        return queue;
+    }
+}
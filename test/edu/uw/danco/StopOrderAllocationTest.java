@@ -0,0 +1,205 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.BatchMoveToMarketQueueProcessor;
+import edu.uw.danco.broker.ConcurrentOrderQueueFactory;
+import edu.uw.danco.broker.MarketDispatchFilter;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.danco.broker.OrderQueueFactory;
+import edu.uw.danco.broker.PriceLevelOrderQueueFactory;
+import edu.uw.danco.broker.TreeOrderQueueFactory;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Verifies the tick, check, dispatch path of the order manager does not allocate, using the HotSpot per thread
+ * allocation counter, and that a price gap moves the triggered orders to the market queue in one reused batch.
+ */
+public final class StopOrderAllocationTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Initial price */
+    private static final int INIT_PRICE = 10000;
+
+    /** Number of orders on each side */
+    private static final int ORDERS = 5000;
+
+    /** Number of ticks measured */
+    private static final int TICKS = 200000;
+
+    /**
+     * Bytes a measured run may allocate, independent of the number of ticks, allowing for one-off allocations such as
+     * the first run of the dispatch path; one object per tick would exceed it many times over
+     */
+    private static final long ALLOCATION_SLACK = 4096;
+
+    /** Counts the dispatched orders without allocating */
+    private static final class CountingProcessor implements OrderProcessor {
+        /** Number of orders processed */
+        private int count;
+
+        @Override
+        public void process(final Order order) {
+            count++;
+        }
+    }
+
+    /**
+     * Tests the TreeSet backed queues.
+     */
+    @Test
+    public void testTreeQueueTicksDoNotAllocate() {
+        checkTicksDoNotAllocate(TreeOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests the price level order book.
+     */
+    @Test
+    public void testPriceLevelQueueTicksDoNotAllocate() {
+        checkTicksDoNotAllocate(PriceLevelOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests a price gap through the TreeSet backed queues.
+     */
+    @Test
+    public void testTreeQueuePriceGap() {
+        checkPriceGap(TreeOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests a price gap through the concurrent queues.
+     */
+    @Test
+    public void testConcurrentQueuePriceGap() {
+        checkPriceGap(ConcurrentOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Tests a price gap through the price level order book.
+     */
+    @Test
+    public void testPriceLevelQueuePriceGap() {
+        checkPriceGap(PriceLevelOrderQueueFactory.INSTANCE);
+    }
+
+    /**
+     * Places stop buy orders at several prices, gaps the price past all of them and verifies every order is moved to
+     * the market queue in one batch, in price then arrival order. A second gap verifies the batch list is reused.
+     *
+     * @param queueFactory the factory for the stop order queues
+     */
+    private void checkPriceGap(final OrderQueueFactory queueFactory) {
+        final OrderQueue<Order> marketQueue = queueFactory.newMarketOrderQueue(new MarketDispatchFilter(true));
+        final List<Order> executed = new ArrayList<Order>();
+        marketQueue.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                executed.add(order);
+            }
+        });
+        final List<List<Order>> batches = new ArrayList<List<Order>>();
+        final List<Order> moved = new ArrayList<Order>();
+        final OrderManagerImpl manager = new OrderManagerImpl(TICKER, INIT_PRICE, queueFactory);
+        manager.setOrderProcessor(new BatchMoveToMarketQueueProcessor(marketQueue) {
+            @Override
+            public void processBatch(final List<Order> orders) {
+                batches.add(orders);
+                moved.addAll(orders);
+                super.processBatch(orders);
+            }
+        });
+
+        final List<Order> expected = new ArrayList<Order>();
+        final List<StopBuyOrder> placed = new ArrayList<StopBuyOrder>();
+        for (int i = 5; i >= 1; i--) {
+            placed.add(new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 10 * i));
+            placed.add(new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 10 * i));
+        }
+        for (StopBuyOrder order : placed) {
+            manager.queueOrder(order);
+        }
+        for (int i = 1; i <= 5; i++) {
+            for (StopBuyOrder order : placed) {
+                if (order.getPrice() == INIT_PRICE + 10 * i) {
+                    expected.add(order);
+                }
+            }
+        }
+
+        manager.adjustPrice(INIT_PRICE + 100);
+        assertEquals(1, batches.size());
+        assertEquals(expected, moved);
+        assertEquals(placed.size(), executed.size());
+        assertTrue(executed.containsAll(placed));
+        assertEquals(null, manager.findOrder(placed.get(0).getOrderId()));
+
+        manager.adjustPrice(INIT_PRICE);
+        manager.queueOrder(new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 10));
+        manager.adjustPrice(INIT_PRICE + 100);
+        assertEquals(2, batches.size());
+        assertSame(batches.get(0), batches.get(1));
+        assertEquals(placed.size() + 1, executed.size());
+    }
+
+    /**
+     * Places stop orders away from the price, measures allocation over ticks that trigger nothing and over ticks
+     * that sweep the price through every order.
+     *
+     * @param queueFactory the factory for the stop order queues
+     */
+    private void checkTicksDoNotAllocate(final OrderQueueFactory queueFactory) {
+        final OrderManagerImpl manager = new OrderManagerImpl(TICKER, INIT_PRICE, queueFactory);
+        final CountingProcessor processor = new CountingProcessor();
+        manager.setOrderProcessor(processor);
+        for (int i = 1; i <= ORDERS; i++) {
+            manager.queueOrder(new StopBuyOrder(ACCT_NAME, 10, TICKER, INIT_PRICE + 100 + i));
+            manager.queueOrder(new StopSellOrder(ACCT_NAME, 10, TICKER, INIT_PRICE - 100 - i));
+        }
+
+        // warm up the non crossing path
+        for (int i = 0; i < TICKS; i++) {
+            manager.adjustPrice(INIT_PRICE + (i % 100));
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long tid = Thread.currentThread().getId();
+
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < TICKS; i++) {
+            manager.adjustPrice(INIT_PRICE + (i % 100));
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+        assertEquals(0, processor.count);
+        assertTrue("Non crossing ticks allocated " + allocated + " bytes", allocated <= ALLOCATION_SLACK);
+
+        before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 1; i <= ORDERS; i++) {
+            manager.adjustPrice(INIT_PRICE + 100 + i);
+        }
+        for (int i = 1; i <= ORDERS; i++) {
+            manager.adjustPrice(INIT_PRICE - 100 - i);
+        }
+        allocated = threads.getThreadAllocatedBytes(tid) - before;
+        assertEquals(2 * ORDERS, processor.count);
+        assertTrue("Crossing ticks allocated " + allocated + " bytes", allocated <= ALLOCATION_SLACK);
+    }
+}
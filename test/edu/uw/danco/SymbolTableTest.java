@@ -0,0 +1,59 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.SymbolTable;
+
+/**
+ * Tests the ticker symbol table.
+ */
+public final class SymbolTableTest {
+
+    /**
+     * Verifies ids are dense, assigned in order, and map back to their symbols.
+     */
+    @Test
+    public void testDenseIds() {
+        final SymbolTable symbols = new SymbolTable(new String[] {"BA", "F", "PG", "F", "T"});
+        assertEquals(4, symbols.size());
+        assertEquals(0, symbols.idOf("BA"));
+        assertEquals(1, symbols.idOf("F"));
+        assertEquals(2, symbols.idOf("PG"));
+        assertEquals(3, symbols.idOf("T"));
+        assertEquals(-1, symbols.idOf("IBM"));
+        for (int id = 0; id < symbols.size(); id++) {
+            assertEquals(id, symbols.idOf(symbols.symbolOf(id)));
+        }
+    }
+
+
+    /**
+     * Verifies symbols with equal hash codes, a large table and an empty table.
+     */
+    @Test
+    public void testCollisionsAndSizes() {
+        final SymbolTable colliding = new SymbolTable(new String[] {"Aa", "BB", "AaAa", "BBBB", "AaBB"});
+        assertEquals(5, colliding.size());
+        assertEquals(1, colliding.idOf("BB"));
+        assertEquals(4, colliding.idOf("AaBB"));
+        assertEquals(-1, colliding.idOf("BBAa"));
+        assertEquals(-1, colliding.idOf(null));
+
+        final String[] tickers = new String[5000];
+        for (int i = 0; i < tickers.length; i++) {
+            tickers[i] = "T" + i;
+        }
+        final SymbolTable large = new SymbolTable(tickers);
+        assertEquals(tickers.length, large.size());
+        for (int i = 0; i < tickers.length; i++) {
+            assertEquals(i, large.idOf(new String(tickers[i])));
+        }
+        assertEquals(-1, large.idOf("T5000"));
+
+        final SymbolTable empty = new SymbolTable(new String[0]);
+        assertEquals(0, empty.size());
+        assertEquals(-1, empty.idOf("BA"));
+    }
+}
@@ -0,0 +1,73 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.TickerShards;
+
+/**
+ * Tests the ticker sharded executors.
+ */
+public final class TickerShardsTest {
+    /** Number of shards */
+    private static final int SHARDS = 4;
+
+    /** Number of tickers */
+    private static final int TICKERS = 10;
+
+    /** Number of tasks per ticker */
+    private static final int TASKS = 1000;
+
+    /**
+     * Verifies each ticker's tasks run in submission order, always on the same thread.
+     */
+    @Test
+    public void testTickerAffinityAndOrder() {
+        final TickerShards shards = new TickerShards(SHARDS, "test");
+        final List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        final Thread[] threads = new Thread[TICKERS];
+        final Thread[] strays = new Thread[TICKERS];
+        for (int id = 0; id < TICKERS; id++) {
+            runs.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < TASKS; i++) {
+            for (int id = 0; id < TICKERS; id++) {
+                final int ticker = id;
+                final int seq = i;
+                shards.execute(ticker, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (threads[ticker] == null) {
+                            threads[ticker] = Thread.currentThread();
+                        } else if (threads[ticker] != Thread.currentThread()) {
+                            strays[ticker] = Thread.currentThread();
+                        }
+                        runs.get(ticker).add(seq);
+                    }
+                });
+            }
+        }
+        for (int id = 0; id < TICKERS; id++) {
+            final int ticker = id;
+            final List<Integer> run = shards.call(ticker, new Callable<List<Integer>>() {
+                @Override
+                public List<Integer> call() {
+                    return new ArrayList<Integer>(runs.get(ticker));
+                }
+            });
+            assertEquals(TASKS, run.size());
+            for (int i = 0; i < TASKS; i++) {
+                assertEquals(Integer.valueOf(i), run.get(i));
+            }
+            assertSame(null, strays[ticker]);
+            assertSame(threads[ticker], threads[ticker % SHARDS]);
+        }
+        shards.shutdown();
+    }
+}
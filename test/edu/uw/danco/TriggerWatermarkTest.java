@@ -0,0 +1,208 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.BrokerOrderQueue;
+import edu.uw.danco.broker.OrderManagerImpl;
+import edu.uw.danco.broker.OrderPrice;
+import edu.uw.danco.broker.OrderQueueFactory;
+import edu.uw.danco.broker.OrderQueueImpl;
+import edu.uw.danco.broker.StopBuyOrderComparator;
+import edu.uw.danco.broker.StopBuyOrderDispatchFilter;
+import edu.uw.danco.broker.TreeOrderQueueFactory;
+import edu.uw.danco.broker.TriggerWatermark;
+import edu.uw.ext.framework.broker.OrderDispatchFilter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.broker.OrderQueue;
+import edu.uw.ext.framework.order.Order;
+import edu.uw.ext.framework.order.StopBuyOrder;
+import edu.uw.ext.framework.order.StopSellOrder;
+
+/**
+ * Tests the trigger watermark skips the stop order queues only when no order can trigger.
+ */
+public final class TriggerWatermarkTest {
+    /** Test account's name */
+    private static final String ACCT_NAME = "fflintstone";
+
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Initial price */
+    private static final int INIT_PRICE = 1000;
+
+    /** Price of the stop buy order */
+    private static final int STOP_PRICE = 1100;
+
+    /**
+     * Verifies a price that does not reach the resting stop buy order does not dispatch the queue, and the price
+     * that does dispatches it.
+     */
+    @Test
+    public void testPriceNotCrossingSkipsDispatch() {
+        final AtomicInteger dispatches = new AtomicInteger();
+        final OrderQueueFactory factory = new OrderQueueFactory() {
+            @Override
+            public OrderQueue<StopBuyOrder> newStopBuyOrderQueue(final OrderDispatchFilter<?, StopBuyOrder> filter) {
+                return countingQueue((BrokerOrderQueue<StopBuyOrder>)
+                                     TreeOrderQueueFactory.INSTANCE.newStopBuyOrderQueue(filter), dispatches);
+            }
+
+            @Override
+            public OrderQueue<StopSellOrder> newStopSellOrderQueue(
+                    final OrderDispatchFilter<?, StopSellOrder> filter) {
+                return TreeOrderQueueFactory.INSTANCE.newStopSellOrderQueue(filter);
+            }
+
+            @Override
+            public OrderQueue<Order> newMarketOrderQueue(final OrderDispatchFilter<?, Order> filter) {
+                return TreeOrderQueueFactory.INSTANCE.newMarketOrderQueue(filter);
+            }
+        };
+        final OrderManagerImpl manager = new OrderManagerImpl(TICKER, INIT_PRICE, factory);
+        final List<Order> processed = new ArrayList<Order>();
+        manager.setOrderProcessor(new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                processed.add(order);
+            }
+        });
+        final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, TICKER, STOP_PRICE);
+        manager.queueOrder(order);
+
+        for (int price = INIT_PRICE; price < STOP_PRICE; price += 10) {
+            manager.adjustPrice(price);
+        }
+        assertEquals(0, dispatches.get());
+        assertTrue(processed.isEmpty());
+
+        manager.adjustPrice(STOP_PRICE);
+        assertEquals(1, dispatches.get());
+        assertEquals(1, processed.size());
+        assertEquals(order, processed.get(0));
+    }
+
+
+    /**
+     * Verifies an order added while a refresh examines the queue is never skipped, whether the add is still in
+     * progress or completes before the refresh updates the watermark.
+     */
+    @Test
+    public void testAddRacingRefreshNotSkipped() {
+        final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, TICKER, STOP_PRICE);
+
+        // the add begins while the queue is examined and is still in progress when the refresh completes
+        final TriggerWatermark inProgress = new TriggerWatermark(true);
+        inProgress.refresh(racingQueue(inProgress, order, false), OrderPrice.STOP_BUY);
+        assertTrue(inProgress.isCrossed(STOP_PRICE));
+        inProgress.endAdd();
+        assertTrue(inProgress.isCrossed(STOP_PRICE));
+
+        // the add completes while the queue is examined, the refresh must examine the queue again
+        final TriggerWatermark completed = new TriggerWatermark(true);
+        completed.refresh(racingQueue(completed, order, true), OrderPrice.STOP_BUY);
+        assertTrue(completed.isCrossed(STOP_PRICE));
+        assertFalse(completed.isCrossed(STOP_PRICE - 1));
+    }
+
+
+    /**
+     * Verifies the watermark is reset once the queue is empty, so no price crosses it.
+     */
+    @Test
+    public void testResetOnEmptyQueue() {
+        final StopBuyOrderDispatchFilter filter = new StopBuyOrderDispatchFilter(INIT_PRICE);
+        final OrderQueueImpl<StopBuyOrder> queue =
+                new OrderQueueImpl<StopBuyOrder>(StopBuyOrderComparator.INSTANCE, filter);
+        final TriggerWatermark watermark = new TriggerWatermark(true);
+        watermark.refresh(queue, OrderPrice.STOP_BUY);
+        assertFalse(watermark.isCrossed(STOP_PRICE));
+
+        final StopBuyOrder order = new StopBuyOrder(ACCT_NAME, 10, TICKER, STOP_PRICE);
+        watermark.beginAdd(order.getPrice());
+        queue.enqueue(order);
+        watermark.endAdd();
+        assertTrue(watermark.isCrossed(STOP_PRICE));
+
+        filter.setThresholdPrice(STOP_PRICE);
+        queue.dispatchOrders();
+        watermark.refresh(queue, OrderPrice.STOP_BUY);
+        assertEquals(null, queue.peek());
+        assertFalse(watermark.isCrossed(STOP_PRICE));
+        assertFalse(watermark.isCrossed(Integer.MAX_VALUE - 1));
+        assertFalse(watermark.isWithin(STOP_PRICE, 1000));
+    }
+
+
+    /**
+     * Creates a queue that counts the calls to dispatchOrders and delegates every call.
+     * @param queue the queue to delegate to
+     * @param dispatches the number of calls to dispatchOrders
+     * @return the counting queue
+     */
+    @SuppressWarnings("unchecked")
+    private static BrokerOrderQueue<StopBuyOrder> countingQueue(final BrokerOrderQueue<StopBuyOrder> queue,
+                                                                final AtomicInteger dispatches) {
+        return (BrokerOrderQueue<StopBuyOrder>) Proxy.newProxyInstance(
+                BrokerOrderQueue.class.getClassLoader(), new Class<?>[] {BrokerOrderQueue.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+                        if ("dispatchOrders".equals(method.getName())) {
+                            dispatches.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(queue, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+
+    /**
+     * Creates a queue that appears empty when first examined, an order being added meanwhile. Later examinations
+     * find the order.
+     * @param watermark the watermark the order is added under
+     * @param order the order added
+     * @param completeAdd true if the add completes during the first examination, false if it is left in progress
+     * @return the queue
+     */
+    @SuppressWarnings("unchecked")
+    private static BrokerOrderQueue<StopBuyOrder> racingQueue(final TriggerWatermark watermark,
+                                                              final StopBuyOrder order, final boolean completeAdd) {
+        final AtomicInteger peeks = new AtomicInteger();
+        return (BrokerOrderQueue<StopBuyOrder>) Proxy.newProxyInstance(
+                BrokerOrderQueue.class.getClassLoader(), new Class<?>[] {BrokerOrderQueue.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if (!"peek".equals(method.getName())) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        if (peeks.getAndIncrement() > 0) {
+                            return order;
+                        }
+                        watermark.beginAdd(order.getPrice());
+                        if (completeAdd) {
+                            watermark.endAdd();
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,139 @@
+package edu.uw.danco;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uw.danco.broker.LimitedStockExchange;
+import edu.uw.danco.broker.VirtualThreadOrderProcessor;
+import edu.uw.danco.dao.ResourceLimiter;
+import edu.uw.ext.framework.broker.OrderProcessor;
+import edu.uw.ext.framework.exchange.StockExchange;
+import edu.uw.ext.framework.order.MarketBuyOrder;
+import edu.uw.ext.framework.order.Order;
+
+/**
+ * Tests execution of orders on a thread per account.
+ */
+public final class VirtualThreadOrderProcessorTest {
+    /** Ticker used for the orders */
+    private static final String TICKER = "BA";
+
+    /** Number of accounts placing orders */
+    private static final int ACCOUNTS = 100;
+
+    /** Number of orders placed by each account */
+    private static final int ORDERS_PER_ACCOUNT = 20;
+
+    /** Number of executions allowed at once */
+    private static final int PERMITS = 4;
+
+    /**
+     * Executes blocking orders for many accounts and verifies each account's orders executed in order, and no more
+     * than the permitted number executed at once.
+     */
+    @Test
+    public void testAccountOrderAndLimit() {
+        final Map<String, List<Order>> executed = new ConcurrentHashMap<String, List<Order>>();
+        final OrderProcessor trader = new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                List<Order> orders = executed.get(order.getAccountId());
+                if (orders == null) {
+                    orders = new ArrayList<Order>();
+                    executed.put(order.getAccountId(), orders);
+                }
+                orders.add(order);
+            }
+        };
+        final ResourceLimiter limiter = new ResourceLimiter("test", PERMITS);
+        final VirtualThreadOrderProcessor processor = new VirtualThreadOrderProcessor(trader, limiter, "test");
+
+        final List<Order> placed = new ArrayList<Order>();
+        for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+            for (int acct = 0; acct < ACCOUNTS; acct++) {
+                final Order order = new MarketBuyOrder("acct" + acct, 10, TICKER);
+                placed.add(order);
+                processor.process(order);
+            }
+        }
+        processor.shutdown();
+
+        assertEquals(ACCOUNTS * ORDERS_PER_ACCOUNT, processor.getExecuted());
+        assertEquals(0, processor.getActiveAccounts());
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            final List<Order> orders = executed.get("acct" + acct);
+            assertEquals(ORDERS_PER_ACCOUNT, orders.size());
+            for (int i = 0; i < ORDERS_PER_ACCOUNT; i++) {
+                assertEquals(placed.get(i * ACCOUNTS + acct), orders.get(i));
+            }
+        }
+        assertTrue(limiter.getMaxInUse() <= PERMITS);
+        assertEquals(0, limiter.getInUse());
+    }
+
+    /**
+     * Executes orders whose trades go through a LimitedStockExchange and verifies only the trades are limited, the
+     * rest of each execution runs with as many accounts at once as are active.
+     */
+    @Test
+    public void testExchangeLimitCoversOnlyTrades() {
+        final ResourceLimiter limiter = new ResourceLimiter("exchange", PERMITS);
+        final StockExchange exchange = new LimitedStockExchange((StockExchange) Proxy.newProxyInstance(
+                StockExchange.class.getClassLoader(), new Class<?>[] {StockExchange.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
+                if ("executeTrade".equals(method.getName())) {
+                    Thread.sleep(1);
+                    return Integer.valueOf(1000);
+                }
+                return null;
+            }
+        }), limiter);
+        final AtomicInteger loading = new AtomicInteger();
+        final AtomicInteger maxLoading = new AtomicInteger();
+        final OrderProcessor trader = new OrderProcessor() {
+            @Override
+            public void process(final Order order) {
+                final int now = loading.incrementAndGet();
+                int max = maxLoading.get();
+                while (now > max && !maxLoading.compareAndSet(max, now)) {
+                    max = maxLoading.get();
+                }
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                loading.decrementAndGet();
+                exchange.executeTrade(order);
+            }
+        };
+        final VirtualThreadOrderProcessor processor = new VirtualThreadOrderProcessor(trader, null, "test");
+        for (int acct = 0; acct < ACCOUNTS; acct++) {
+            processor.process(new MarketBuyOrder("acct" + acct, 10, TICKER));
+        }
+        processor.shutdown();
+
+        assertEquals(ACCOUNTS, processor.getExecuted());
+        assertEquals(0, processor.getFailed());
+        assertTrue(limiter.getMaxInUse() <= PERMITS);
+        assertEquals(0, limiter.getInUse());
+        assertTrue(maxLoading.get() > PERMITS);
+    }
+}